@@ -1,15 +1,22 @@
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Objects;
-import java.util.Scanner;
 
+import controller.BatchController;
 import controller.Controller;
 import controller.ControllerMVC;
 import controller.IController;
+import controller.InteractiveController;
+import controller.ScheduledController;
 import model.IModel;
 import model.ImageModel;
+import model.ResultCache;
 import view.GraphicalView;
 import view.IView;
 
@@ -21,28 +28,114 @@ public final class Main {
    * main method to run the program.
    */
   public static void main(String[] args) {
-    IModel model = new ImageModel();
+    long budget = 0;
+    int threads = 1;
+    int workers = 0;
+    String cacheDirectory = null;
+    long cacheBudget = 1024L * 1024 * 1024;
+    long ioBudget = 256L * 1024 * 1024;
+    boolean async = false;
+    boolean exact = false;
+    boolean lazy = false;
+    for (String arg : args) {
+      exact |= Objects.equals(arg, "-exact");
+      lazy |= Objects.equals(arg, "-lazy");
+      async |= Objects.equals(arg, "-async");
+    }
+    for (int i = 0; i < args.length - 1; i++) {
+      if (Objects.equals(args[i], "-memory")) {
+        try {
+          budget = Long.parseLong(args[i + 1]) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("memory budget should be a number of megabytes");
+        }
+        if (budget <= 0) {
+          throw new IllegalArgumentException("memory budget must be positive");
+        }
+      } else if (Objects.equals(args[i], "-threads")) {
+        try {
+          threads = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("number of threads should be a number");
+        }
+      } else if (Objects.equals(args[i], "-workers")) {
+        try {
+          workers = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("number of workers should be a number");
+        }
+      } else if (Objects.equals(args[i], "-cache")) {
+        cacheDirectory = args[i + 1];
+      } else if (Objects.equals(args[i], "-cache-size")) {
+        try {
+          cacheBudget = Long.parseLong(args[i + 1]) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("cache size should be a number of megabytes");
+        }
+      } else if (Objects.equals(args[i], "-async-memory")) {
+        try {
+          ioBudget = Long.parseLong(args[i + 1]) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("async memory should be a number of megabytes");
+        }
+        if (ioBudget <= 0) {
+          throw new IllegalArgumentException("async memory must be positive");
+        }
+      }
+    }
+    ResultCache cache = cacheDirectory == null ? null
+            : new ResultCache(cacheDirectory, cacheBudget);
+    IModel model = new ImageModel(budget > 0 ? budget : Long.MAX_VALUE, null, threads, exact,
+            cache);
+    // files are read ahead and written behind only when asked for
+    long scriptIoBudget = async ? ioBudget : 0;
     IView view;
     Readable input = new StringReader("");
-    IController controller = new Controller(model, input);
+    IController controller = new Controller(model, input, lazy);
 
     if (args.length > 0) {
       for (int i = 0; i < args.length; i++) {
         if (Objects.equals(args[i], "-file")) {
           try {
-            Scanner sc = new Scanner(new FileInputStream(args[i + 1]));
-            StringBuilder string = new StringBuilder();
-            while (sc.hasNext()) {
-              string.append(sc.next()).append(" ");
-            }
-            input = new StringReader(string.toString());
+            // read as is, so errors in the script are reported with their line
+            input = new InputStreamReader(new FileInputStream(args[i + 1]));
           } catch (FileNotFoundException e) {
             throw new IllegalStateException("no such script could be run");
           }
-          controller = new Controller(model, input);
+          // the task graph runs loads and saves as tasks of their own, out of script order
+          if (workers > 0 && async) {
+            throw new IllegalArgumentException("-async cannot be used with -workers and -file");
+          }
+          controller = workers > 0 ? new ScheduledController(model, input, workers, lazy)
+                  : new Controller(model, input, lazy, scriptIoBudget);
+        } else if (Objects.equals(args[i], "-batch")) {
+          if (i + 3 >= args.length) {
+            throw new IllegalArgumentException(
+                    "-batch needs a script, an input directory and an output directory");
+          }
+          String template;
+          try {
+            template = new String(Files.readAllBytes(Paths.get(args[i + 1])),
+                    StandardCharsets.UTF_8);
+          } catch (IOException e) {
+            throw new IllegalStateException("no such script could be run");
+          }
+          // every job keeps its share of the memory budget, spilling the rest; without one,
+          // the jobs share half of the heap and leave the rest to the images being computed
+          int jobs = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+          long jobBudget = (budget > 0 ? budget : Runtime.getRuntime().maxMemory() / 2) / jobs;
+          int jobThreads = threads;
+          boolean jobExact = exact;
+          controller = new BatchController(
+                  () -> new ImageModel(jobBudget, null, jobThreads, jobExact, cache), template,
+                  args[i + 2], args[i + 3], jobs, lazy, scriptIoBudget / jobs, System.out);
         } else if (Objects.equals(args[i], "-text")) {
+          // typed commands run a line at a time, so there is no whole script to plan
+          if (lazy) {
+            throw new IllegalArgumentException("-lazy needs a script file, not -text");
+          }
           input = new InputStreamReader(System.in);
-          controller = new Controller(model, input);
+          controller = new InteractiveController(model, input, scriptIoBudget);
         }
       }
     } else {
@@ -50,6 +143,26 @@ public final class Main {
       controller = new ControllerMVC(model, view);
     }
 
-    controller.runProgram();
+    try {
+      controller.runProgram();
+    } finally {
+      // the GUI keeps using the model after runProgram returns
+      if (args.length > 0) {
+        model.close();
+      }
+    }
+    if (controller instanceof BatchController) {
+      System.out.println(((BatchController) controller).getReport());
+    }
+    if (lazy && controller instanceof Controller) {
+      System.out.println(((Controller) controller).getSummary());
+    }
+    if (controller instanceof ScheduledController) {
+      System.out.println(((ScheduledController) controller).getReport());
+    }
+    if (cache != null) {
+      System.out.printf("result cache: %d hits, %d misses, %.1f MB kept%n", cache.getHitCount(),
+              cache.getMissCount(), cache.getBytes() / 1048576.0);
+    }
   }
 }
@@ -1,6 +1,8 @@
 package controller;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import model.IModel;
 
@@ -43,4 +45,29 @@ public abstract class AbstractCommand implements ICommand {
    * @throws QuitException when any parameter taken is command of quit
    */
   public abstract void run(IModel model, ArrayList<String> params) throws QuitException;
+
+  /**
+   * Gets the names of the images the command reads, which are every parameter but the last,
+   * as the old image name and the mask name.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return params.isEmpty() ? Collections.emptyList() : params.subList(0, params.size() - 1);
+  }
+
+  /**
+   * Gets the names of the images the command writes, which is the last parameter, as the new
+   * image name.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images written
+   */
+  @Override
+  public List<String> getWrites(List<String> params) {
+    return params.isEmpty() ? Collections.emptyList()
+            : params.subList(params.size() - 1, params.size());
+  }
 }
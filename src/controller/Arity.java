@@ -0,0 +1,59 @@
+package controller;
+
+/**
+ * Class Arity represent how many parameters a script command takes. A command first takes its
+ * options, which are the parameters its {@link ICommand} is made from, like the delta of
+ * brighten, and then the names it runs on, like the old image name, the optional mask name
+ * and the new image name.
+ * Every command declares its arity next to its {@link ICommand} in
+ * {@link Controller#commandsInitialize()}, so a script can be checked before it runs.
+ */
+public final class Arity {
+  private final int options;
+  private final int least;
+  private final int most;
+
+  /**
+   * Constructor of Arity.
+   *
+   * @param options the number of options before the names
+   * @param least   the least number of names
+   * @param most    the most number of names
+   * @throws IllegalArgumentException if a number is negative, or most is less than least
+   */
+  public Arity(int options, int least, int most) throws IllegalArgumentException {
+    if (options < 0 || least < 0 || most < least) {
+      throw new IllegalArgumentException("not a valid arity");
+    }
+    this.options = options;
+    this.least = least;
+    this.most = most;
+  }
+
+  /**
+   * Gets the number of options before the names.
+   *
+   * @return the number of options
+   */
+  public int getOptions() {
+    return this.options;
+  }
+
+  /**
+   * Gets the least number of names after the options.
+   *
+   * @return the least number of names
+   */
+  public int getLeast() {
+    return this.least;
+  }
+
+  /**
+   * Gets the most number of names after the options.
+   *
+   * @return the most number of names
+   */
+  public int getMost() {
+    return this.most;
+  }
+}
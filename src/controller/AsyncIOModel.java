@@ -0,0 +1,407 @@
+package controller;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
+import model.ResultCache;
+import model.TileScheduler;
+import model.functions.Load;
+import model.functions.ModelFunctions;
+import model.functions.Save;
+import model.histogram.ChannelHistograms;
+import model.histogram.IHistogram;
+import utils.ImageUtil;
+
+/**
+ * Class AsyncIOModel is an {@link IModel} used by the {@link Controller} to overlap reading
+ * and writing files with the other commands of a script. Every file the script loads starts
+ * being read on a reader thread, in the order of the script, as soon as the script is checked,
+ * and a load only waits if its file is not read yet. A save hands the image to a writer
+ * thread and returns, and the files are written in the order they were saved. Any other call
+ * is passed on to the model it wraps.
+ * Half of the byte budget bounds the images read ahead and not loaded yet, and the other half
+ * the images waiting to be written; when one is full, the reader or the script waits. The
+ * size of a file is taken from its header before it is read; only a file whose header cannot
+ * be read is counted after it is read, so it can exceed its half by itself. A file
+ * the script saves is not read ahead, and loading it waits until every save before it is
+ * written, so it is read as the script left it. Paths are compared as absolute and
+ * normalized, so "./a.ppm" and "a.ppm" are the same file. Errors of a save are thrown by
+ * {@link #finish()}.
+ */
+public class AsyncIOModel implements IModel {
+  private final IModel model;
+  private final long byteBudget;
+  private final ExecutorService reader;
+  private final ExecutorService writer;
+  private final Map<String, Deque<Future<PixelBuffer>>> prefetched;
+  private final List<Future<?>> saves;
+  private long readBytes;
+  private long writeBytes;
+
+  /**
+   * Constructor for the model, which starts reading the files the script loads.
+   *
+   * @param model      the model calls are passed on to
+   * @param script     the checked commands of the script, in order
+   * @param byteBudget the max bytes of images read ahead or waiting to be written
+   * @throws IllegalArgumentException if byteBudget is not positive
+   */
+  public AsyncIOModel(IModel model, List<CompiledCommand> script, long byteBudget)
+          throws IllegalArgumentException {
+    if (byteBudget <= 0) {
+      throw new IllegalArgumentException("byte budget must be positive");
+    }
+    this.model = Objects.requireNonNull(model);
+    this.byteBudget = byteBudget;
+    this.reader = Executors.newSingleThreadExecutor();
+    this.writer = Executors.newSingleThreadExecutor();
+    this.prefetched = new HashMap<>();
+    this.saves = new ArrayList<>();
+
+    Set<String> saved = new HashSet<>();
+    for (CompiledCommand command : script) {
+      String path = command.getParams().isEmpty() ? "" : command.getParams().get(0);
+      String file = fileOf(path);
+      if (command.getCommand() instanceof controller.Save) {
+        saved.add(file);
+      } else if (command.getCommand() instanceof controller.Load && !saved.contains(file)) {
+        this.prefetched.computeIfAbsent(file, k -> new ArrayDeque<>())
+                .add(this.reader.submit(() -> this.read(path)));
+      }
+    }
+  }
+
+  /**
+   * Loads a file that was read ahead and hands a save to the writer thread. Any other
+   * function runs on the wrapped model.
+   *
+   * @param function is an instance of {@link ModelFunctions}
+   * @throws NullPointerException if an image the function reads does not exist
+   */
+  @Override
+  public void apply(ModelFunctions function) throws NullPointerException {
+    if (function instanceof Load) {
+      String path = function.getReads().get(0);
+      this.model.addToMap(function.getWrites().get(0), this.take(path));
+    } else if (function instanceof Save) {
+      Save save = (Save) function;
+      PixelBuffer image = this.model.getBufferFromMap(save.getReads().get(0));
+      long size = sizeOf(image);
+      this.reserve(size, false);
+      this.saves.add(this.writer.submit(() -> {
+        try {
+          save.write(image);
+        } finally {
+          this.release(size, false);
+        }
+      }));
+    } else {
+      this.model.apply(function);
+    }
+  }
+
+  /**
+   * Waits until every save is written and stops reading ahead.
+   *
+   * @throws IllegalStateException if a save failed
+   */
+  public void finish() throws IllegalStateException {
+    this.reader.shutdownNow();
+    try {
+      this.drain();
+    } finally {
+      this.writer.shutdown();
+    }
+  }
+
+  /**
+   * Applies the histogram on the model.
+   *
+   * @param histogram is an instance of {@link IHistogram}
+   * @return the summary of the histogram
+   */
+  @Override
+  public Map<Integer, Integer> apply(IHistogram histogram) {
+    return this.model.apply(histogram);
+  }
+
+  /**
+   * Gets a copy of the image according to the {@link String name}.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public PixelBuffer getBufferFromMap(String name) throws NullPointerException {
+    return this.model.getBufferFromMap(name);
+  }
+
+  /**
+   * Gets a copy of a pyramid level of the image according to the {@link String name}.
+   *
+   * @param name   is an instance of {@link String} which is
+   *               the name of image
+   * @param width  the width the level is at least
+   * @param height the height the level is at least
+   * @return the level as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public PixelBuffer getLevelFromMap(String name, int width, int height)
+          throws NullPointerException {
+    return this.model.getLevelFromMap(name, width, height);
+  }
+
+  /**
+   * Adds an image to the model.
+   *
+   * @param name  is {@link String name} of the image
+   * @param image the added image as {@link PixelBuffer}
+   */
+  @Override
+  public void addToMap(String name, PixelBuffer image) {
+    this.model.addToMap(name, image);
+  }
+
+  /**
+   * Adds an image that differs from the image named {@link String source} only in the
+   * samples of the mask to the model.
+   *
+   * @param name    is {@link String name} of the image
+   * @param image   the added image as {@link PixelBuffer}
+   * @param source  is {@link String name} of the image it was changed from
+   * @param changed the samples that were changed
+   */
+  @Override
+  public void addToMap(String name, PixelBuffer image, String source, Mask changed) {
+    this.model.addToMap(name, image, source, changed);
+  }
+
+  /**
+   * Gets the histograms of the image according to the {@link String name}.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the histograms of the image
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public ChannelHistograms getHistogramsFromMap(String name) throws NullPointerException {
+    return this.model.getHistogramsFromMap(name);
+  }
+
+  /**
+   * Gets the image according to the {@link String name} in the legacy format.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public int[][] getFromMap(String name) throws NullPointerException {
+    return this.model.getFromMap(name);
+  }
+
+  /**
+   * Adds an image in the legacy format to the model.
+   *
+   * @param name  is {@link String name} of the image
+   * @param image the added image
+   */
+  @Override
+  public void addToMap(String name, int[][] image) {
+    this.model.addToMap(name, image);
+  }
+
+  /**
+   * Removes the image according to the {@link String name} from the model.
+   *
+   * @param name is {@link String name} of the image
+   */
+  @Override
+  public void removeFromMap(String name) {
+    this.model.removeFromMap(name);
+  }
+
+  /**
+   * Checks whether the model has an image according to the {@link String name}.
+   *
+   * @param name is {@link String name} of the image
+   * @return true if there is an image with the name
+   */
+  @Override
+  public boolean isInMap(String name) {
+    return this.model.isInMap(name);
+  }
+
+  /**
+   * Gets the {@link TileScheduler} of the model.
+   *
+   * @return the tile scheduler
+   */
+  @Override
+  public TileScheduler getScheduler() {
+    return this.model.getScheduler();
+  }
+
+  /**
+   * Checks whether the model runs color transformations in the exact mode.
+   *
+   * @return true for the exact mode
+   */
+  @Override
+  public boolean isExact() {
+    return this.model.isExact();
+  }
+
+  /**
+   * Gets the {@link ResultCache} of the model.
+   *
+   * @return the result cache, or null if there is none
+   */
+  @Override
+  public ResultCache getCache() {
+    return this.model.getCache();
+  }
+
+  /**
+   * Closes the model calls are passed on to.
+   */
+  @Override
+  public void close() {
+    this.model.close();
+  }
+
+  /**
+   * Waits until the image of the file fits with the images read ahead, and reads it on the
+   * reader thread. When the header cannot be read, the image is counted after it is read.
+   */
+  private PixelBuffer read(String path) {
+    long estimate = 4 * ImageUtil.readPixelCount(path);
+    if (estimate < 0) {
+      PixelBuffer image = ImageUtil.readBuffer(path);
+      this.reserve(sizeOf(image), true);
+      return image;
+    }
+    this.reserve(estimate, true);
+    PixelBuffer image;
+    try {
+      image = ImageUtil.readBuffer(path);
+    } catch (RuntimeException e) {
+      this.release(estimate, true);
+      throw e;
+    }
+    // count what the image takes, in case the header was wrong
+    this.release(estimate - sizeOf(image), true);
+    return image;
+  }
+
+  /**
+   * Gets the image of the next load of the file, reading it now if it was not read ahead.
+   */
+  private PixelBuffer take(String path) {
+    Deque<Future<PixelBuffer>> queue = this.prefetched.get(fileOf(path));
+    if (queue == null || queue.isEmpty()) {
+      this.drain();
+      return ImageUtil.readBuffer(path);
+    }
+    PixelBuffer image = get(queue.poll());
+    this.release(sizeOf(image), true);
+    return image;
+  }
+
+  /**
+   * Waits until every save so far is written.
+   *
+   * @throws IllegalStateException if a save failed, with the message and cause of its failure
+   */
+  private void drain() throws IllegalStateException {
+    try {
+      for (Future<?> save : this.saves) {
+        get(save);
+      }
+    } catch (RuntimeException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    } finally {
+      this.saves.clear();
+    }
+  }
+
+  private synchronized void reserve(long size, boolean read) {
+    try {
+      while (read ? this.readBytes > 0 && this.readBytes + size > this.byteBudget / 2
+              : this.writeBytes > 0 && this.writeBytes + size > this.byteBudget / 2) {
+        this.wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("reading or writing files was interrupted");
+    }
+    if (read) {
+      this.readBytes += size;
+    } else {
+      this.writeBytes += size;
+    }
+  }
+
+  private synchronized void release(long size, boolean read) {
+    if (read) {
+      this.readBytes -= size;
+    } else {
+      this.writeBytes -= size;
+    }
+    this.notifyAll();
+  }
+
+  /**
+   * Waits for the task, throwing what it threw.
+   */
+  private static <T> T get(Future<T> task) {
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("reading or writing files was interrupted");
+    }
+  }
+
+  /**
+   * Gets the absolute and normalized path of a file, so that the same file is always named
+   * the same.
+   */
+  private static String fileOf(String path) {
+    try {
+      return Paths.get(path).toAbsolutePath().normalize().toString();
+    } catch (InvalidPathException e) {
+      return path;
+    }
+  }
+
+  private static long sizeOf(PixelBuffer image) {
+    return 4L * image.getWidth() * image.getHeight();
+  }
+}
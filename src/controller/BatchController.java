@@ -0,0 +1,256 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import model.IModel;
+
+/**
+ * Class BatchController runs one script on every image of a directory. In the script,
+ * "$input" is replaced by the path of the image, "$output" by the output directory and
+ * "$name" by the file name of the image without its extension, so paths cannot contain
+ * whitespace. When the script uses "$name", images whose names only differ in the extension
+ * would write the same files, so the batch does not start. Every image runs as a job with its own {@link model.IModel} from the given
+ * supplier, which is closed when the job ends, and a number of jobs run at the same time;
+ * the memory the images of a job take is bounded by the model the supplier makes. With a
+ * byte budget for reading and writing files, every job reads and writes its files on an
+ * {@link AsyncIOModel}. A line is written as each image is done, with the time it took,
+ * and an image that fails is reported without stopping the others. The
+ * first image runs before the others start, so a script that does not work stops the batch
+ * before it runs on every image.
+ */
+public final class BatchController implements IController {
+  private static final List<String> EXTENSIONS = Arrays.asList("ppm", "png", "jpg", "jpeg",
+          "bmp");
+
+  private final Supplier<IModel> models;
+  private final String template;
+  private final File inputDirectory;
+  private final File outputDirectory;
+  private final int workers;
+  private final boolean lazy;
+  private final long ioBudget;
+  private final Appendable output;
+  private final List<Long> latencies;
+  private int failed;
+  private long elapsed;
+
+  /**
+   * Constructor of BatchController.
+   *
+   * @param models          makes a new model for every image
+   * @param template        the script run on every image
+   * @param inputDirectory  the directory of the images
+   * @param outputDirectory the directory "$output" is replaced by, created if it is missing
+   * @param workers         the number of images processed at the same time
+   * @param lazy            true to run only the commands of the {@link LazyPlan} of the script
+   * @param output          where a line is written as each image is done
+   * @throws IllegalArgumentException when an argument is null, or workers is not positive
+   */
+  public BatchController(Supplier<IModel> models, String template, String inputDirectory,
+                         String outputDirectory, int workers, boolean lazy, Appendable output)
+          throws IllegalArgumentException {
+    this(models, template, inputDirectory, outputDirectory, workers, lazy, 0, output);
+  }
+
+  /**
+   * Constructor of BatchController, whose jobs read and write their files on an
+   * {@link AsyncIOModel} when given a byte budget for it.
+   *
+   * @param models          makes a new model for every image
+   * @param template        the script run on every image
+   * @param inputDirectory  the directory of the images
+   * @param outputDirectory the directory "$output" is replaced by, created if it is missing
+   * @param workers         the number of images processed at the same time
+   * @param lazy            true to run only the commands of the {@link LazyPlan} of the script
+   * @param ioBudget        the max bytes of images a job reads ahead or has waiting to be
+   *                        written, or 0 to read and write files when the commands run
+   * @param output          where a line is written as each image is done
+   * @throws IllegalArgumentException when an argument is null, workers is not positive or
+   *                                  ioBudget is negative
+   */
+  public BatchController(Supplier<IModel> models, String template, String inputDirectory,
+                         String outputDirectory, int workers, boolean lazy, long ioBudget,
+                         Appendable output) throws IllegalArgumentException {
+    if (models == null || template == null || inputDirectory == null
+            || outputDirectory == null || output == null) {
+      throw new IllegalArgumentException("arguments of the batch cannot be null");
+    }
+    if (workers <= 0) {
+      throw new IllegalArgumentException("number of workers must be positive");
+    }
+    if (ioBudget < 0) {
+      throw new IllegalArgumentException("byte budget cannot be negative");
+    }
+    this.models = models;
+    this.template = template;
+    this.inputDirectory = new File(inputDirectory);
+    this.outputDirectory = new File(outputDirectory);
+    this.workers = workers;
+    this.lazy = lazy;
+    this.ioBudget = ioBudget;
+    this.output = output;
+    this.latencies = new ArrayList<>();
+  }
+
+  /**
+   * runProgram runs the script on every image of the input directory, in the order of their
+   * names, and writes a line as each one is done.
+   *
+   * @throws IllegalStateException when the input directory cannot be read, two images have
+   *                               the same "$name", the output directory cannot be created,
+   *                               the script fails on the first image or the output cannot be
+   *                               written.
+   */
+  @Override
+  public void runProgram() throws IllegalStateException {
+    File[] files = this.inputDirectory.listFiles(
+        file -> file.isFile() && EXTENSIONS.contains(extensionOf(file.getName())));
+    if (files == null) {
+      throw new IllegalStateException("Cannot read directory " + this.inputDirectory);
+    }
+    Arrays.sort(files);
+    if (this.template.contains("$name")) {
+      Map<String, String> names = new HashMap<>();
+      List<String> clashes = new ArrayList<>();
+      for (File file : files) {
+        String other = names.putIfAbsent(nameOf(file), file.getName());
+        if (other != null) {
+          clashes.add(other + " and " + file.getName());
+        }
+      }
+      if (!clashes.isEmpty()) {
+        throw new IllegalStateException("images have the same $name: "
+                + String.join(", ", clashes));
+      }
+    }
+    if (!this.outputDirectory.isDirectory() && !this.outputDirectory.mkdirs()) {
+      throw new IllegalStateException("Cannot create directory " + this.outputDirectory);
+    }
+    this.latencies.clear();
+    this.failed = 0;
+    long start = System.nanoTime();
+    if (files.length > 0) {
+      this.report(files[0].getName(), this.run(files[0]), null);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+    CompletionService<Long> done = new ExecutorCompletionService<>(pool);
+    try {
+      for (int i = 1; i < files.length; i++) {
+        File file = files[i];
+        done.submit(() -> this.report(file.getName(), this.run(file), null));
+      }
+      for (int i = 1; i < files.length; i++) {
+        try {
+          done.take().get();
+        } catch (ExecutionException e) {
+          this.report(null, 0, e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("batch was interrupted");
+    } finally {
+      pool.shutdownNow();
+    }
+    this.elapsed = System.nanoTime() - start;
+  }
+
+  /**
+   * Gets a summary of the last batch: the number of images, the throughput and the
+   * percentiles of the time an image took.
+   *
+   * @return the report
+   * @throws IllegalStateException when no batch has run yet
+   */
+  public synchronized String getReport() throws IllegalStateException {
+    if (this.elapsed == 0) {
+      throw new IllegalStateException("no batch has run yet");
+    }
+    List<Long> sorted = new ArrayList<>(this.latencies);
+    Collections.sort(sorted);
+    int images = sorted.size() + this.failed;
+    return String.format("%d images (%d failed) in %.1f s, %.1f images/s, latency p50 %.1f ms,"
+                    + " p90 %.1f ms, p99 %.1f ms, max %.1f ms", images, this.failed,
+            this.elapsed / 1e9, images / (this.elapsed / 1e9), percentile(sorted, 50) / 1e6,
+            percentile(sorted, 90) / 1e6, percentile(sorted, 99) / 1e6,
+            percentile(sorted, 100) / 1e6);
+  }
+
+  /**
+   * Runs the script on the image.
+   *
+   * @return the time it took in nanoseconds
+   * @throws IllegalStateException with the name of the image, when the script fails on it
+   */
+  private long run(File file) throws IllegalStateException {
+    String name = file.getName();
+    String script = this.template.replace("$input", file.getPath())
+            .replace("$output", this.outputDirectory.getPath())
+            .replace("$name", nameOf(file));
+    long start = System.nanoTime();
+    IModel model = this.models.get();
+    try {
+      new Controller(model, new StringReader(script), this.lazy, this.ioBudget).runProgram();
+    } catch (RuntimeException e) {
+      throw new IllegalStateException(name + ": " + e.getMessage());
+    } finally {
+      model.close();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Writes the line of an image that is done, and counts it.
+   *
+   * @return the time the image took
+   */
+  private synchronized long report(String name, long latency, Throwable failure)
+          throws IllegalStateException {
+    try {
+      if (failure != null) {
+        this.failed++;
+        this.output.append("failed ").append(failure.getMessage()).append('\n');
+      } else {
+        this.latencies.add(latency);
+        this.output.append(String.format("%s done in %.1f ms%n", name, latency / 1e6));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot write the progress of the batch");
+    }
+    return latency;
+  }
+
+  private static long percentile(List<Long> sorted, int percent) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+
+  private static String nameOf(File file) {
+    String name = file.getName();
+    return name.substring(0, name.lastIndexOf('.'));
+  }
+
+  private static String extensionOf(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,80 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import model.IModel;
+
+/**
+ * Class CompiledCommand represent one command of a script checked by {@link ScriptCompiler}.
+ * It holds the {@link ICommand} made from the options of the command and the names it runs
+ * on, so it runs without reading the script again.
+ */
+public final class CompiledCommand {
+  private final int line;
+  private final String name;
+  private final ICommand command;
+  private final List<String> params;
+
+  /**
+   * Constructor of CompiledCommand.
+   *
+   * @param line    the line of the script the command starts on
+   * @param name    the name of the command
+   * @param command the command made from the options
+   * @param params  the names the command runs on
+   */
+  public CompiledCommand(int line, String name, ICommand command, List<String> params) {
+    this.line = line;
+    this.name = Objects.requireNonNull(name);
+    this.command = Objects.requireNonNull(command);
+    this.params = Collections.unmodifiableList(new ArrayList<>(params));
+  }
+
+  /**
+   * Gets the line of the script the command starts on.
+   *
+   * @return the line, counted from 1
+   */
+  public int getLine() {
+    return this.line;
+  }
+
+  /**
+   * Gets the name of the command.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Gets the {@link ICommand} made from the options of the command.
+   *
+   * @return the command
+   */
+  public ICommand getCommand() {
+    return this.command;
+  }
+
+  /**
+   * Gets the names the command runs on.
+   *
+   * @return the names
+   */
+  public List<String> getParams() {
+    return this.params;
+  }
+
+  /**
+   * Runs the command on the model.
+   *
+   * @param model is the instance of {@link model.IModel} to accept commands
+   */
+  public void run(IModel model) {
+    this.command.run(model, new ArrayList<>(this.params));
+  }
+}
@@ -1,7 +1,7 @@
 package controller;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Stack;
@@ -29,8 +29,12 @@ import model.IModel;
 public class Controller implements IController {
   protected final IModel model;
   protected final Map<String, Function<Scanner, ICommand>> commandMap;
+  protected final Map<String, Arity> arityMap;
   private final Readable input;
   private final Stack<ICommand> commands;
+  private final boolean lazy;
+  private final long ioBudget;
+  private LazyPlan plan;
 
   /**
    * Constructor of Controller. It takes in {@link model.IModel model} and {@link Readable input}.
@@ -42,122 +46,209 @@ public class Controller implements IController {
    *                                  given is null.
    */
   public Controller(IModel model, Readable input) throws IllegalArgumentException {
+    this(model, input, false);
+  }
+
+  /**
+   * Constructor of Controller. It takes in {@link model.IModel model}, {@link Readable input}
+   * and whether the script is run lazily, as a {@link LazyPlan} that only computes the images
+   * that are saved or materialized and frees every image after its last use.
+   * {@link model.IModel model} and {@link Readable input} can not be null.
+   *
+   * @param model is instances of {@link model.IModel} given to be controlled.
+   * @param input is instance of {@link Readable} given to instruct the running of program.
+   * @param lazy  true to run the script lazily
+   * @throws IllegalArgumentException when {@link model.IModel model} or {@link Readable input}
+   *                                  given is null.
+   */
+  public Controller(IModel model, Readable input, boolean lazy)
+          throws IllegalArgumentException {
+    this(model, input, lazy, 0);
+  }
+
+  /**
+   * Constructor of Controller. It takes in {@link model.IModel model}, {@link Readable input},
+   * whether the script is run lazily and the byte budget of an {@link AsyncIOModel} that reads
+   * the files the script loads ahead and writes the files it saves behind it.
+   * {@link model.IModel model} and {@link Readable input} can not be null.
+   *
+   * @param model    is instances of {@link model.IModel} given to be controlled.
+   * @param input    is instance of {@link Readable} given to instruct the running of program.
+   * @param lazy     true to run the script lazily
+   * @param ioBudget the max bytes of images read ahead or waiting to be written, or 0 to read
+   *                 and write files when the commands run
+   * @throws IllegalArgumentException when {@link model.IModel model} or {@link Readable input}
+   *                                  given is null, or ioBudget is negative.
+   */
+  public Controller(IModel model, Readable input, boolean lazy, long ioBudget)
+          throws IllegalArgumentException {
+    if (ioBudget < 0) {
+      throw new IllegalArgumentException("byte budget cannot be negative");
+    }
     if (model == null || input == null) {
       throw new IllegalArgumentException("something is NULL");
     }
     this.model = model;
     this.input = input;
+    this.lazy = lazy;
+    this.ioBudget = ioBudget;
     this.commands = new Stack<>();
     this.commandMap = new HashMap<>();
+    this.arityMap = new HashMap<>();
   }
 
   // initialization for known commands. It is designed as helper method to facilitate possible
-  // delegation usage.
+  // delegation usage. Every command declares its arity: the options its command is made from,
+  // and the least and most names it runs on, where the extra name is the mask.
   void commandsInitialize() {
     commandMap.put("brighten", (Scanner s) -> new BrightenCommand(s.next()));
+    arityMap.put("brighten", new Arity(1, 2, 3));
     commandMap.put("vertical-flip", (Scanner s) -> new VerticalFlipCommand());
+    arityMap.put("vertical-flip", new Arity(0, 2, 2));
     commandMap.put("horizontal-flip", (Scanner s) -> new HorizontalFlipCommand());
+    arityMap.put("horizontal-flip", new Arity(0, 2, 2));
     commandMap.put("save", (Scanner s) -> new Save());
+    arityMap.put("save", new Arity(0, 2, 2));
+    commandMap.put("save-binary", (Scanner s) -> new SaveBinary());
+    arityMap.put("save-binary", new Arity(0, 2, 2));
     commandMap.put("load", (Scanner s) -> new Load());
+    arityMap.put("load", new Arity(0, 2, 2));
     commandMap.put("blue-greyscale", (Scanner s) -> new GreyScaleBlueCommand());
+    arityMap.put("blue-greyscale", new Arity(0, 2, 3));
     commandMap.put("red-greyscale", (Scanner s) -> new GreyScaleRedCommand());
+    arityMap.put("red-greyscale", new Arity(0, 2, 3));
     commandMap.put("green-greyscale", (Scanner s) -> new GreyScaleGreenCommand());
+    arityMap.put("green-greyscale", new Arity(0, 2, 3));
     commandMap.put("luma-greyscale", (Scanner s) -> new GreyScaleLumaCommand());
+    arityMap.put("luma-greyscale", new Arity(0, 2, 3));
     commandMap.put("intensity-greyscale", (Scanner s) -> new GreyScaleIntensityCommand());
+    arityMap.put("intensity-greyscale", new Arity(0, 2, 3));
     commandMap.put("value-greyscale", (Scanner s) -> new GreyScaleValueCommand());
+    arityMap.put("value-greyscale", new Arity(0, 2, 3));
     commandMap.put("blur", (Scanner s) -> new BlurCommand());
+    arityMap.put("blur", new Arity(0, 2, 3));
     commandMap.put("sharpen", (Scanner s) -> new SharpenCommand());
+    arityMap.put("sharpen", new Arity(0, 2, 3));
     commandMap.put("greyscale", (Scanner s) -> new GreyScaleCommand());
+    arityMap.put("greyscale", new Arity(0, 2, 3));
     commandMap.put("sepia-tone", (Scanner s) -> new SepiaToneCommand());
+    arityMap.put("sepia-tone", new Arity(0, 2, 3));
     commandMap.put("down-scale", (Scanner s) -> new DownScaleCommand(s.next(), s.next()));
+    arityMap.put("down-scale", new Arity(2, 2, 2));
+    commandMap.put("box-down-scale",
+        (Scanner s) -> new DownScaleCommand(s.next(), s.next(), true));
+    arityMap.put("box-down-scale", new Arity(2, 2, 2));
+    commandMap.put("resize", (Scanner s) -> new ResizeCommand(s.next(), s.next(), s.next()));
+    arityMap.put("resize", new Arity(3, 2, 2));
+    commandMap.put("materialize", (Scanner s) -> new MaterializeCommand());
+    arityMap.put("materialize", new Arity(0, 1, 1));
   }
 
   /**
    * runProgram is the method that run the program based on instance of IModel.This method
-   * use the {@link Readable input} to decide which command to use. It will continue running
-   * util receive "q"/"quit"(ignore case) command or run out of command. It handles any
-   * IllegalArgumentException from what it is controlling.
+   * use the {@link Readable input} to decide which command to use. It reads the commands
+   * until "q"/"quit"(ignore case) command or run out of command, checks them with a
+   * {@link ScriptCompiler} and only then runs them, so a script with an error anywhere does
+   * nothing. It handles any IllegalArgumentException from what it is controlling.
+   * Commands run on a {@link FusingModel}, so consecutive point operations whose images in
+   * between are never read run as one pass over the image, and those images are not kept
+   * unless they are materialized. They run on an {@link AsyncIOModel} over it when the
+   * controller has a byte budget for reading and writing files.
    *
-   * @throws IllegalStateException was thrown to handle the situation that
-   *                               IllegalArgumentException was thrown by what it is controlling.
+   * @throws IllegalStateException was thrown to handle the situation that the script has
+   *                               errors, or IllegalArgumentException was thrown by what it
+   *                               is controlling.
    */
   @Override
   public void runProgram() throws IllegalStateException {
     this.commandsInitialize();
+    this.run(this.compile());
+  }
 
-    Scanner scanner = new Scanner(this.input);
-    String inputHolder = "";
-
-    while (scanner.hasNext() && !QuitException.isQuitException(inputHolder)) {
-
-      ICommand c;
-      String in = "";
-      if (inputHolder.isEmpty()) {
-        in = scanner.next();
-      } else {
-        in = inputHolder;
-        inputHolder = "";
-      }
-
-      if (QuitException.isQuitException(in)) {
-        return;
+  /**
+   * Runs checked commands on a {@link FusingModel}, and on an {@link AsyncIOModel} over it
+   * when the controller has a byte budget for reading and writing files.
+   *
+   * @param script the commands
+   * @throws IllegalStateException was thrown to handle the situation that
+   *                               IllegalArgumentException was thrown by what it is controlling.
+   */
+  void run(List<CompiledCommand> script) throws IllegalStateException {
+    FusingModel fused = new FusingModel(this.model);
+    AsyncIOModel io = this.ioBudget > 0 ? new AsyncIOModel(fused, script, this.ioBudget) : null;
+    try {
+      this.runCommands(script, io == null ? fused : io);
+    } finally {
+      try {
+        if (io != null) {
+          io.finish();
+        }
+      } finally {
+        fused.finish();
       }
+    }
+  }
 
-      Function<Scanner, ICommand> cmd =
-              commandMap.getOrDefault(in.toLowerCase(), null);
-
-      if (cmd == null) {
-        throw new IllegalStateException("no such command! try a new one!");
-      } else {
-        try {
-          c = cmd.apply(scanner);
-          commands.add(c);
-
-          String param1 = scanner.next();
-          if (QuitException.isQuitException(param1)) {
-            return;
-          }
+  /**
+   * Gets the summary of the commands the last lazy run skipped and the images it freed.
+   *
+   * @return the summary
+   * @throws IllegalStateException if no script has run lazily yet
+   */
+  public String getSummary() throws IllegalStateException {
+    if (this.plan == null) {
+      throw new IllegalStateException("no script has run lazily yet");
+    }
+    return this.plan.getSummary();
+  }
 
-          String param2 = scanner.next();
-          if (QuitException.isQuitException(param2)) {
-            return;
-          }
+  /**
+   * Reads the commands from the {@link Readable input} and checks them, where a command can
+   * read the images the model already has. When the script runs lazily, only the commands of
+   * its {@link LazyPlan} are returned.
+   *
+   * @return the commands in order
+   * @throws IllegalStateException if the script has errors
+   */
+  List<CompiledCommand> compile() throws IllegalStateException {
+    return this.compile(this.input);
+  }
 
-          try {
-            ArrayList<String> params = new ArrayList<>();
-            params.add(param1);
-            params.add(param2);
-            params.add(null);
-            c.run(this.model, params);
-          } catch (IllegalArgumentException argumentException){
-            ArrayList<String> params = new ArrayList<>();
-            params.add(param1);
-            params.add(param2);
-            c.run(this.model, params);
-          } catch (NullPointerException nullPointerException){
-            String param3 = scanner.next();
-            if (commandMap.containsKey(param3) || QuitException.isQuitException(param3)) {
-              inputHolder = param3;
-              ArrayList<String> params = new ArrayList<>();
-              params.add(param1);
-              params.add(param2);
-              c.run(this.model, params);
-            } else {
-              ArrayList<String> params = new ArrayList<>();
-              params.add(param1);
-              params.add(param2);
-              params.add(param3);
-              c.run(this.model, params);
-            }
-          }
+  /**
+   * Reads the commands from the given {@link Readable input} and checks them like
+   * {@link #compile()}.
+   *
+   * @param input is instance of {@link Readable} the commands are read from
+   * @return the commands in order
+   * @throws IllegalStateException if the script has errors
+   */
+  List<CompiledCommand> compile(Readable input) throws IllegalStateException {
+    List<CompiledCommand> script =
+            new ScriptCompiler(this.commandMap, this.arityMap, this.model::isInMap)
+                    .compile(input);
+    if (!this.lazy) {
+      return script;
+    }
+    this.plan = new LazyPlan(script);
+    return this.plan.getCommands();
+  }
 
-        } catch (IllegalArgumentException e) {
-          throw new IllegalStateException("something went wrong in running program!");
-        } catch (NullPointerException | QuitException e2) {
-          return;
-        }
+  /**
+   * Runs the checked commands on the given model in order.
+   *
+   * @param script the commands
+   * @param target the model the commands run on
+   * @throws IllegalStateException was thrown to handle the situation that
+   *                               IllegalArgumentException was thrown by what it is controlling.
+   */
+  void runCommands(List<CompiledCommand> script, IModel target) throws IllegalStateException {
+    try {
+      for (CompiledCommand command : script) {
+        this.commands.add(command.getCommand());
+        command.run(target);
       }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("something went wrong in running program!");
     }
-
   }
 }
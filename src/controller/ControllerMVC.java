@@ -1,10 +1,8 @@
 package controller;
 
 import java.io.StringReader;
-import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Stack;
 
 import model.IModel;
@@ -59,6 +57,14 @@ public class ControllerMVC extends Controller implements IController {
     }
   }
 
+  // materialize only matters to scripts run lazily, so it gets no button.
+  @Override
+  void commandsInitialize() {
+    super.commandsInitialize();
+    super.commandMap.remove("materialize");
+    super.arityMap.remove("materialize");
+  }
+
   private void configureActionMap() {
     for (String commandName : super.commandMap.keySet()) {
       this.actionMap.put(commandName, new RunnableAction(super.commandMap.get(commandName),
@@ -70,12 +76,7 @@ public class ControllerMVC extends Controller implements IController {
     Map<String, Integer> actionsWithParamMap = new HashMap<>();
 
     for (String commandName : super.commandMap.keySet()) {
-      Class<? extends ICommand> commandClass =
-              super.commandMap.get(commandName).apply(new Scanner
-                      (new StringReader("0 0"))).getClass();
-      Constructor[] constructors = commandClass.getConstructors();
-      int paramsCount = constructors[0].getParameterCount();
-      actionsWithParamMap.put(commandName, paramsCount);
+      actionsWithParamMap.put(commandName, super.arityMap.get(commandName).getOptions());
     }
 
     return actionsWithParamMap;
@@ -9,7 +9,7 @@ import model.functions.flip.VerticalFlip;
 
 /**
  * Class DownScaleCommand represent a command that uses
- * {@link Downsize#Downsize(int, int, ArrayList)}.
+ * {@link Downsize#Downsize(int, int, boolean, ArrayList)}.
  * It extends {@link controller.AbstractCommand}.
  * It executes command over {@link model.IModel model}.
  * If it meets a command of quit, then throw {@link QuitException} to
@@ -19,6 +19,7 @@ import model.functions.flip.VerticalFlip;
 public class DownScaleCommand extends AbstractCommand {
   private final int width;
   private final int height;
+  private final boolean box;
 
   /**
    * Constructor of DownScaleCommand, which takes in two parameter {@link Integer width}
@@ -31,6 +32,22 @@ public class DownScaleCommand extends AbstractCommand {
    * @throws QuitException            when any parameter taken is smaller than 0
    */
   public DownScaleCommand(String width, String height) {
+    this(width, height, false);
+  }
+
+  /**
+   * Constructor of DownScaleCommand, which can average every pixel a result pixel covers
+   * instead of interpolating.
+   *
+   * @param width represent the width of aimed size.
+   * @param height represent the height of aimed size.
+   * @param box true to average the covered pixels
+   * @throws IllegalArgumentException when {@link Integer width} or {@link Integer height}
+   *                                  given is not numeric.
+   * @throws QuitException            when any parameter taken is smaller than 0
+   */
+  public DownScaleCommand(String width, String height, boolean box) {
+    this.box = box;
     try {
       this.width = Integer.parseInt(width);
       this.height = Integer.parseInt(height);
@@ -64,6 +81,6 @@ public class DownScaleCommand extends AbstractCommand {
    */
   @Override
   public void run(IModel model, ArrayList<String> params) throws QuitException{
-    model.apply(new Downsize(this.width,this.height,params));
+    model.apply(new Downsize(this.width, this.height, this.box, params));
   }
 }
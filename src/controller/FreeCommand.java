@@ -0,0 +1,42 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.IModel;
+import model.functions.Free;
+
+/**
+ * Class FreeCommand represent a command that uses {@link Free#Free(ArrayList)}. It is not
+ * part of the script language; a {@link LazyPlan} puts it after the last command that reads
+ * an image.
+ * It extends {@link controller.AbstractCommand}.
+ * It executes command over {@link model.IModel model}.
+ * This is designed in controller pattern.
+ */
+public class FreeCommand extends AbstractCommand {
+
+  /**
+   * Execution method of FreeCommand.
+   *
+   * @param model  is the instance of {@link model.IModel} to accept commands
+   * @param params represents all string needed for run command
+   * @throws QuitException when any parameter taken is command of quit
+   */
+  @Override
+  public void run(IModel model, ArrayList<String> params) throws QuitException {
+    model.apply(new Free(params));
+  }
+
+  /**
+   * Gets the names of the images the command reads, which is nothing.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return Collections.emptyList();
+  }
+}
@@ -0,0 +1,419 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
+import model.ResultCache;
+import model.TileScheduler;
+import model.functions.Memoizable;
+import model.functions.ModelFunctions;
+import model.functions.PointChain;
+import model.functions.PointFunction;
+import model.histogram.ChannelHistograms;
+import model.histogram.IHistogram;
+
+/**
+ * Class FusingModel is an {@link IModel} used by the {@link Controller} while it runs a
+ * script. It passes every call on to the model it wraps, except for unmasked
+ * {@link PointFunction}s, which are held back as long as each one reads the image the one
+ * before it wrote. The held functions run as one {@link PointChain} as soon as anything else
+ * happens, and only the image of the last function is stored. Unless the model is in the
+ * exact mode, neighbouring color matrices of the chain are multiplied into one.
+ * The images the other held functions wrote are kept as the name of the source image and the
+ * functions leading to them, so no pixels are held outside the model and its byte budget.
+ * They are only computed if they are read before their name is written again, so an image
+ * that is overwritten, removed or never read is never computed. Before the source image is
+ * written or removed, the images held back on it are computed. When the script ends, the
+ * images still held back are dropped, unless they are read afterwards.
+ */
+public class FusingModel implements IModel {
+  private final IModel model;
+  private final List<PointFunction> pending;
+  private final Map<String, Deferred> deferred;
+  private final Map<String, Integer> dropped;
+  private PixelBuffer pendingSource;
+  private String pendingSourceName;
+
+  /**
+   * Constructor for the fusing model.
+   *
+   * @param model the model calls are passed on to
+   */
+  public FusingModel(IModel model) {
+    this.model = Objects.requireNonNull(model);
+    this.pending = new ArrayList<>();
+    this.deferred = new LinkedHashMap<>();
+    this.dropped = new HashMap<>();
+  }
+
+  /**
+   * Holds back an unmasked point function that continues the held ones, and runs any other
+   * function on this model, through the {@link ResultCache} of the model if there is one.
+   * Every image it reads or writes is read or written after the held ones, while an image it
+   * removes does not make them run.
+   *
+   * @param function is an instance of {@link ModelFunctions}
+   * @throws NullPointerException if the source image of a point function does not exist
+   */
+  @Override
+  public void apply(ModelFunctions function) throws NullPointerException {
+    if (!(function instanceof PointFunction) || ((PointFunction) function).isMasked()) {
+      ResultCache cache = this.model.getCache();
+      if (cache != null && function instanceof Memoizable) {
+        cache.apply((Memoizable) function, this);
+      } else {
+        function.apply(this);
+      }
+      return;
+    }
+    PointFunction point = (PointFunction) function;
+    if (this.pending.isEmpty() || !point.getSource()
+            .equals(this.pending.get(this.pending.size() - 1).getDestination())) {
+      this.flush();
+      // read the source right away, so a missing image fails at the same command
+      this.pendingSource = this.getBufferFromMap(point.getSource());
+      this.pendingSourceName = point.getSource();
+    }
+    this.pending.add(point);
+  }
+
+  /**
+   * Applies a strategy function object {@link IHistogram histogram} on the model after the
+   * held functions.
+   *
+   * @param histogram is an instance of {@link IHistogram}
+   */
+  @Override
+  public Map<Integer, Integer> apply(IHistogram histogram) {
+    this.flush();
+    return histogram.summary(this);
+  }
+
+  /**
+   * Gets a copy of the image according to the {@link String name}, computing it first if
+   * it was held back.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public PixelBuffer getBufferFromMap(String name) throws NullPointerException {
+    this.flush();
+    this.resolve(name);
+    return this.model.getBufferFromMap(name);
+  }
+
+  /**
+   * Gets a copy of a pyramid level of the image according to the {@link String name},
+   * computing the image first if it was held back.
+   *
+   * @param name   is an instance of {@link String} which is
+   *               the name of image
+   * @param width  the least width of the level
+   * @param height the least height of the level
+   * @return the level as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public PixelBuffer getLevelFromMap(String name, int width, int height)
+          throws NullPointerException {
+    this.flush();
+    this.resolve(name);
+    return this.model.getLevelFromMap(name, width, height);
+  }
+
+  /**
+   * Adds an image to the model after the held functions.
+   *
+   * @param name  is {@link String name} of the image
+   * @param image the added image as {@link PixelBuffer}
+   */
+  @Override
+  public void addToMap(String name, PixelBuffer image) {
+    this.flush();
+    this.deferred.remove(name);
+    this.release(name);
+    this.model.addToMap(name, image);
+  }
+
+  /**
+   * Adds an image that differs from the image named {@link String source} only in the
+   * samples of the mask to the model after the held functions.
+   *
+   * @param name    is {@link String name} of the image
+   * @param image   the added image as {@link PixelBuffer}
+   * @param source  the name of image the added image was changed from
+   * @param changed the mask that selects every sample that may have changed
+   */
+  @Override
+  public void addToMap(String name, PixelBuffer image, String source, Mask changed) {
+    this.flush();
+    this.deferred.remove(name);
+    this.release(name);
+    this.model.addToMap(name, image, source, changed);
+  }
+
+  /**
+   * Gets the histograms of the image according to the {@link String name}, computing the
+   * image first if it was held back.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the histograms
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public ChannelHistograms getHistogramsFromMap(String name) throws NullPointerException {
+    this.flush();
+    this.resolve(name);
+    return this.model.getHistogramsFromMap(name);
+  }
+
+  /**
+   * Gets the image according to the {@link String name} in the legacy format, computing it
+   * first if it was held back.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public int[][] getFromMap(String name) throws NullPointerException {
+    this.flush();
+    this.resolve(name);
+    return this.model.getFromMap(name);
+  }
+
+  /**
+   * Adds an image in the legacy format to the model after the held functions.
+   *
+   * @param name  is {@link String name} of the image
+   * @param image the added image
+   */
+  @Override
+  public void addToMap(String name, int[][] image) {
+    this.addToMap(name, PixelBuffer.fromLegacy(image));
+  }
+
+  /**
+   * Removes the image according to the {@link String name} from the model. An image held back
+   * is dropped without being computed, and so is the image a held function writes, unless a
+   * function held after the removal writes it again. The images held back on the removed
+   * image are computed first, and the images the held functions write are not held back
+   * on it.
+   *
+   * @param name is {@link String name} of the image
+   */
+  @Override
+  public void removeFromMap(String name) {
+    if (name.equals(this.pendingSourceName)) {
+      this.pendingSourceName = null;
+    }
+    this.deferred.remove(name);
+    this.release(name);
+    if (!this.pending.isEmpty()) {
+      this.dropped.put(name, this.pending.size());
+    }
+    this.model.removeFromMap(name);
+  }
+
+  /**
+   * Checks whether there is an image according to the {@link String name}, held back or in
+   * the model, after the held functions.
+   *
+   * @param name is {@link String name} of the image
+   * @return true if there is an image with the name
+   */
+  @Override
+  public boolean isInMap(String name) {
+    this.flush();
+    return this.deferred.containsKey(name) || this.model.isInMap(name);
+  }
+
+  /**
+   * Gets the {@link TileScheduler} of the model.
+   *
+   * @return the tile scheduler
+   */
+  @Override
+  public TileScheduler getScheduler() {
+    return this.model.getScheduler();
+  }
+
+  /**
+   * Checks whether the model runs color transformations in the exact mode.
+   *
+   * @return true for the exact mode
+   */
+  @Override
+  public boolean isExact() {
+    return this.model.isExact();
+  }
+
+  /**
+   * Gets the {@link ResultCache} of the model, which the held functions are looked up in as
+   * one chain.
+   *
+   * @return the result cache, or null if results are not cached
+   */
+  @Override
+  public ResultCache getCache() {
+    return this.model.getCache();
+  }
+
+  /**
+   * Closes the model calls are passed on to.
+   */
+  @Override
+  public void close() {
+    this.model.close();
+  }
+
+  /**
+   * Runs the held functions and drops every image still held back, which nothing read, from
+   * the model. A materialized image is read, so it is kept.
+   */
+  public void finish() {
+    this.finish(name -> false);
+  }
+
+  /**
+   * Runs the held functions and computes the images still held back that are read
+   * afterwards. The others are dropped from the model without being computed, so the model
+   * does not keep an older image under their names.
+   *
+   * @param read whether an image is read after this model is finished
+   */
+  public void finish(Predicate<String> read) {
+    this.flush();
+    List<String> unread = new ArrayList<>();
+    for (String name : new ArrayList<>(this.deferred.keySet())) {
+      if (!read.test(name)) {
+        this.deferred.remove(name);
+        unread.add(name);
+      }
+    }
+    for (String name : new ArrayList<>(this.deferred.keySet())) {
+      this.resolve(name);
+    }
+    for (String name : unread) {
+      this.model.removeFromMap(name);
+    }
+  }
+
+  /**
+   * Runs the held functions as one chain and stores the image of the last one. The images
+   * of the others are held back, unless a later function in the chain writes the same name
+   * or the name was removed after them. When the image of the last one was removed too,
+   * nothing is computed. When the source image was removed, the images of the others are
+   * computed and stored right away, since they can no longer be held back on it.
+   */
+  private void flush() {
+    if (this.pending.isEmpty()) {
+      return;
+    }
+    List<PointFunction> chain = new ArrayList<>(this.pending);
+    PixelBuffer source = this.pendingSource;
+    String sourceName = this.pendingSourceName;
+    Map<String, Integer> dropped = new HashMap<>(this.dropped);
+    this.pending.clear();
+    this.pendingSource = null;
+    this.pendingSourceName = null;
+    this.dropped.clear();
+    boolean exact = this.model.isExact();
+
+    for (int i = 0; i < chain.size(); i++) {
+      String name = chain.get(i).getDestination();
+      this.deferred.remove(name);
+      boolean overwritten = i < dropped.getOrDefault(name, 0);
+      for (int j = i + 1; j < chain.size(); j++) {
+        overwritten |= chain.get(j).getDestination().equals(name);
+      }
+      if (!overwritten && i < chain.size() - 1) {
+        PointChain leading = new PointChain(chain.subList(0, i + 1), exact);
+        if (sourceName == null) {
+          this.release(name);
+          this.model.addToMap(name, this.run(leading, source));
+        } else {
+          this.deferred.put(name, new Deferred(sourceName, leading));
+        }
+      }
+    }
+    PointChain all = new PointChain(chain, exact);
+    if (chain.size() - 1 >= dropped.getOrDefault(all.getDestination(), 0)) {
+      PixelBuffer image = this.run(all, source);
+      this.release(all.getDestination());
+      this.model.addToMap(all.getDestination(), image);
+    }
+  }
+
+  /**
+   * Computes and stores the image of the name if it was held back.
+   *
+   * @param name the name of image
+   */
+  private void resolve(String name) {
+    Deferred image = this.deferred.remove(name);
+    if (image != null) {
+      PixelBuffer result = this.run(image.chain, this.model.getBufferFromMap(image.source));
+      this.release(name);
+      this.model.addToMap(name, result);
+    }
+  }
+
+  /**
+   * Computes and stores every image held back on the image of the name, before that image
+   * is written or removed.
+   *
+   * @param name the name of image
+   */
+  private void release(String name) {
+    for (Map.Entry<String, Deferred> entry : new ArrayList<>(this.deferred.entrySet())) {
+      if (entry.getValue().source.equals(name)) {
+        this.resolve(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Runs a chain on its source image, or reads its image back from the
+   * {@link ResultCache} of the model if the chain ran on the same image before.
+   *
+   * @param chain  the chain
+   * @param source the image the chain reads
+   * @return the image the chain writes
+   */
+  private PixelBuffer run(PointChain chain, PixelBuffer source) {
+    ResultCache cache = this.model.getCache();
+    if (cache == null) {
+      return chain.apply(source, this.model.getScheduler());
+    }
+    return cache.compute(chain.getOperation(), Collections.singletonList(source),
+            () -> chain.apply(source, this.model.getScheduler()));
+  }
+
+  /**
+   * An image held back as the name of its source image and the functions leading to it.
+   */
+  private static final class Deferred {
+    private final String source;
+    private final PointChain chain;
+
+    private Deferred(String source, PointChain chain) {
+      this.source = source;
+      this.chain = chain;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package controller;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import model.IModel;
 
@@ -22,4 +23,22 @@ public interface ICommand {
    * @throws QuitException when any parameter taken is command of quit
    */
   void run(IModel model, ArrayList<String> params) throws QuitException;
+
+  /**
+   * Gets the names of the images the command reads from the {@link model.IModel model} when it
+   * runs with the given parameters.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  List<String> getReads(List<String> params);
+
+  /**
+   * Gets the names of the images the command writes to the {@link model.IModel model} when it
+   * runs with the given parameters.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images written
+   */
+  List<String> getWrites(List<String> params);
 }
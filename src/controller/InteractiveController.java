@@ -0,0 +1,86 @@
+package controller;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+
+import model.IModel;
+
+/**
+ * Class InteractiveController is a {@link Controller} for commands typed in one line at a
+ * time. Every line is checked and run as soon as it is entered, so its images can be read by
+ * the lines after it, and it stops at "q"/"quit"(ignore case) or at the end of the input.
+ * A line is run as its own script, so point operations are only fused within a line, and
+ * scripts cannot be run lazily, since what a line computes may be read by a later one.
+ */
+public class InteractiveController extends Controller {
+  private final Readable lines;
+
+  /**
+   * Constructor of InteractiveController. It takes in {@link model.IModel model},
+   * {@link Readable input} and the byte budget of an {@link AsyncIOModel} that reads and
+   * writes the files of a line.
+   *
+   * @param model    is instances of {@link model.IModel} given to be controlled.
+   * @param input    is instance of {@link Readable} the commands are typed in.
+   * @param ioBudget the max bytes of images read ahead or waiting to be written, or 0 to read
+   *                 and write files when the commands run
+   * @throws IllegalArgumentException when {@link model.IModel model} or {@link Readable input}
+   *                                  given is null, or ioBudget is negative.
+   */
+  public InteractiveController(IModel model, Readable input, long ioBudget)
+          throws IllegalArgumentException {
+    super(model, input, false, ioBudget);
+    this.lines = input;
+  }
+
+  /**
+   * runProgram reads the input one line at a time, and checks and runs the commands of every
+   * line before reading the next one.
+   *
+   * @throws IllegalStateException was thrown to handle the situation that a line has errors,
+   *                               or IllegalArgumentException was thrown by what it is
+   *                               controlling.
+   */
+  @Override
+  public void runProgram() throws IllegalStateException {
+    this.commandsInitialize();
+    for (String line = this.readLine(); line != null; line = this.readLine()) {
+      this.run(this.compile(new StringReader(line)));
+      for (String word : line.trim().split("\\s+")) {
+        if (QuitException.isQuitException(word)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the next line, without reading ahead of it, since the next one may not be typed
+   * yet.
+   *
+   * @return the line, or null at the end of the input
+   * @throws IllegalStateException if the input cannot be read
+   */
+  private String readLine() throws IllegalStateException {
+    StringBuilder line = new StringBuilder();
+    CharBuffer next = CharBuffer.allocate(1);
+    try {
+      while (true) {
+        next.clear();
+        int read = this.lines.read(next);
+        if (read < 0) {
+          return line.length() == 0 ? null : line.toString();
+        }
+        if (read > 0) {
+          if (next.get(0) == '\n') {
+            return line.toString();
+          }
+          line.append(next.get(0));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot read the commands");
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class LazyPlan is the part of a checked script that is worth running. Only commands that
+ * save an image, materialize it, or write an image a later such command needs are kept, so
+ * images that are never saved or materialized are never computed. After the last command that
+ * reads an image, a {@link FreeCommand} removes it from the model, unless the image was
+ * materialized, which keeps it until it is written again.
+ */
+public final class LazyPlan {
+  private final List<CompiledCommand> commands;
+  private final List<CompiledCommand> skipped;
+  private final Set<String> skippedImages;
+  private final List<String> freed;
+  private final int total;
+
+  /**
+   * Constructor of LazyPlan.
+   *
+   * @param script the commands of the script in order
+   */
+  public LazyPlan(List<CompiledCommand> script) {
+    int n = script.size();
+    boolean[] live = new boolean[n];
+    List<Set<String>> unused = new ArrayList<>();
+    Set<String> needed = new HashSet<>();
+    for (int i = 0; i < n; i++) {
+      unused.add(new LinkedHashSet<>());
+    }
+    for (int i = n - 1; i >= 0; i--) {
+      List<String> reads = reads(script.get(i));
+      List<String> writes = writes(script.get(i));
+      for (String name : writes) {
+        live[i] |= needed.contains(name);
+      }
+      live[i] |= writes.isEmpty();
+      if (live[i]) {
+        // whatever no later command needs is not needed once this one is done
+        for (String name : reads) {
+          if (!needed.contains(name)) {
+            unused.get(i).add(name);
+          }
+        }
+        needed.removeAll(writes);
+        needed.addAll(reads);
+      }
+    }
+
+    this.commands = new ArrayList<>();
+    this.skipped = new ArrayList<>();
+    this.skippedImages = new LinkedHashSet<>();
+    this.freed = new ArrayList<>();
+    this.total = n;
+    Set<String> materialized = new HashSet<>();
+    for (int i = 0; i < n; i++) {
+      CompiledCommand command = script.get(i);
+      if (!live[i]) {
+        this.skipped.add(command);
+        this.skippedImages.addAll(writes(command));
+        continue;
+      }
+      materialized.removeAll(writes(command));
+      if (command.getCommand() instanceof MaterializeCommand) {
+        materialized.addAll(reads(command));
+      }
+      this.commands.add(command);
+      for (String name : unused.get(i)) {
+        if (!materialized.contains(name)) {
+          this.commands.add(new CompiledCommand(command.getLine(), "free", new FreeCommand(),
+                  Arrays.asList(name)));
+          this.freed.add(name);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the commands to run, with the commands that free images in between.
+   *
+   * @return the commands in order
+   */
+  public List<CompiledCommand> getCommands() {
+    return this.commands;
+  }
+
+  /**
+   * Gets the commands of the script that are not run, since nothing uses what they write.
+   *
+   * @return the skipped commands in order
+   */
+  public List<CompiledCommand> getSkipped() {
+    return this.skipped;
+  }
+
+  /**
+   * Gets the names of the images freed after their last use, in the order they are freed.
+   *
+   * @return the freed names
+   */
+  public List<String> getFreed() {
+    return this.freed;
+  }
+
+  /**
+   * Gets a summary of the commands skipped and the images freed.
+   *
+   * @return the summary
+   */
+  public String getSummary() {
+    return String.format("skipped %d of %d commands whose results are never used (%s),"
+                    + " freed %d images after their last use (%s)", this.skipped.size(),
+            this.total, names(this.skippedImages), this.freed.size(), names(this.freed));
+  }
+
+  private static String names(Iterable<String> names) {
+    String joined = String.join(", ", names);
+    return joined.isEmpty() ? "none" : joined;
+  }
+
+  private static List<String> reads(CompiledCommand command) {
+    return command.getCommand().getReads(command.getParams());
+  }
+
+  private static List<String> writes(CompiledCommand command) {
+    return command.getCommand().getWrites(command.getParams());
+  }
+}
@@ -1,6 +1,8 @@
 package controller;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import model.IModel;
 import model.functions.flip.VerticalFlip;
@@ -57,4 +59,26 @@ public class Load extends AbstractCommand {
   public void run(IModel model, ArrayList<String> params) throws QuitException{
     model.apply(new model.functions.Load(params));
   }
+
+  /**
+   * Gets the names of the images the command reads, which is nothing, since it reads a file.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Gets the names of the images the command writes, which is the name the file is loaded as.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images written
+   */
+  @Override
+  public List<String> getWrites(List<String> params) {
+    return params.subList(1, 2);
+  }
 }
@@ -0,0 +1,53 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.IModel;
+import model.functions.Materialize;
+
+/**
+ * Class MaterializeCommand represent a command that uses
+ * {@link Materialize#Materialize(ArrayList)}. In a lazy script, the image it names is computed
+ * and kept even if it is never saved.
+ * It extends {@link controller.AbstractCommand}.
+ * It executes command over {@link model.IModel model}.
+ * This is designed in controller pattern.
+ */
+public class MaterializeCommand extends AbstractCommand {
+
+  /**
+   * Execution method of MaterializeCommand.
+   *
+   * @param model  is the instance of {@link model.IModel} to accept commands
+   * @param params represents all string needed for run command
+   * @throws QuitException when any parameter taken is command of quit
+   */
+  @Override
+  public void run(IModel model, ArrayList<String> params) throws QuitException {
+    model.apply(new Materialize(params));
+  }
+
+  /**
+   * Gets the names of the images the command reads, which is the image it names.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return params;
+  }
+
+  /**
+   * Gets the names of the images the command writes, which is nothing.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images written
+   */
+  @Override
+  public List<String> getWrites(List<String> params) {
+    return Collections.emptyList();
+  }
+}
@@ -0,0 +1,71 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import model.IModel;
+import model.functions.Resampler;
+import model.functions.Resize;
+
+/**
+ * Class ResizeCommand represent a command that uses
+ * {@link Resize#Resize(int, int, Resampler.Mode, ArrayList)}.
+ * It extends {@link controller.AbstractCommand}.
+ * It executes command over {@link model.IModel model}.
+ * If it meets a command of quit, then throw {@link QuitException} to
+ * inform {@link controller.IController}.
+ * This is designed in controller pattern.
+ */
+public class ResizeCommand extends AbstractCommand {
+  private final int width;
+  private final int height;
+  private final Resampler.Mode mode;
+
+  /**
+   * Constructor of ResizeCommand, which takes in {@link Integer width}, {@link Integer height}
+   * and the name of the mode, which is nearest, bilinear or bicubic.
+   *
+   * @param width  represent the width of aimed size.
+   * @param height represent the height of aimed size.
+   * @param mode   represent the way pixels are interpolated.
+   * @throws IllegalArgumentException when {@link Integer width} or {@link Integer height}
+   *                                  given is not a positive number, or the mode
+   *                                  is unknown.
+   */
+  public ResizeCommand(String width, String height, String mode) {
+    try {
+      this.width = Integer.parseInt(width);
+      this.height = Integer.parseInt(height);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("width or height is not number.Not valid for resize!");
+    }
+    if (this.width <= 0 || this.height <= 0) {
+      throw new IllegalArgumentException("width or height is not positive.Not valid for resize!");
+    }
+    switch (mode.toLowerCase(Locale.ROOT)) {
+      case "nearest":
+        this.mode = Resampler.Mode.NEAREST;
+        break;
+      case "bilinear":
+        this.mode = Resampler.Mode.BILINEAR;
+        break;
+      case "bicubic":
+        this.mode = Resampler.Mode.BICUBIC;
+        break;
+      default:
+        throw new IllegalArgumentException("no such mode.Not valid for resize!");
+    }
+  }
+
+  /**
+   * Execution method of ResizeCommand.
+   *
+   * @param model  is the instance of {@link model.IModel} to accept commands
+   * @param params represents all string needed for run command
+   * @throws QuitException when any parameter taken is command of quit
+   */
+  @Override
+  public void run(IModel model, ArrayList<String> params) throws QuitException {
+    model.apply(new Resize(this.width, this.height, this.mode, params));
+  }
+}
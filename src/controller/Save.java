@@ -1,6 +1,8 @@
 package controller;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import model.IModel;
 
@@ -56,4 +58,26 @@ public class Save extends AbstractCommand {
   public void run(IModel model, ArrayList<String> params) throws QuitException{
     model.apply(new model.functions.Save(params));
   }
+
+  /**
+   * Gets the names of the images the command reads, which is the name of the image saved.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images read
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return params.subList(1, 2);
+  }
+
+  /**
+   * Gets the names of the images the command writes, which is nothing, since it writes a file.
+   *
+   * @param params represents all string needed for run command
+   * @return the names of the images written
+   */
+  @Override
+  public List<String> getWrites(List<String> params) {
+    return Collections.emptyList();
+  }
 }
@@ -0,0 +1,26 @@
+package controller;
+
+import java.util.ArrayList;
+
+import model.IModel;
+
+/**
+ * Class SaveBinary represent a command that uses
+ * {@link model.functions.Save#Save(ArrayList, boolean)} to save an image as a binary (P6)
+ * ppm file. It is a {@link Save} that only differs in the format of the file.
+ * This is designed in controller pattern.
+ */
+public class SaveBinary extends Save {
+
+  /**
+   * Execution method of SaveBinary.
+   *
+   * @param model is the instance of {@link model.IModel} to accept commands
+   * @param params represents all string needed for run command
+   * @throws QuitException when any parameter taken is command of quit
+   */
+  @Override
+  public void run(IModel model, ArrayList<String> params) throws QuitException {
+    model.apply(new model.functions.Save(params, true));
+  }
+}
@@ -0,0 +1,281 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
+import model.ResultCache;
+import model.TileScheduler;
+import model.functions.ModelFunctions;
+import model.histogram.ChannelHistograms;
+import model.histogram.IHistogram;
+
+/**
+ * Class ScheduledController is a {@link Controller} for whole scripts. It reads the script
+ * to its end first, recording the function every command would apply instead of applying
+ * it, and then runs the functions as a {@link TaskGraph}, so commands that do not depend on
+ * each other run at the same time on a pool of workers.
+ */
+public class ScheduledController extends Controller {
+  private final int workers;
+  private TaskGraph graph;
+
+  /**
+   * Constructor of ScheduledController. It takes in {@link model.IModel model},
+   * {@link Readable input} and the number of workers the commands run on.
+   *
+   * @param model   is instances of {@link model.IModel} given to be controlled.
+   * @param input   is instance of {@link Readable} given to instruct the running of program.
+   * @param workers the number of commands that can run at the same time
+   * @throws IllegalArgumentException when {@link model.IModel model} or {@link Readable input}
+   *                                  given is null, or workers is not positive.
+   */
+  public ScheduledController(IModel model, Readable input, int workers)
+          throws IllegalArgumentException {
+    this(model, input, workers, false);
+  }
+
+  /**
+   * Constructor of ScheduledController. It takes in {@link model.IModel model},
+   * {@link Readable input}, the number of workers the commands run on and whether the script
+   * is run lazily.
+   *
+   * @param model   is instances of {@link model.IModel} given to be controlled.
+   * @param input   is instance of {@link Readable} given to instruct the running of program.
+   * @param workers the number of commands that can run at the same time
+   * @param lazy    true to run only the commands of the {@link LazyPlan} of the script
+   * @throws IllegalArgumentException when {@link model.IModel model} or {@link Readable input}
+   *                                  given is null, or workers is not positive.
+   */
+  public ScheduledController(IModel model, Readable input, int workers, boolean lazy)
+          throws IllegalArgumentException {
+    super(model, input, lazy);
+    if (workers <= 0) {
+      throw new IllegalArgumentException("number of workers must be positive");
+    }
+    this.workers = workers;
+  }
+
+  /**
+   * runProgram reads and checks the whole script, then runs its commands as a graph of tasks.
+   * It stops starting commands once one of them fails.
+   *
+   * @throws IllegalStateException was thrown to handle the situation that the script has
+   *                               errors, or IllegalArgumentException was thrown by what it
+   *                               is controlling.
+   */
+  @Override
+  public void runProgram() throws IllegalStateException {
+    this.commandsInitialize();
+    List<CompiledCommand> script = this.compile();
+    RecordingModel recorder = new RecordingModel(this.model);
+    this.runCommands(script, recorder);
+    this.graph = new TaskGraph(recorder.functions, this.model);
+    try {
+      this.graph.run(this.workers);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("something went wrong in running program!");
+    }
+  }
+
+  /**
+   * Gets the report of the last run, with the total work and the critical path of the
+   * script.
+   *
+   * @return the report
+   * @throws IllegalStateException if no script has run yet
+   */
+  public String getReport() throws IllegalStateException {
+    if (this.graph == null) {
+      throw new IllegalStateException("no script has run yet");
+    }
+    return this.graph.getReport();
+  }
+
+  /**
+   * A model that only records the functions applied on it, in order.
+   */
+  private static final class RecordingModel implements IModel {
+    private final IModel model;
+    private final List<ModelFunctions> functions;
+
+    private RecordingModel(IModel model) {
+      this.model = model;
+      this.functions = new ArrayList<>();
+    }
+
+    /**
+     * Records the function instead of applying it.
+     *
+     * @param function is an instance of {@link ModelFunctions}
+     */
+    @Override
+    public void apply(ModelFunctions function) {
+      this.functions.add(function);
+    }
+
+    /**
+     * Histograms cannot be computed while the script is recorded.
+     *
+     * @param histogram is an instance of {@link IHistogram}
+     * @return nothing
+     * @throws IllegalStateException always
+     */
+    @Override
+    public Map<Integer, Integer> apply(IHistogram histogram) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be read while the script is recorded.
+     *
+     * @param name the name of image
+     * @return nothing
+     * @throws IllegalStateException always
+     */
+    @Override
+    public PixelBuffer getBufferFromMap(String name) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be read while the script is recorded.
+     *
+     * @param name   the name of image
+     * @param width  the least width of the level
+     * @param height the least height of the level
+     * @return nothing
+     * @throws IllegalStateException always
+     */
+    @Override
+    public PixelBuffer getLevelFromMap(String name, int width, int height) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be added while the script is recorded.
+     *
+     * @param name  the name of image
+     * @param image the image
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void addToMap(String name, PixelBuffer image) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be added while the script is recorded.
+     *
+     * @param name    the name of image
+     * @param image   the image
+     * @param source  the name of image it was changed from
+     * @param changed the mask of the changed samples
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void addToMap(String name, PixelBuffer image, String source, Mask changed) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Histograms cannot be computed while the script is recorded.
+     *
+     * @param name the name of image
+     * @return nothing
+     * @throws IllegalStateException always
+     */
+    @Override
+    public ChannelHistograms getHistogramsFromMap(String name) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be read while the script is recorded.
+     *
+     * @param name the name of image
+     * @return nothing
+     * @throws IllegalStateException always
+     */
+    @Override
+    public int[][] getFromMap(String name) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be added while the script is recorded.
+     *
+     * @param name  the name of image
+     * @param image the image
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void addToMap(String name, int[][] image) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Images cannot be removed while the script is recorded.
+     *
+     * @param name the name of image
+     * @throws IllegalStateException always
+     */
+    @Override
+    public void removeFromMap(String name) {
+      throw new IllegalStateException("script is only recorded");
+    }
+
+    /**
+     * Checks whether the model the script runs on has an image according to the
+     * {@link String name}.
+     *
+     * @param name the name of image
+     * @return true if there is an image with the name
+     */
+    @Override
+    public boolean isInMap(String name) {
+      return this.model.isInMap(name);
+    }
+
+    /**
+     * Gets the {@link TileScheduler} of the model the script runs on.
+     *
+     * @return the tile scheduler
+     */
+    @Override
+    public TileScheduler getScheduler() {
+      return this.model.getScheduler();
+    }
+
+    /**
+     * Checks whether the model the script runs on is in the exact mode.
+     *
+     * @return true for the exact mode
+     */
+    @Override
+    public boolean isExact() {
+      return this.model.isExact();
+    }
+
+    /**
+     * Gets the {@link ResultCache} of the model the script runs on.
+     *
+     * @return the result cache, or null if results are not cached
+     */
+    @Override
+    public ResultCache getCache() {
+      return this.model.getCache();
+    }
+
+    /**
+     * Closes the model calls are passed on to.
+     */
+    @Override
+    public void close() {
+      this.model.close();
+    }
+  }
+}
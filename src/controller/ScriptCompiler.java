@@ -0,0 +1,167 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Class ScriptCompiler turns a script into a list of {@link CompiledCommand} before any of it
+ * runs. Every command takes the options and the number of names its {@link Arity} declares;
+ * a name after the least number is only taken when it is on the same line and is not a
+ * command itself. Every name a command reads must have been written by a command before it,
+ * or be an image the model already has.
+ * The script ends at its end or at "q"/"quit"(ignore case), where a command that is not
+ * complete yet is left out. When a command is unknown, takes too few parameters, has options
+ * its {@link ICommand} does not accept or reads a name that was never written, the whole
+ * script is rejected with every error and the line it is on.
+ */
+public final class ScriptCompiler {
+  private final Map<String, Function<Scanner, ICommand>> commands;
+  private final Map<String, Arity> arities;
+  private final Predicate<String> loaded;
+
+  /**
+   * Constructor of ScriptCompiler, for scripts that start without any image.
+   *
+   * @param commands the functions making the commands from their options, by command name
+   * @param arities  the arity of the commands, by command name
+   */
+  public ScriptCompiler(Map<String, Function<Scanner, ICommand>> commands,
+                        Map<String, Arity> arities) {
+    this(commands, arities, name -> false);
+  }
+
+  /**
+   * Constructor of ScriptCompiler, for scripts that can read the images a model already has.
+   *
+   * @param commands the functions making the commands from their options, by command name
+   * @param arities  the arity of the commands, by command name
+   * @param loaded   whether there is an image with a name before the script runs
+   */
+  public ScriptCompiler(Map<String, Function<Scanner, ICommand>> commands,
+                        Map<String, Arity> arities, Predicate<String> loaded) {
+    this.commands = Objects.requireNonNull(commands);
+    this.arities = Objects.requireNonNull(arities);
+    this.loaded = Objects.requireNonNull(loaded);
+  }
+
+  /**
+   * Reads the script and checks it as a whole.
+   *
+   * @param input is instance of {@link Readable} the script is read from
+   * @return the commands of the script in order
+   * @throws IllegalStateException if the script has errors, with every error in the message
+   */
+  public List<CompiledCommand> compile(Readable input) throws IllegalStateException {
+    List<Token> tokens = new ArrayList<>();
+    boolean quit = tokenize(input, tokens);
+    List<CompiledCommand> compiled = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    Set<String> written = new HashSet<>();
+
+    int i = 0;
+    while (i < tokens.size()) {
+      Token head = tokens.get(i++);
+      String name = head.text.toLowerCase(Locale.ROOT);
+      Function<Scanner, ICommand> factory = this.commands.get(name);
+      Arity arity = this.arities.get(name);
+      if (factory == null || arity == null) {
+        errors.add(String.format("line %d: no such command '%s'", head.line, head.text));
+        while (i < tokens.size() && !this.isCommand(tokens.get(i))) {
+          i++;
+        }
+        continue;
+      }
+      if (tokens.size() - i < arity.getOptions() + arity.getLeast()) {
+        if (!quit) {
+          errors.add(String.format("line %d: %s takes at least %d parameters", head.line, name,
+                  arity.getOptions() + arity.getLeast()));
+        }
+        break;
+      }
+
+      StringBuilder options = new StringBuilder();
+      for (int k = 0; k < arity.getOptions(); k++) {
+        options.append(tokens.get(i++).text).append(' ');
+      }
+      List<String> params = new ArrayList<>();
+      while (params.size() < arity.getLeast() || params.size() < arity.getMost()
+              && i < tokens.size() && tokens.get(i).line == tokens.get(i - 1).line
+              && !this.isCommand(tokens.get(i))) {
+        params.add(tokens.get(i++).text);
+      }
+
+      ICommand command;
+      try {
+        command = factory.apply(new Scanner(options.toString()));
+      } catch (QuitException e) {
+        break;
+      } catch (IllegalArgumentException | NoSuchElementException e) {
+        errors.add(String.format("line %d: %s", head.line, e.getMessage()));
+        continue;
+      }
+      for (String read : command.getReads(params)) {
+        if (!written.contains(read) && !this.loaded.test(read)) {
+          errors.add(String.format("line %d: image '%s' is not loaded", head.line, read));
+        }
+      }
+      written.addAll(command.getWrites(params));
+      compiled.add(new CompiledCommand(head.line, name, command, params));
+    }
+
+    if (!errors.isEmpty()) {
+      throw new IllegalStateException("script has " + errors.size() + " error(s):\n"
+              + String.join("\n", errors));
+    }
+    return compiled;
+  }
+
+  private boolean isCommand(Token token) {
+    return this.commands.containsKey(token.text.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Splits the script into words with the line they are on, up to its end or the first quit.
+   * Lines are read one at a time, so a script typed in stops being read at the quit.
+   *
+   * @return true if the script ended at a quit
+   */
+  private static boolean tokenize(Readable input, List<Token> tokens) {
+    Scanner scanner = new Scanner(input);
+    int line = 0;
+    while (scanner.hasNextLine()) {
+      line++;
+      for (String word : scanner.nextLine().trim().split("\\s+")) {
+        if (word.isEmpty()) {
+          continue;
+        }
+        if (QuitException.isQuitException(word)) {
+          return true;
+        }
+        tokens.add(new Token(line, word));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A word of the script and the line it is on.
+   */
+  private static final class Token {
+    private final int line;
+    private final String text;
+
+    private Token(int line, String text) {
+      this.line = line;
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,312 @@
+package controller;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.IModel;
+import model.functions.Load;
+import model.functions.ModelFunctions;
+import model.functions.PointFunction;
+import model.functions.Save;
+
+/**
+ * Class TaskGraph runs the functions of a script as a graph of tasks keyed on the names they
+ * read and write. A task depends on the last task that wrote a name it reads or writes, and
+ * on every task that read a name it writes since that name was last written, so writes to
+ * the same name and the reads around them keep the order of the script. Tasks that do not
+ * depend on each other run at the same time on a pool of workers.
+ * Unmasked point functions in a row, where each reads the image the one before it wrote, are
+ * one task that runs them on a {@link FusingModel}, like the {@link Controller} does.
+ * The files loads read and saves write are keyed on their absolute and normalized paths, so a
+ * load waits for the save of the same file however the two paths are written.
+ * After the run, the time of every task gives the total work and the critical path, which is
+ * the longest chain of dependent tasks, so their ratio is the speedup more workers can give.
+ */
+public final class TaskGraph {
+  private final IModel model;
+  private final List<List<ModelFunctions>> tasks;
+  private final List<List<Integer>> dependencies;
+  private final long[] durations;
+  private final Map<String, Integer> lastReads;
+
+  /**
+   * Constructor for the task graph.
+   *
+   * @param functions the functions in the order of the script
+   * @param model     the model the functions run on
+   */
+  public TaskGraph(List<ModelFunctions> functions, IModel model) {
+    this.model = Objects.requireNonNull(model);
+    this.tasks = new ArrayList<>();
+    for (ModelFunctions function : functions) {
+      List<ModelFunctions> last = this.tasks.isEmpty() ? null
+              : this.tasks.get(this.tasks.size() - 1);
+      if (last != null && continues(last.get(last.size() - 1), function)) {
+        last.add(function);
+      } else {
+        List<ModelFunctions> task = new ArrayList<>();
+        task.add(function);
+        this.tasks.add(task);
+      }
+    }
+
+    this.dependencies = new ArrayList<>();
+    Map<String, Integer> writers = new HashMap<>();
+    Map<String, List<Integer>> readers = new HashMap<>();
+    this.lastReads = new HashMap<>();
+    for (int t = 0; t < this.tasks.size(); t++) {
+      Set<String> reads = new LinkedHashSet<>();
+      Set<String> writes = new LinkedHashSet<>();
+      for (ModelFunctions function : this.tasks.get(t)) {
+        reads.addAll(keysOf(function.getReads(), function instanceof Load));
+        writes.addAll(keysOf(function.getWrites(), function instanceof Save));
+      }
+      Set<Integer> before = new LinkedHashSet<>();
+      for (String name : reads) {
+        if (writers.containsKey(name)) {
+          before.add(writers.get(name));
+        }
+      }
+      for (String name : writes) {
+        if (writers.containsKey(name)) {
+          before.add(writers.get(name));
+        }
+        before.addAll(readers.getOrDefault(name, Collections.emptyList()));
+      }
+      before.remove(t);
+      this.dependencies.add(new ArrayList<>(before));
+
+      for (String name : reads) {
+        readers.computeIfAbsent(name, key -> new ArrayList<>()).add(t);
+        this.lastReads.put(name, t);
+      }
+      for (String name : writes) {
+        writers.put(name, t);
+        readers.put(name, new ArrayList<>());
+      }
+    }
+    this.durations = new long[this.tasks.size()];
+  }
+
+  /**
+   * Gets the number of tasks.
+   *
+   * @return the number of tasks
+   */
+  public int size() {
+    return this.tasks.size();
+  }
+
+  /**
+   * Gets the tasks a task waits for.
+   *
+   * @param task the index of the task in the order of the script
+   * @return the indices of the tasks it depends on
+   */
+  public List<Integer> getDependencies(int task) {
+    return Collections.unmodifiableList(this.dependencies.get(task));
+  }
+
+  /**
+   * Runs every task on the given number of workers, each as soon as the tasks it depends on
+   * are done. When a task fails, no more tasks are started, and the exception of the first
+   * failed task is thrown once the running tasks are done.
+   *
+   * @param workers the number of worker threads
+   * @throws IllegalArgumentException if workers is not positive, or a task threw it
+   */
+  public void run(int workers) throws IllegalArgumentException {
+    if (workers <= 0) {
+      throw new IllegalArgumentException("number of workers must be positive");
+    }
+    int[] waiting = new int[this.tasks.size()];
+    List<List<Integer>> next = new ArrayList<>();
+    for (int t = 0; t < this.tasks.size(); t++) {
+      next.add(new ArrayList<>());
+    }
+    for (int t = 0; t < this.tasks.size(); t++) {
+      waiting[t] = this.dependencies.get(t).size();
+      for (int before : this.dependencies.get(t)) {
+        next.get(before).add(t);
+      }
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    CompletionService<Integer> done = new ExecutorCompletionService<>(pool);
+    Throwable failure = null;
+    int running = 0;
+    try {
+      for (int t = 0; t < this.tasks.size(); t++) {
+        if (waiting[t] == 0) {
+          this.submit(done, t);
+          running++;
+        }
+      }
+      while (running > 0) {
+        try {
+          int t = done.take().get();
+          running--;
+          for (int after : next.get(t)) {
+            waiting[after]--;
+            if (waiting[after] == 0 && failure == null) {
+              this.submit(done, after);
+              running++;
+            }
+          }
+        } catch (ExecutionException e) {
+          running--;
+          if (failure == null) {
+            failure = e.getCause();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("script was interrupted");
+    } finally {
+      pool.shutdownNow();
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+  }
+
+  /**
+   * Gets the time all tasks took together in the last run.
+   *
+   * @return the total work in nanoseconds
+   */
+  public long getTotalWork() {
+    long total = 0;
+    for (long duration : this.durations) {
+      total += duration;
+    }
+    return total;
+  }
+
+  /**
+   * Gets the time of the longest chain of dependent tasks in the last run, which is the least
+   * time the script can take with any number of workers.
+   *
+   * @return the critical path in nanoseconds
+   */
+  public long getCriticalPath() {
+    long[] finish = new long[this.tasks.size()];
+    long longest = 0;
+    for (int t = 0; t < this.tasks.size(); t++) {
+      // dependencies always come earlier in the script
+      for (int before : this.dependencies.get(t)) {
+        finish[t] = Math.max(finish[t], finish[before]);
+      }
+      finish[t] += this.durations[t];
+      longest = Math.max(longest, finish[t]);
+    }
+    return longest;
+  }
+
+  /**
+   * Gets the number of tasks on the longest chain of dependent tasks.
+   *
+   * @return the length of the critical chain
+   */
+  public int getDepth() {
+    int[] depth = new int[this.tasks.size()];
+    int deepest = 0;
+    for (int t = 0; t < this.tasks.size(); t++) {
+      for (int before : this.dependencies.get(t)) {
+        depth[t] = Math.max(depth[t], depth[before]);
+      }
+      depth[t]++;
+      deepest = Math.max(deepest, depth[t]);
+    }
+    return deepest;
+  }
+
+  /**
+   * Gets a summary of the last run: the number of tasks, the total work, the critical path
+   * and the speedup they allow.
+   *
+   * @return the report
+   */
+  public String getReport() {
+    long work = this.getTotalWork();
+    long path = this.getCriticalPath();
+    return String.format("%d tasks, total work %.1f ms, critical path %.1f ms over %d tasks,"
+                    + " achievable speedup %.2fx", this.size(), work / 1e6, path / 1e6,
+            this.getDepth(), path == 0 ? 1.0 : (double) work / path);
+  }
+
+  private void submit(CompletionService<Integer> done, int task) {
+    done.submit(() -> {
+      long start = System.nanoTime();
+      this.runTask(task);
+      this.durations[task] = System.nanoTime() - start;
+      return task;
+    });
+  }
+
+  /**
+   * Runs the functions of a task. The images in between that no later task reads are dropped
+   * by the {@link FusingModel} without being computed.
+   */
+  private void runTask(int index) {
+    List<ModelFunctions> task = this.tasks.get(index);
+    if (task.size() == 1) {
+      this.model.apply(task.get(0));
+      return;
+    }
+    FusingModel fused = new FusingModel(this.model);
+    try {
+      for (ModelFunctions function : task) {
+        fused.apply(function);
+      }
+    } finally {
+      fused.finish(name -> this.lastReads.getOrDefault(name, -1) > index);
+    }
+  }
+
+  /**
+   * Checks whether a function joins the task of the function before it, which is when both
+   * are unmasked point functions and it reads the image the one before wrote.
+   */
+  private static boolean continues(ModelFunctions last, ModelFunctions function) {
+    return last instanceof PointFunction && function instanceof PointFunction
+            && !((PointFunction) last).isMasked() && !((PointFunction) function).isMasked()
+            && ((PointFunction) function).getSource()
+            .equals(((PointFunction) last).getDestination());
+  }
+
+  /**
+   * Gets the keys of the names a function reads or writes, where the paths of files are made
+   * absolute and normalized.
+   */
+  private static List<String> keysOf(List<String> names, boolean files) {
+    if (!files) {
+      return names;
+    }
+    List<String> keys = new ArrayList<>();
+    for (String name : names) {
+      try {
+        keys.add(Paths.get(name).toAbsolutePath().normalize().toString());
+      } catch (InvalidPathException e) {
+        keys.add(name);
+      }
+    }
+    return keys;
+  }
+}
@@ -3,6 +3,7 @@ package model;
 import java.util.Map;
 
 import model.functions.ModelFunctions;
+import model.histogram.ChannelHistograms;
 import model.histogram.IHistogram;
 
 /**
@@ -26,19 +27,126 @@ public interface IModel {
   Map<Integer, Integer> apply(IHistogram histogram);
 
   /**
-   * Gets the image according to the {@link String name}.
+   * Gets a copy of the image according to the {@link String name}.
    *
    * @param name is an instance of {@link String} which is
    *             the name of image
-   * @return the image
+   * @return the image as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
    */
-  int[][] getFromMap(String name);
+  PixelBuffer getBufferFromMap(String name) throws NullPointerException;
+
+  /**
+   * Gets a copy of the smallest level of the power-of-two pyramid of the image according to
+   * the {@link String name} that is at least {@link Integer width} wide and
+   * {@link Integer height} high. Level 0 is the image itself, and every other level is the
+   * level before reduced to half its width and height, so a function scaling the image down
+   * can start from the level instead of the full image.
+   *
+   * @param name   is an instance of {@link String} which is
+   *               the name of image
+   * @param width  the least width of the level
+   * @param height the least height of the level
+   * @return the level as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  PixelBuffer getLevelFromMap(String name, int width, int height) throws NullPointerException;
 
   /**
    * Adds an image to the model's Map for storage.
    *
    * @param name  is {@link String name} of the image
+   * @param image the added image as {@link PixelBuffer}
+   */
+  void addToMap(String name, PixelBuffer image);
+
+  /**
+   * Adds an image to the model's Map for storage, which differs from the image named
+   * {@link String source} only in the samples the mask selects, so that the histograms of
+   * the source can be updated from those samples instead of counted again.
+   *
+   * @param name    is {@link String name} of the image
+   * @param image   the added image as {@link PixelBuffer}
+   * @param source  the name of image the added image was changed from
+   * @param changed the mask that selects every sample that may have changed
+   */
+  void addToMap(String name, PixelBuffer image, String source, Mask changed);
+
+  /**
+   * Gets the red, green, blue and intensity histograms of the image according to the
+   * {@link String name}.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the histograms
+   * @throws NullPointerException if there is no image with the name
+   */
+  ChannelHistograms getHistogramsFromMap(String name) throws NullPointerException;
+
+  /**
+   * Gets the image according to the {@link String name} in the legacy
+   * int[height + 1][3 * width] format, whose first row holds width, height and max value.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image
+   * @throws NullPointerException if there is no image with the name
+   */
+  int[][] getFromMap(String name) throws NullPointerException;
+
+  /**
+   * Adds an image in the legacy int[height + 1][3 * width] format to the model's Map
+   * for storage.
+   *
+   * @param name  is {@link String name} of the image
    * @param image the added image
    */
   void addToMap(String name, int[][] image);
-}
\ No newline at end of file
+
+  /**
+   * Removes the image according to the {@link String name} from the model's Map, if there is
+   * one, so that its memory can be used again.
+   *
+   * @param name is {@link String name} of the image
+   */
+  void removeFromMap(String name);
+
+  /**
+   * Checks whether the model's Map has an image according to the {@link String name}, in
+   * memory or spilled, without loading it.
+   *
+   * @param name is {@link String name} of the image
+   * @return true if there is an image with the name
+   */
+  boolean isInMap(String name);
+
+  /**
+   * Gets the {@link TileScheduler} functions run their per row work on.
+   *
+   * @return the tile scheduler
+   */
+  TileScheduler getScheduler();
+
+  /**
+   * Checks whether functions must give exactly the images they gave when every color
+   * transformation ran on its own in floating point with its own clamp, instead of composing
+   * color matrices and mapping them in integer arithmetic.
+   *
+   * @return true for the exact mode
+   */
+  boolean isExact();
+
+  /**
+   * Gets the {@link ResultCache} the images of functions are kept in.
+   *
+   * @return the result cache, or null if results are not cached
+   */
+  ResultCache getCache();
+
+  /**
+   * Frees what the model holds outside of the Java heap: the threads functions run on and the
+   * files images were spilled to. The images are removed, and functions applied afterwards
+   * run on the calling thread.
+   */
+  void close();
+}
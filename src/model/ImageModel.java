@@ -1,9 +1,25 @@
 package model;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
+import model.functions.Memoizable;
 import model.functions.ModelFunctions;
+import model.functions.Resampler;
+import model.histogram.ChannelHistograms;
 import model.histogram.IHistogram;
 
 /**
@@ -11,25 +27,146 @@ import model.histogram.IHistogram;
  * It implements {@link IModel}.
  * It contains a map with name and the image.
  * It provides functionality to apply function object on designated image.
+ * The images kept in memory can be bounded by a byte budget. When the budget is exceeded,
+ * the least recently used images are spilled to a directory as raw binary and are
+ * transparently loaded back the next time they are asked for. A spilled file is deleted when
+ * its image is replaced or removed, and the rest when the model is closed; only the spill
+ * directory is left to be deleted when the JVM exits.
+ * The levels of the power-of-two pyramid of an image are built the first time they are
+ * asked for and kept until the image is replaced or spilled. They count against the byte
+ * budget with their image, and are dropped when it is spilled.
+ * The histograms of an image are counted the first time they are asked for and kept until
+ * the image is replaced. An image added as a masked change of another one takes over the
+ * histograms of that one, updated from the pixels of the mask. Only masked commands store
+ * such changes; the GUI writes its masked edits to the preview only, and an edit it commits
+ * changes the whole image, so the histograms it shows are counted again over every pixel.
+ * With a {@link ResultCache}, functions that ran on the same images before, in this run or
+ * an earlier one, are not computed again.
+ * The stored images are guarded by the lock of the model, while functions do their work
+ * outside of it, so functions can run on the model from several threads at once.
  */
 public class ImageModel implements IModel {
-  private final Map<String, int[][]> map;
+  private final Map<String, PixelBuffer> map;
+  private final Map<String, SpilledImage> spilled;
+  private final Map<String, List<PixelBuffer>> pyramids;
+  private final Map<String, ChannelHistograms> histograms;
+  private final long byteBudget;
+  private final TileScheduler scheduler;
+  private final boolean exact;
+  private final ResultCache cache;
+  private Path spillDirectory;
+  private boolean ownsSpillDirectory;
+  private long residentBytes;
+  private long hitCount;
+  private long missCount;
+  private long spillCount;
 
   /**
-   * Constructor for the image model class.
+   * Constructor for the image model class, which keeps every image in memory.
    */
   public ImageModel() {
-    this.map = new HashMap<>();
+    this(Long.MAX_VALUE, null);
   }
 
   /**
-   * Applies a function object {@link ModelFunctions function} on the model.
+   * Constructor for the image model class, which keeps at most {@link Long byteBudget}
+   * bytes of images in memory and spills the rest to a temporary directory.
+   *
+   * @param byteBudget the max bytes of images kept in memory
+   * @throws IllegalArgumentException if byteBudget is not positive
+   */
+  public ImageModel(long byteBudget) throws IllegalArgumentException {
+    this(byteBudget, null);
+  }
+
+  /**
+   * Constructor for the image model class, which keeps at most {@link Long byteBudget}
+   * bytes of images in memory and spills the rest to the given directory.
+   *
+   * @param byteBudget     the max bytes of images kept in memory
+   * @param spillDirectory the directory images are spilled to, or null for a temporary one
+   * @throws IllegalArgumentException if byteBudget is not positive
+   */
+  public ImageModel(long byteBudget, String spillDirectory) throws IllegalArgumentException {
+    this(byteBudget, spillDirectory, 1);
+  }
+
+  /**
+   * Constructor for the image model class, which keeps at most {@link Long byteBudget}
+   * bytes of images in memory, spills the rest to the given directory and runs functions
+   * on {@link Integer threads} threads.
+   *
+   * @param byteBudget     the max bytes of images kept in memory
+   * @param spillDirectory the directory images are spilled to, or null for a temporary one
+   * @param threads        the number of threads functions run on
+   * @throws IllegalArgumentException if byteBudget or threads is not positive
+   */
+  public ImageModel(long byteBudget, String spillDirectory, int threads)
+          throws IllegalArgumentException {
+    this(byteBudget, spillDirectory, threads, false);
+  }
+
+  /**
+   * Constructor for the image model class, which keeps at most {@link Long byteBudget}
+   * bytes of images in memory, spills the rest to the given directory, runs functions
+   * on {@link Integer threads} threads and, in the exact mode, runs every color
+   * transformation on its own in floating point.
+   *
+   * @param byteBudget     the max bytes of images kept in memory
+   * @param spillDirectory the directory images are spilled to, or null for a temporary one
+   * @param threads        the number of threads functions run on
+   * @param exact          true for the exact mode
+   * @throws IllegalArgumentException if byteBudget or threads is not positive
+   */
+  public ImageModel(long byteBudget, String spillDirectory, int threads, boolean exact)
+          throws IllegalArgumentException {
+    this(byteBudget, spillDirectory, threads, exact, null);
+  }
+
+  /**
+   * Constructor for the image model class, which keeps at most {@link Long byteBudget}
+   * bytes of images in memory, spills the rest to the given directory, runs functions
+   * on {@link Integer threads} threads, in the exact mode runs every color transformation on
+   * its own in floating point, and reads the images of {@link Memoizable} functions back from
+   * the given {@link ResultCache} when they ran on the same images before.
+   *
+   * @param byteBudget     the max bytes of images kept in memory
+   * @param spillDirectory the directory images are spilled to, or null for a temporary one
+   * @param threads        the number of threads functions run on
+   * @param exact          true for the exact mode
+   * @param cache          the result cache, or null to compute every function
+   * @throws IllegalArgumentException if byteBudget or threads is not positive
+   */
+  public ImageModel(long byteBudget, String spillDirectory, int threads, boolean exact,
+                    ResultCache cache) throws IllegalArgumentException {
+    if (byteBudget <= 0) {
+      throw new IllegalArgumentException("byte budget must be positive");
+    }
+    this.map = new LinkedHashMap<>(16, 0.75f, true);
+    this.spilled = new HashMap<>();
+    this.pyramids = new HashMap<>();
+    this.histograms = new HashMap<>();
+    this.byteBudget = byteBudget;
+    this.scheduler = new TileScheduler(threads);
+    this.exact = exact;
+    this.cache = cache;
+    this.spillDirectory = spillDirectory == null ? null : new File(spillDirectory).toPath();
+  }
+
+  /**
+   * Applies a function object {@link ModelFunctions function} on the model. With a
+   * {@link ResultCache}, the image of a {@link Memoizable} function that ran on the same
+   * images before is read back from the cache instead.
    *
    * @param function is an instance of {@link ModelFunctions}
    */
   @Override
   public void apply(ModelFunctions function) {
-    function.apply(this);
+    if (this.cache != null && function instanceof Memoizable) {
+      this.cache.apply((Memoizable) function, this);
+    } else {
+      function.apply(this);
+    }
   }
 
   /**
@@ -44,40 +181,422 @@ public class ImageModel implements IModel {
   }
 
   /**
-   * Gets the image according to the {@link String name}.
+   * Gets a copy of the image according to the {@link String name}. The copy is
+   * copy-on-write, so the pixels are only copied if the caller writes into it.
    *
    * @param name is an instance of {@link String} which is
    *             the name of image
-   * @return the image
+   * @return the image as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
    */
   @Override
-  public int[][] getFromMap(String name) {
-    int[][] need = null;
-    try {
-      need = this.map.get(name);
-    } catch (NullPointerException e) {
-      throw new IllegalArgumentException("Cannot find original image");
-    }
+  public synchronized PixelBuffer getBufferFromMap(String name) throws NullPointerException {
+    return this.find(name).share();
+  }
 
-    int width = need[0][0];
-    int height = need[0][1];
-    int[][] result = new int[height + 1][3 * width];
-    for (int i = 0; i < height + 1; i++) {
-      for (int j = 0; j < 3 * width; j++) {
-        result[i][j] = need[i][j];
+  /**
+   * Gets a copy of the smallest level of the power-of-two pyramid of the image according to
+   * the {@link String name} that is at least {@link Integer width} wide and
+   * {@link Integer height} high. The levels up to it that are not cached yet are built by
+   * averaging every 2x2 block of the level before, outside the lock of the model, and cached
+   * if the image was not replaced or spilled in the meantime.
+   *
+   * @param name   is an instance of {@link String} which is
+   *               the name of image
+   * @param width  the least width of the level
+   * @param height the least height of the level
+   * @return the level as {@link PixelBuffer}
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public PixelBuffer getLevelFromMap(String name, int width, int height)
+          throws NullPointerException {
+    PixelBuffer image;
+    List<PixelBuffer> cached;
+    synchronized (this) {
+      image = this.find(name);
+      cached = new ArrayList<>(this.pyramids.getOrDefault(name, new ArrayList<>()));
+    }
+    PixelBuffer level = image;
+    List<PixelBuffer> built = new ArrayList<>();
+    for (int k = 0; level.getWidth() >= 2 && level.getHeight() >= 2
+            && level.getWidth() / 2 >= width && level.getHeight() / 2 >= height; k++) {
+      if (k < cached.size()) {
+        level = cached.get(k);
+      } else {
+        level = Resampler.halve(level, this.scheduler);
+        built.add(level);
+      }
+    }
+    if (!built.isEmpty()) {
+      synchronized (this) {
+        List<PixelBuffer> pyramid = this.pyramids.get(name);
+        if (this.map.get(name) == image
+                && (pyramid == null ? 0 : pyramid.size()) == cached.size()) {
+          this.pyramids.computeIfAbsent(name, key -> new ArrayList<>()).addAll(built);
+          for (PixelBuffer added : built) {
+            this.residentBytes += sizeOf(added);
+          }
+          this.evict(name);
+        }
       }
     }
-    return result;
+    return level.share();
   }
 
   /**
    * Adds an image to the model's map for storage.
    *
    * @param name  is {@link String name} of the image
+   * @param image the added image as {@link PixelBuffer}
+   */
+  @Override
+  public synchronized void addToMap(String name, PixelBuffer image) {
+    Objects.requireNonNull(image);
+    this.remove(name);
+    this.map.put(name, image);
+    this.residentBytes += sizeOf(image);
+    this.evict(name);
+  }
+
+  /**
+   * Adds an image to the model's map for storage, which differs from the image named
+   * {@link String source} only in the samples the mask selects. If the histograms of the
+   * source are kept and the source is in memory, the histograms of the image are updated
+   * from the samples of the mask.
+   *
+   * @param name    is {@link String name} of the image
+   * @param image   the added image as {@link PixelBuffer}
+   * @param source  the name of image the added image was changed from
+   * @param changed the mask that selects every sample that may have changed
+   */
+  @Override
+  public synchronized void addToMap(String name, PixelBuffer image, String source,
+                                    Mask changed) {
+    ChannelHistograms counted = this.histograms.get(source);
+    PixelBuffer before = counted == null ? null : this.map.get(source);
+    this.addToMap(name, image);
+    if (before != null && before.getWidth() == image.getWidth()
+            && before.getHeight() == image.getHeight()) {
+      this.histograms.put(name, counted.update(before, image, changed));
+    }
+  }
+
+  /**
+   * Gets the red, green, blue and intensity histograms of the image according to the
+   * {@link String name}, counting them only if they are not kept yet.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the histograms
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public synchronized ChannelHistograms getHistogramsFromMap(String name)
+          throws NullPointerException {
+    PixelBuffer image = this.find(name);
+    ChannelHistograms counted = this.histograms.get(name);
+    if (counted == null) {
+      counted = ChannelHistograms.of(image, this.scheduler);
+      this.histograms.put(name, counted);
+    }
+    return counted;
+  }
+
+  /**
+   * Gets the image according to the {@link String name} in the legacy format.
+   *
+   * @param name is an instance of {@link String} which is
+   *             the name of image
+   * @return the image
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public synchronized int[][] getFromMap(String name) throws NullPointerException {
+    return this.find(name).toLegacy();
+  }
+
+  /**
+   * Adds an image in the legacy format to the model's map for storage.
+   *
+   * @param name  is {@link String name} of the image
    * @param image the added image
    */
   @Override
   public void addToMap(String name, int[][] image) {
-    this.map.put(name, image);
+    this.addToMap(name, PixelBuffer.fromLegacy(image));
+  }
+
+  /**
+   * Gets the {@link ResultCache} the images of functions are kept in.
+   *
+   * @return the result cache, or null if results are not cached
+   */
+  @Override
+  public ResultCache getCache() {
+    return this.cache;
+  }
+
+  /**
+   * Stops the threads of the {@link TileScheduler}, removes every image and deletes the
+   * spilled files, and the spill directory if the model made it.
+   */
+  @Override
+  public synchronized void close() {
+    this.scheduler.close();
+    for (SpilledImage spill : this.spilled.values()) {
+      spill.delete();
+    }
+    this.spilled.clear();
+    this.map.clear();
+    this.pyramids.clear();
+    this.histograms.clear();
+    this.residentBytes = 0;
+    if (this.ownsSpillDirectory) {
+      this.spillDirectory.toFile().delete();
+      this.spillDirectory = null;
+      this.ownsSpillDirectory = false;
+    }
+  }
+
+  /**
+   * Removes the image according to the {@link String name} from memory and the spill
+   * directory, if there is one.
+   *
+   * @param name is {@link String name} of the image
+   */
+  @Override
+  public synchronized void removeFromMap(String name) {
+    this.remove(name);
+  }
+
+  /**
+   * Checks whether there is an image according to the {@link String name}, in memory or in
+   * the spill directory.
+   *
+   * @param name is {@link String name} of the image
+   * @return true if there is an image with the name
+   */
+  @Override
+  public synchronized boolean isInMap(String name) {
+    return this.map.containsKey(name) || this.spilled.containsKey(name);
+  }
+
+  /**
+   * Gets the {@link TileScheduler} functions run their per row work on.
+   *
+   * @return the tile scheduler
+   */
+  @Override
+  public TileScheduler getScheduler() {
+    return this.scheduler;
+  }
+
+  /**
+   * Checks whether color transformations run in the exact mode.
+   *
+   * @return true for the exact mode
+   */
+  @Override
+  public boolean isExact() {
+    return this.exact;
+  }
+
+  /**
+   * Gets the number of lookups that found the image in memory.
+   *
+   * @return the hit count
+   */
+  public synchronized long getHitCount() {
+    return this.hitCount;
+  }
+
+  /**
+   * Gets the number of lookups that had to load the image back from the spill directory.
+   *
+   * @return the miss count
+   */
+  public synchronized long getMissCount() {
+    return this.missCount;
+  }
+
+  /**
+   * Gets the number of times an image was evicted from memory.
+   *
+   * @return the spill count
+   */
+  public synchronized long getSpillCount() {
+    return this.spillCount;
+  }
+
+  /**
+   * Gets the number of bytes of images and their pyramid levels currently kept in memory.
+   *
+   * @return the resident bytes
+   */
+  public synchronized long getResidentBytes() {
+    return this.residentBytes;
+  }
+
+  /**
+   * Finds the stored image, loading it back from the spill directory if needed.
+   *
+   * @param name the name of image
+   * @return the stored image
+   * @throws NullPointerException if there is no image with the name
+   */
+  private PixelBuffer find(String name) throws NullPointerException {
+    PixelBuffer need = this.map.get(name);
+    if (need != null) {
+      this.hitCount++;
+      return need;
+    }
+    SpilledImage spill = Objects.requireNonNull(this.spilled.get(name),
+            "Cannot find image " + name);
+    this.missCount++;
+    need = spill.read();
+    this.map.put(name, need);
+    this.residentBytes += sizeOf(need);
+    this.evict(name);
+    return need;
+  }
+
+  /**
+   * Removes the image from memory and the spill directory.
+   *
+   * @param name the name of image
+   */
+  private void remove(String name) {
+    this.removePyramid(name);
+    this.histograms.remove(name);
+    PixelBuffer old = this.map.remove(name);
+    if (old != null) {
+      this.residentBytes -= sizeOf(old);
+    }
+    SpilledImage spill = this.spilled.remove(name);
+    if (spill != null) {
+      spill.delete();
+    }
+  }
+
+  /**
+   * Spills the least recently used images, and drops their pyramid levels, until the
+   * resident bytes fit the budget. The image that was just used is never spilled.
+   *
+   * @param keep the name of image just used
+   */
+  private void evict(String keep) {
+    Iterator<Map.Entry<String, PixelBuffer>> iterator = this.map.entrySet().iterator();
+    while (this.residentBytes > this.byteBudget && iterator.hasNext()) {
+      Map.Entry<String, PixelBuffer> entry = iterator.next();
+      if (entry.getKey().equals(keep)) {
+        continue;
+      }
+      PixelBuffer image = entry.getValue();
+      this.removePyramid(entry.getKey());
+      if (!this.spilled.containsKey(entry.getKey())) {
+        this.spilled.put(entry.getKey(), this.write(entry.getKey(), image));
+      }
+      iterator.remove();
+      this.residentBytes -= sizeOf(image);
+      this.spillCount++;
+    }
+  }
+
+  /**
+   * Drops the pyramid levels of the image from memory.
+   *
+   * @param name the name of image
+   */
+  private void removePyramid(String name) {
+    List<PixelBuffer> pyramid = this.pyramids.remove(name);
+    if (pyramid != null) {
+      for (PixelBuffer level : pyramid) {
+        this.residentBytes -= sizeOf(level);
+      }
+    }
+  }
+
+  /**
+   * Writes the pixels of the image to a raw binary file in the spill directory.
+   *
+   * @param name  the name of image
+   * @param image the image
+   * @return the record of the spilled image
+   * @throws IllegalStateException if the file cannot be written
+   */
+  private SpilledImage write(String name, PixelBuffer image) throws IllegalStateException {
+    try {
+      if (this.spillDirectory == null) {
+        this.spillDirectory = Files.createTempDirectory("image-spill");
+        this.spillDirectory.toFile().deleteOnExit();
+        this.ownsSpillDirectory = true;
+      }
+      Files.createDirectories(this.spillDirectory);
+      File file = Files.createTempFile(this.spillDirectory,
+              name.replaceAll("[^A-Za-z0-9_-]", "_") + "-", ".raw").toFile();
+      int[] pixels = image.getPixels();
+      try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 16);
+        int index = 0;
+        while (index < pixels.length) {
+          bytes.clear();
+          int count = Math.min(bytes.capacity() / 4, pixels.length - index);
+          bytes.asIntBuffer().put(pixels, index, count);
+          bytes.limit(count * 4);
+          while (bytes.hasRemaining()) {
+            channel.write(bytes);
+          }
+          index += count;
+        }
+      }
+      return new SpilledImage(file, image.getWidth(), image.getHeight(), image.getMaxValue());
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot spill image " + name);
+    }
+  }
+
+  private static long sizeOf(PixelBuffer image) {
+    return 4L * image.getWidth() * image.getHeight();
+  }
+
+  /**
+   * The record of an image that was written to the spill directory.
+   */
+  private static final class SpilledImage {
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int maxValue;
+
+    private SpilledImage(File file, int width, int height, int maxValue) {
+      this.file = file;
+      this.width = width;
+      this.height = height;
+      this.maxValue = maxValue;
+    }
+
+    /**
+     * Maps the spilled file and reads the pixels back.
+     *
+     * @return the image
+     * @throws IllegalStateException if the file cannot be read
+     */
+    private PixelBuffer read() throws IllegalStateException {
+      int[] pixels = new int[this.width * this.height];
+      try (FileChannel channel = new RandomAccessFile(this.file, "r").getChannel()) {
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        bytes.asIntBuffer().get(pixels);
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot reload spilled image " + this.file);
+      }
+      return new PixelBuffer(this.width, this.height, this.maxValue, pixels);
+    }
+
+    private void delete() {
+      if (!this.file.delete()) {
+        this.file.deleteOnExit();
+      }
+    }
   }
 }
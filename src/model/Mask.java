@@ -0,0 +1,286 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Class Mask represents the channel samples of an image selected by a mask image.
+ * A sample is selected when that channel of the mask pixel is 0, so a black mask pixel
+ * selects all three channels of the pixel.
+ * The mask keeps the bounding box of the selected pixels, a flag for every row of the box
+ * telling whether the row selects anything, and one bit per sample of the box in a long[]
+ * bitset, laid out row by row. Selected samples are visited as spans of consecutive samples
+ * in row order, and only the rows of the box that select anything are visited, so the work
+ * is proportional to the selected region rather than to the image.
+ */
+public final class Mask {
+  private final int width;
+  private final int height;
+  private final int top;
+  private final int left;
+  private final int boxW;
+  private final int boxH;
+  private final boolean[] rowFlags;
+  private final long[] bits;
+
+  private Mask(int width, int height, int top, int left, int bottom, int right) {
+    this.width = width;
+    this.height = height;
+    this.top = top;
+    this.left = left;
+    this.boxW = Math.max(0, right - left);
+    this.boxH = Math.max(0, bottom - top);
+    this.rowFlags = new boolean[this.boxH];
+    this.bits = new long[(int) ((3L * this.boxW * this.boxH + 63) >>> 6)];
+  }
+
+  /**
+   * Gets the mask of a mask image. The bounding box is found in a first pass, and only the
+   * pixels inside of it are read in the second pass. A mask that was built together with
+   * the mask image is returned right away.
+   *
+   * @param image the mask image
+   * @return the mask
+   */
+  public static Mask of(PixelBuffer image) {
+    Mask cached = image.getCachedMask();
+    if (cached != null) {
+      return cached;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = image.getPixels();
+    int top = height;
+    int bottom = 0;
+    int left = width;
+    int right = 0;
+    for (int i = 0; i < height; i++) {
+      int offset = i * width;
+      int first = -1;
+      for (int j = 0; j < width; j++) {
+        if (hasBlack(pixels[offset + j])) {
+          first = j;
+          break;
+        }
+      }
+      if (first < 0) {
+        continue;
+      }
+      int last = width - 1;
+      while (!hasBlack(pixels[offset + last])) {
+        last--;
+      }
+      top = Math.min(top, i);
+      bottom = i + 1;
+      left = Math.min(left, first);
+      right = Math.max(right, last + 1);
+    }
+
+    Mask mask = new Mask(width, height, top, left, bottom, right);
+    for (int i = 0; i < mask.boxH; i++) {
+      int offset = (top + i) * width + left;
+      long bit = 3L * i * mask.boxW;
+      for (int j = 0; j < mask.boxW; j++, bit += 3) {
+        int pixel = pixels[offset + j];
+        if ((pixel & 0xFF0000) == 0) {
+          mask.set(bit);
+        }
+        if ((pixel & 0xFF00) == 0) {
+          mask.set(bit + 1);
+        }
+        if ((pixel & 0xFF) == 0) {
+          mask.set(bit + 2);
+        }
+        mask.rowFlags[i] |= hasBlack(pixel);
+      }
+    }
+    image.cacheMask(mask);
+    return mask;
+  }
+
+  /**
+   * Builds a white mask image with a black rectangle, together with its mask, in time
+   * proportional to the rectangle besides filling the image white.
+   *
+   * @param width  width of the mask image
+   * @param height height of the mask image
+   * @param x      column of the top left corner of the rectangle
+   * @param y      row of the top left corner of the rectangle
+   * @param cols   width of the rectangle
+   * @param rows   height of the rectangle
+   * @return the mask image
+   * @throws IndexOutOfBoundsException if the rectangle is outside of the image
+   */
+  public static PixelBuffer window(int width, int height, int x, int y, int cols, int rows)
+          throws IndexOutOfBoundsException {
+    if (x < 0 || y < 0 || cols < 0 || rows < 0 || x + cols > width || y + rows > height) {
+      throw new IndexOutOfBoundsException("Window is outside of image");
+    }
+    PixelBuffer image = new PixelBuffer(width, height, 0);
+    int[] pixels = image.getWritablePixels();
+    Arrays.fill(pixels, 0xFFFFFF);
+    for (int i = y; i < y + rows; i++) {
+      Arrays.fill(pixels, i * width + x, i * width + x + cols, 0);
+    }
+
+    Mask mask = new Mask(width, height, y, x, y + rows, x + cols);
+    Arrays.fill(mask.rowFlags, cols > 0);
+    long count = 3L * mask.boxW * mask.boxH;
+    Arrays.fill(mask.bits, -1L);
+    if (count % 64 != 0) {
+      mask.bits[mask.bits.length - 1] = (1L << count) - 1;
+    }
+    image.cacheMask(mask);
+    return image;
+  }
+
+  /**
+   * Gets the width of the mask.
+   *
+   * @return width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the height of the mask.
+   *
+   * @return height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Checks whether the mask selects nothing.
+   *
+   * @return true if no sample is selected
+   */
+  public boolean isEmpty() {
+    return this.boxW == 0 || this.boxH == 0;
+  }
+
+  /**
+   * Checks whether a channel sample is selected.
+   *
+   * @param row     row of the pixel from 0
+   * @param col     column of the pixel from 0
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return true if the sample is selected
+   */
+  public boolean isSelected(int row, int col, int channel) {
+    int i = row - this.top;
+    int j = col - this.left;
+    if (i < 0 || i >= this.boxH || j < 0 || j >= this.boxW) {
+      return false;
+    }
+    long bit = 3L * ((long) i * this.boxW + j) + channel;
+    return (this.bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+  }
+
+  /**
+   * Counts the selected samples.
+   *
+   * @return the number of selected samples
+   */
+  public long count() {
+    long count = 0;
+    for (long word : this.bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Checks that every selected sample is inside of an image of the given size.
+   *
+   * @param image the image the mask is applied on
+   * @throws IndexOutOfBoundsException if a selected sample is outside of the image
+   */
+  public void checkInside(PixelBuffer image) throws IndexOutOfBoundsException {
+    if (!this.isEmpty() && (this.top + this.boxH > image.getHeight()
+            || this.left + this.boxW > image.getWidth())) {
+      throw new IndexOutOfBoundsException("Mask selects pixels outside of image");
+    }
+  }
+
+  /**
+   * Visits every run of consecutive selected samples in row order. Runs never cross rows,
+   * and rows that select nothing are skipped without being read.
+   *
+   * @param visitor the visitor of the runs
+   */
+  public void forEachSpan(SpanVisitor visitor) {
+    long rowLength = 3L * this.boxW;
+    int offset = 3 * this.left;
+    for (int i = 0; i < this.boxH; i++) {
+      if (!this.rowFlags[i]) {
+        continue;
+      }
+      long rowStart = i * rowLength;
+      long rowEnd = rowStart + rowLength;
+      long from = this.nextSet(rowStart, rowEnd);
+      while (from < rowEnd) {
+        long to = this.nextClear(from, rowEnd);
+        visitor.visit(this.top + i, (int) (from - rowStart) + offset,
+                (int) (to - rowStart) + offset);
+        from = this.nextSet(to, rowEnd);
+      }
+    }
+  }
+
+  private static boolean hasBlack(int pixel) {
+    return (pixel & 0xFF0000) == 0 || (pixel & 0xFF00) == 0 || (pixel & 0xFF) == 0;
+  }
+
+  private void set(long bit) {
+    this.bits[(int) (bit >>> 6)] |= 1L << bit;
+  }
+
+  private long nextSet(long from, long end) {
+    if (from >= end) {
+      return end;
+    }
+    int index = (int) (from >>> 6);
+    long word = this.bits[index] & (-1L << from);
+    while (word == 0) {
+      index++;
+      if ((long) index << 6 >= end) {
+        return end;
+      }
+      word = this.bits[index];
+    }
+    return Math.min(end, ((long) index << 6) + Long.numberOfTrailingZeros(word));
+  }
+
+  private long nextClear(long from, long end) {
+    if (from >= end) {
+      return end;
+    }
+    int index = (int) (from >>> 6);
+    long word = ~this.bits[index] & (-1L << from);
+    while (word == 0) {
+      index++;
+      if ((long) index << 6 >= end) {
+        return end;
+      }
+      word = ~this.bits[index];
+    }
+    return Math.min(end, ((long) index << 6) + Long.numberOfTrailingZeros(word));
+  }
+
+  /**
+   * A visitor of runs of selected samples.
+   */
+  public interface SpanVisitor {
+    /**
+     * Visits the selected samples from {@link Integer from} up to {@link Integer to} of a row,
+     * where the sample of column x and channel c is 3 * x + c.
+     *
+     * @param row  row of the samples from 0
+     * @param from the first selected sample
+     * @param to   the sample after the last selected one
+     */
+    void visit(int row, int from, int to);
+  }
+}
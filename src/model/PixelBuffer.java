@@ -0,0 +1,375 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class PixelBuffer represents an image stored in one flat, contiguous int array.
+ * Every pixel is packed as 0xRRGGBB and pixels are laid out row by row, so the
+ * pixel at column x and row y lives at index y * width + x.
+ * Width, height and max value are kept as explicit fields instead of being stored
+ * in the first row like the legacy int[][] format.
+ * Buffers handed out by {@link #share()} are copy-on-write: they read the same pixels
+ * as the original, and whichever buffer is written first makes its own private copy.
+ * A buffer used as a mask image remembers its {@link Mask} until its pixels are written.
+ * The content digest of a buffer, once computed, is kept with it and with every buffer that
+ * shares its pixels, until one of them is written.
+ */
+public final class PixelBuffer {
+  private final int width;
+  private final int height;
+  private int[] pixels;
+  private int maxValue;
+  private boolean shared;
+  private Mask mask;
+  private AtomicReference<byte[]> digest;
+
+  /**
+   * Constructor for an all black pixel buffer.
+   *
+   * @param width    width of the image
+   * @param height   height of the image
+   * @param maxValue max value of the image
+   * @throws IllegalArgumentException if width or height is not positive
+   */
+  public PixelBuffer(int width, int height, int maxValue) throws IllegalArgumentException {
+    this(width, height, maxValue, null);
+  }
+
+  /**
+   * Constructor for a pixel buffer that wraps the given packed pixels without copying them.
+   *
+   * @param width    width of the image
+   * @param height   height of the image
+   * @param maxValue max value of the image
+   * @param pixels   packed 0xRRGGBB pixels in row order, or null for an all black image
+   * @throws IllegalArgumentException if width or height is not positive,
+   *                                  or pixels does not fit the size
+   */
+  public PixelBuffer(int width, int height, int maxValue, int[] pixels)
+          throws IllegalArgumentException {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("width or height cannot be 0");
+    }
+    if (pixels != null && pixels.length != width * height) {
+      throw new IllegalArgumentException("pixels do not fit the size of image");
+    }
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.pixels = pixels == null ? new int[width * height] : pixels;
+    this.digest = new AtomicReference<>();
+  }
+
+  /**
+   * Converts an image in the legacy int[height + 1][3 * width] format, whose first row
+   * holds width, height and max value, to a pixel buffer.
+   *
+   * @param image the legacy image
+   * @return the pixel buffer
+   * @throws IllegalArgumentException if the size is invalid or any channel is not in 0 - 255
+   */
+  public static PixelBuffer fromLegacy(int[][] image) throws IllegalArgumentException {
+    int width = image[0][0];
+    int height = image[0][1];
+    PixelBuffer result = new PixelBuffer(width, height, image[0][2]);
+    int[] pixels = result.pixels;
+    for (int i = 0; i < height; i++) {
+      int[] row = image[i + 1];
+      int offset = i * width;
+      for (int j = 0; j < width; j++) {
+        int r = row[3 * j];
+        int g = row[3 * j + 1];
+        int b = row[3 * j + 2];
+        if (((r | g | b) & ~0xFF) != 0) {
+          throw new IllegalArgumentException("Invalid RGB");
+        }
+        pixels[offset + j] = pack(r, g, b);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts this pixel buffer to the legacy int[height + 1][3 * width] format.
+   *
+   * @return the legacy image
+   */
+  public int[][] toLegacy() {
+    int[][] result = new int[this.height + 1][3 * this.width];
+    result[0][0] = this.width;
+    result[0][1] = this.height;
+    result[0][2] = this.maxValue;
+    for (int i = 0; i < this.height; i++) {
+      int[] row = result[i + 1];
+      int offset = i * this.width;
+      for (int j = 0; j < this.width; j++) {
+        int pixel = this.pixels[offset + j];
+        row[3 * j] = red(pixel);
+        row[3 * j + 1] = green(pixel);
+        row[3 * j + 2] = blue(pixel);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Packs three channels into one 0xRRGGBB pixel. Channels must already be in 0 - 255.
+   *
+   * @param r red channel
+   * @param g green channel
+   * @param b blue channel
+   * @return the packed pixel
+   */
+  public static int pack(int r, int g, int b) {
+    return (r << 16) | (g << 8) | b;
+  }
+
+  /**
+   * Gets the red channel of a packed pixel.
+   *
+   * @param pixel packed pixel
+   * @return red channel
+   */
+  public static int red(int pixel) {
+    return (pixel >> 16) & 0xFF;
+  }
+
+  /**
+   * Gets the green channel of a packed pixel.
+   *
+   * @param pixel packed pixel
+   * @return green channel
+   */
+  public static int green(int pixel) {
+    return (pixel >> 8) & 0xFF;
+  }
+
+  /**
+   * Gets the blue channel of a packed pixel.
+   *
+   * @param pixel packed pixel
+   * @return blue channel
+   */
+  public static int blue(int pixel) {
+    return pixel & 0xFF;
+  }
+
+  /**
+   * Gets one channel of a packed pixel.
+   *
+   * @param pixel   packed pixel
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return the channel value
+   */
+  public static int channel(int pixel, int channel) {
+    return (pixel >> (16 - 8 * channel)) & 0xFF;
+  }
+
+  /**
+   * Replaces one channel of a packed pixel.
+   *
+   * @param pixel   packed pixel
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @param value   new channel value in 0 - 255
+   * @return the new packed pixel
+   */
+  public static int withChannel(int pixel, int channel, int value) {
+    int shift = 16 - 8 * channel;
+    return (pixel & ~(0xFF << shift)) | (value << shift);
+  }
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the max value of the image.
+   *
+   * @return max value
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Sets the max value of the image.
+   *
+   * @param maxValue new max value
+   */
+  public synchronized void setMaxValue(int maxValue) {
+    this.maxValue = maxValue;
+    this.digest = new AtomicReference<>();
+  }
+
+  /**
+   * Gets the backing array of packed pixels for reading. The array may be shared with
+   * other buffers, so it must not be modified; use {@link #getWritablePixels()} instead.
+   *
+   * @return packed pixels in row order
+   */
+  public int[] getPixels() {
+    return this.pixels;
+  }
+
+  /**
+   * Gets the backing array of packed pixels for writing. If the pixels are shared with
+   * other buffers, a private copy is made first.
+   *
+   * @return packed pixels in row order
+   */
+  public synchronized int[] getWritablePixels() {
+    this.mask = null;
+    this.digest = new AtomicReference<>();
+    if (this.shared) {
+      this.pixels = Arrays.copyOf(this.pixels, this.pixels.length);
+      this.shared = false;
+    }
+    return this.pixels;
+  }
+
+  /**
+   * Makes a copy-on-write copy of the pixel buffer. No pixel is copied until either
+   * buffer is written.
+   *
+   * @return the buffer sharing the same pixels
+   */
+  public synchronized PixelBuffer share() {
+    this.shared = true;
+    PixelBuffer result = new PixelBuffer(this.width, this.height, this.maxValue, this.pixels);
+    result.shared = true;
+    result.mask = this.mask;
+    result.digest = this.digest;
+    return result;
+  }
+
+  /**
+   * Gets the mask built from this buffer, if it has not been written since.
+   *
+   * @return the mask, or null if there is none
+   */
+  synchronized Mask getCachedMask() {
+    return this.mask;
+  }
+
+  /**
+   * Remembers the mask built from this buffer.
+   *
+   * @param mask the mask
+   */
+  synchronized void cacheMask(Mask mask) {
+    this.mask = mask;
+  }
+
+  /**
+   * Gets the content digest of this buffer, if it has not been written since.
+   *
+   * @return the digest, or null if there is none
+   */
+  synchronized byte[] getCachedDigest() {
+    return this.digest.get();
+  }
+
+  /**
+   * Remembers the content digest of this buffer, for every buffer sharing its pixels.
+   *
+   * @param digest the digest
+   */
+  synchronized void cacheDigest(byte[] digest) {
+    this.digest.set(digest);
+  }
+
+  /**
+   * Gets the packed pixel at the given column and row.
+   *
+   * @param x column of the pixel
+   * @param y row of the pixel
+   * @return packed pixel
+   * @throws IndexOutOfBoundsException if the pixel is outside of the image
+   */
+  public int getRGB(int x, int y) throws IndexOutOfBoundsException {
+    return this.pixels[this.indexOf(x, y)];
+  }
+
+  /**
+   * Sets the packed pixel at the given column and row.
+   *
+   * @param x     column of the pixel
+   * @param y     row of the pixel
+   * @param pixel packed pixel
+   * @throws IndexOutOfBoundsException if the pixel is outside of the image
+   */
+  public void setRGB(int x, int y, int pixel) throws IndexOutOfBoundsException {
+    int index = this.indexOf(x, y);
+    this.getWritablePixels()[index] = pixel;
+  }
+
+  /**
+   * Gets one channel of the pixel at the given column and row.
+   *
+   * @param x       column of the pixel
+   * @param y       row of the pixel
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return the channel value
+   * @throws IndexOutOfBoundsException if the pixel is outside of the image
+   */
+  public int getChannel(int x, int y, int channel) throws IndexOutOfBoundsException {
+    return channel(this.getRGB(x, y), channel);
+  }
+
+  /**
+   * Sets one channel of the pixel at the given column and row.
+   *
+   * @param x       column of the pixel
+   * @param y       row of the pixel
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @param value   new channel value in 0 - 255
+   * @throws IndexOutOfBoundsException if the pixel is outside of the image
+   */
+  public void setChannel(int x, int y, int channel, int value) throws IndexOutOfBoundsException {
+    int index = this.indexOf(x, y);
+    int[] writable = this.getWritablePixels();
+    writable[index] = withChannel(writable[index], channel, value);
+  }
+
+  /**
+   * Checks whether the other buffer has the same width and height.
+   *
+   * @param other the other buffer
+   * @return true if both buffers have the same size
+   */
+  public boolean sameSize(PixelBuffer other) {
+    return this.width == other.width && this.height == other.height;
+  }
+
+  /**
+   * Makes a deep copy of the pixel buffer.
+   *
+   * @return the copy
+   */
+  public PixelBuffer copy() {
+    return new PixelBuffer(this.width, this.height, this.maxValue,
+            Arrays.copyOf(this.pixels, this.pixels.length));
+  }
+
+  private int indexOf(int x, int y) throws IndexOutOfBoundsException {
+    if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+      throw new IndexOutOfBoundsException("Pixel (" + x + ", " + y + ") is outside of image");
+    }
+    return y * this.width + x;
+  }
+}
@@ -0,0 +1,332 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import model.functions.Memoizable;
+
+/**
+ * Class ResultCache keeps the images functions wrote in a directory, keyed by the operation
+ * and the content of the images it read, so a function that runs again on the same images
+ * reads its result back instead of computing it. The key is the SHA-256 digest of
+ * {@link #VERSION}, the operation and the digests of the images read; the digest of an image
+ * is computed once and kept with its {@link PixelBuffer}.
+ * The files in the directory are bounded by a byte budget. When it is exceeded, the least
+ * recently used results are deleted; the time a file was last used is its modification time,
+ * so the order carries over to the next run.
+ * A result that cannot be read or written is computed as if it was not cached.
+ */
+public final class ResultCache {
+  /**
+   * The version of the images functions write. It must be raised whenever a function gives
+   * different pixels for the same operation than before, so results kept by earlier versions
+   * are not read back.
+   */
+  public static final int VERSION = 2;
+  private static final String SUFFIX = ".result";
+  private static final int HEADER = 12 + 32;
+
+  private final File directory;
+  private final long byteBudget;
+  private final Map<String, Long> entries;
+  private long bytes;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Constructor for the result cache.
+   *
+   * @param directory  the directory the results are kept in, created if it does not exist
+   * @param byteBudget the most bytes the results may take
+   * @throws IllegalArgumentException if the budget is negative
+   * @throws IllegalStateException    if the directory cannot be created
+   */
+  public ResultCache(String directory, long byteBudget)
+          throws IllegalArgumentException, IllegalStateException {
+    if (byteBudget < 0) {
+      throw new IllegalArgumentException("cache budget cannot be negative");
+    }
+    this.directory = new File(Objects.requireNonNull(directory));
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IllegalStateException("Cannot create cache directory " + directory);
+    }
+    this.byteBudget = byteBudget;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    File[] files = this.directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files != null) {
+      Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+      for (File file : files) {
+        String name = file.getName();
+        this.entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+        this.bytes += file.length();
+      }
+    }
+    this.evict();
+  }
+
+  /**
+   * Gets the key of an operation on the given images, in the current {@link #VERSION}.
+   *
+   * @param operation the description of the operation and its parameters
+   * @param inputs    the images the operation reads, in order
+   * @return the key
+   */
+  public String keyOf(String operation, List<PixelBuffer> inputs) {
+    MessageDigest key = sha256();
+    key.update(("v" + VERSION + " " + operation).getBytes(StandardCharsets.UTF_8));
+    for (PixelBuffer input : inputs) {
+      key.update((byte) 0);
+      key.update(digestOf(input));
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : key.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Gets the result kept for the key.
+   *
+   * @param key the key of the operation
+   * @return the result, or null if there is none
+   */
+  public PixelBuffer get(String key) {
+    synchronized (this) {
+      if (this.entries.get(key) == null) {
+        this.missCount++;
+        return null;
+      }
+    }
+    File file = this.fileOf(key);
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      int maxValue = buffer.getInt();
+      byte[] digest = new byte[32];
+      buffer.get(digest);
+      int[] pixels = new int[width * height];
+      buffer.asIntBuffer().get(pixels);
+      PixelBuffer result = new PixelBuffer(width, height, maxValue, pixels);
+      result.cacheDigest(digest);
+      file.setLastModified(System.currentTimeMillis());
+      synchronized (this) {
+        this.hitCount++;
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        this.forget(key);
+        this.missCount++;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Keeps the result for the key, deleting the least recently used results if the budget
+   * is exceeded. A result larger than the budget is not kept.
+   *
+   * @param key    the key of the operation
+   * @param result the image the operation wrote
+   */
+  public void put(String key, PixelBuffer result) {
+    long size = HEADER + 4L * result.getWidth() * result.getHeight();
+    if (size > this.byteBudget) {
+      return;
+    }
+    byte[] digest = digestOf(result);
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+      try (FileChannel channel = new RandomAccessFile(temp.toFile(), "rw").getChannel()) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(result.getWidth()).putInt(result.getHeight()).putInt(result.getMaxValue());
+        header.put(digest).flip();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+        write(channel, result.getPixels());
+      }
+      Files.move(temp, this.fileOf(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      if (temp != null) {
+        temp.toFile().delete();
+      }
+      return;
+    }
+    synchronized (this) {
+      Long old = this.entries.put(key, size);
+      this.bytes += size - (old == null ? 0 : old);
+      this.evict();
+    }
+  }
+
+  /**
+   * Gets the result kept for the operation on the given images, computing and keeping it if
+   * there is none.
+   *
+   * @param operation the description of the operation and its parameters
+   * @param inputs    the images the operation reads, in order
+   * @param function  computes the result
+   * @return the result
+   */
+  public PixelBuffer compute(String operation, List<PixelBuffer> inputs,
+                             Supplier<PixelBuffer> function) {
+    String key = this.keyOf(operation, inputs);
+    PixelBuffer result = this.get(key);
+    if (result == null) {
+      result = function.get();
+      this.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Applies a function on a model, or adds the image it wrote to the model if it ran on the
+   * same images before. In the exact mode, results are kept apart from the others.
+   *
+   * @param function the function
+   * @param model    the model the function reads from and writes to
+   * @throws NullPointerException if an image the function reads does not exist
+   */
+  public void apply(Memoizable function, IModel model) throws NullPointerException {
+    List<PixelBuffer> inputs = new ArrayList<>();
+    for (String name : function.getReads()) {
+      inputs.add(model.getBufferFromMap(name));
+    }
+    String destination = function.getWrites().get(0);
+    String key = this.keyOf((model.isExact() ? "exact " : "") + function.getOperation(), inputs);
+    PixelBuffer result = this.get(key);
+    if (result != null) {
+      model.addToMap(destination, result);
+    } else {
+      function.apply(model);
+      this.put(key, model.getBufferFromMap(destination));
+    }
+  }
+
+  /**
+   * Gets the number of results read back from the cache.
+   *
+   * @return the hit count
+   */
+  public synchronized long getHitCount() {
+    return this.hitCount;
+  }
+
+  /**
+   * Gets the number of results that were not in the cache.
+   *
+   * @return the miss count
+   */
+  public synchronized long getMissCount() {
+    return this.missCount;
+  }
+
+  /**
+   * Gets the number of bytes the kept results take.
+   *
+   * @return the bytes of the results
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Gets the digest of the size, the max value and the pixels of the image, computing it
+   * only if it is not kept with the image yet.
+   *
+   * @param image the image
+   * @return the SHA-256 digest
+   */
+  static byte[] digestOf(PixelBuffer image) {
+    byte[] digest = image.getCachedDigest();
+    if (digest != null) {
+      return digest;
+    }
+    MessageDigest content = sha256();
+    ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+    chunk.putInt(image.getWidth()).putInt(image.getHeight()).putInt(image.getMaxValue());
+    content.update(chunk.array(), 0, chunk.position());
+    int[] pixels = image.getPixels();
+    for (int index = 0; index < pixels.length; ) {
+      int count = Math.min(chunk.capacity() / 4, pixels.length - index);
+      chunk.clear();
+      chunk.asIntBuffer().put(pixels, index, count);
+      content.update(chunk.array(), 0, count * 4);
+      index += count;
+    }
+    digest = content.digest();
+    image.cacheDigest(digest);
+    return digest;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available");
+    }
+  }
+
+  private static void write(FileChannel channel, int[] pixels) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 16);
+    int index = 0;
+    while (index < pixels.length) {
+      bytes.clear();
+      int count = Math.min(bytes.capacity() / 4, pixels.length - index);
+      bytes.asIntBuffer().put(pixels, index, count);
+      bytes.limit(count * 4);
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      index += count;
+    }
+  }
+
+  private File fileOf(String key) {
+    return new File(this.directory, key + SUFFIX);
+  }
+
+  private void forget(String key) {
+    Long size = this.entries.remove(key);
+    if (size != null) {
+      this.bytes -= size;
+      this.fileOf(key).delete();
+    }
+  }
+
+  /**
+   * Deletes the least recently used results until the rest fit the budget.
+   */
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+    while (this.bytes > this.byteBudget && iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      this.bytes -= entry.getValue();
+      this.fileOf(entry.getKey()).delete();
+      iterator.remove();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class TileScheduler splits the rows of an image into tiles and runs a task on every tile,
+ * either one after another on the calling thread or in parallel on a {@link ForkJoinPool}.
+ * A tile is a band of whole rows holding about {@link #TILE_BYTES} bytes of pixels, so
+ * that the rows a task reads and writes stay in the L2 cache.
+ * Tasks must only write the rows of their own tile, so the result is the same no matter
+ * how many threads run them.
+ * The pool is started the first time tiles run in parallel, and stopped by {@link #close()}.
+ */
+public final class TileScheduler {
+  /**
+   * The number of pixel bytes in one tile.
+   */
+  public static final int TILE_BYTES = 256 * 1024;
+
+  private final int parallelism;
+  private ForkJoinPool pool;
+  private boolean closed;
+
+  /**
+   * Constructor for the tile scheduler.
+   *
+   * @param parallelism the number of threads tiles run on, 1 for the calling thread only
+   * @throws IllegalArgumentException if parallelism is not positive
+   */
+  public TileScheduler(int parallelism) throws IllegalArgumentException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("number of threads must be positive");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Gets the number of threads tiles run on.
+   *
+   * @return the parallelism
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Runs the task on every tile of rows of an image.
+   *
+   * @param width  width of the image
+   * @param height height of the image
+   * @param task   the task run on every tile
+   */
+  public void forEachTile(int width, int height, RowTask task) {
+    int rows = Math.max(1, TILE_BYTES / (4 * Math.max(1, width)));
+    int tiles = (height + rows - 1) / rows;
+    ForkJoinPool pool = this.parallelism == 1 || tiles <= 1 ? null : this.getPool();
+    if (pool == null) {
+      for (int from = 0; from < height; from += rows) {
+        task.run(from, Math.min(height, from + rows));
+      }
+    } else {
+      pool.invoke(new TileAction(task, rows, height, 0, tiles));
+    }
+  }
+
+  /**
+   * Stops the threads of the pool. Tiles that are running are finished, and tasks run
+   * afterwards run on the calling thread.
+   */
+  public synchronized void close() {
+    this.closed = true;
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+  }
+
+  /**
+   * Gets the pool, starting it if needed.
+   *
+   * @return the pool, or null if the scheduler is closed
+   */
+  private synchronized ForkJoinPool getPool() {
+    if (this.pool == null && !this.closed) {
+      this.pool = new ForkJoinPool(this.parallelism);
+    }
+    return this.pool;
+  }
+
+  /**
+   * A task run on a band of rows of an image.
+   */
+  public interface RowTask {
+    /**
+     * Runs the task on the rows from {@link Integer from} up to {@link Integer to}.
+     *
+     * @param from the first row of the tile
+     * @param to   the row after the last row of the tile
+     */
+    void run(int from, int to);
+  }
+
+  /**
+   * Splits a range of tiles in half until only one tile is left.
+   */
+  private static final class TileAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final transient RowTask task;
+    private final int rows;
+    private final int height;
+    private final int first;
+    private final int last;
+
+    private TileAction(RowTask task, int rows, int height, int first, int last) {
+      this.task = task;
+      this.rows = rows;
+      this.height = height;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.last - this.first == 1) {
+        int from = this.first * this.rows;
+        this.task.run(from, Math.min(this.height, from + this.rows));
+        return;
+      }
+      int middle = (this.first + this.last) >>> 1;
+      invokeAll(new TileAction(this.task, this.rows, this.height, this.first, middle),
+              new TileAction(this.task, this.rows, this.height, middle, this.last));
+    }
+  }
+}
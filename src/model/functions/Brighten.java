@@ -1,19 +1,23 @@
 package model.functions;
 
-import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
-import utils.Util;
+import model.Mask;
+import model.PixelBuffer;
+import model.functions.colorTransformation.ColorMatrix;
 
 /**
  * The Brighten function that brightens or darkens the image.
  * to execute a brighten operation on given image.
  */
-public class Brighten implements ModelFunctions {
+public class Brighten implements PointFunction {
   private final int delta;
+  private final PointTable table;
   private final String old;
   private final String mask;
   private final String dest;
@@ -55,6 +59,7 @@ public class Brighten implements ModelFunctions {
    */
   public Brighten(int delta, ArrayList<String> params) {
     this.delta = delta;
+    this.table = PointTable.of(value -> value + delta);
     this.old = Objects.requireNonNull(params.get(0));
     if (params.size() == 2){
       this.mask = "";
@@ -72,28 +77,148 @@ public class Brighten implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
+    PixelBuffer image = model.getBufferFromMap(this.old);
     if (this.mask.equals("")) {
-      int width = image[0][0];
-      int height = image[0][1];
-
-      for (int i = 1; i < height + 1; i++) {
-        for (int j = 0; j < 3 * width; j++) {
-          int t = image[i][j] + this.delta;
-          image[i][j] = Math.max(0, Math.min(255, t));
-        }
-      }
+      int[] source = image.getPixels();
+      int width = image.getWidth();
+      PixelBuffer result = new PixelBuffer(width, image.getHeight(), image.getMaxValue());
+      int[] pixels = result.getWritablePixels();
+      model.getScheduler().forEachTile(width, image.getHeight(), (from, to) ->
+              this.applyToPixels(source, pixels, from * width, to * width));
+      image = result;
     } else {
-      int[][] maskIm = model.getFromMap(this.mask);
-      Util util = new Util();
-      List<Point> list = util.getPointsNeedToChange(maskIm);
-      for (Point point : list) {
-        int x = (int) point.getX();
-        int y = (int) point.getY();
-        int t = image[x][y] + this.delta;
-        image[x][y] = Math.max(0, Math.min(255, t));
-      }
+      Mask selected = Mask.of(model.getBufferFromMap(this.mask));
+      selected.checkInside(image);
+      int width = image.getWidth();
+      int[] pixels = image.getWritablePixels();
+      selected.forEachSpan((row, from, to) -> {
+        int offset = row * width;
+        for (int s = from; s < to; s++) {
+          int index = offset + s / 3;
+          int channel = s % 3;
+          pixels[index] = PixelBuffer.withChannel(pixels[index], channel,
+                  this.table.channel(channel, PixelBuffer.channel(pixels[index], channel)));
+        }
+      });
+      model.addToMap(this.dest, image, this.old, selected);
+      return;
     }
     model.addToMap(this.dest, image);
   }
+
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public String getSource() {
+    return this.old;
+  }
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public String getDestination() {
+    return this.dest;
+  }
+
+  /**
+   * Checks whether the function only changes the pixels selected by a mask image.
+   *
+   * @return true if a mask is given
+   */
+  @Override
+  public boolean isMasked() {
+    return !this.mask.equals("");
+  }
+
+  /**
+   * Adds the delta to every channel of the pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the brightened pixel
+   */
+  @Override
+  public int applyToPixel(int pixel) {
+    return this.table.apply(pixel);
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  @Override
+  public void applyToPixels(int[] source, int[] destination, int from, int to) {
+    this.table.apply(source, destination, from, to);
+  }
+
+  /**
+   * Gets the lookup table that adds the delta to a channel.
+   *
+   * @return the table
+   */
+  @Override
+  public PointTable getTable() {
+    return this.table;
+  }
+
+  /**
+   * Brightening adds to the channels, so it is not a color matrix.
+   *
+   * @return null
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return null;
+  }
+
+  /**
+   * Brightening keeps the colors of the pixel, so the result is not always grey.
+   *
+   * @return false
+   */
+  @Override
+  public boolean isGrey() {
+    return false;
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name, and the mask name if a mask is given
+   */
+  @Override
+  public List<String> getReads() {
+    return this.mask.equals("") ? Collections.singletonList(this.old)
+            : Arrays.asList(this.old, this.mask);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is brighten by the delta.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return "brighten " + this.delta;
+  }
 }
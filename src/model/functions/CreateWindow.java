@@ -1,8 +1,13 @@
 package model.functions;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
 
 public class CreateWindow implements ModelFunctions {
   private final String old;
@@ -24,35 +29,33 @@ public class CreateWindow implements ModelFunctions {
 
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
-    int width = image[0][0];
-    int height = image[0][1];
-    int[][] maskIm = new int[height + 1][width * 3];
-    int[][] resultIm = new int[height + 1][width * 3];
-
-    maskIm[0][0] = width;
-    maskIm[0][1] = height;
-    for (int i = 1; i < height + 1; i++) {
-      for (int j = 0; j < width * 3; j++) {
-        maskIm[i][j] = 255;
-      }
-    }
-
-    int rowIndex = Math.min(maskIm[0][1], 200);
-    int colIndex = Math.min(maskIm[0][0]*3, 600);
-    for (int i = 0; i < rowIndex; i++) {
-      for (int j = 0; j < colIndex; j++) {
-        maskIm[y + i + 1][3 * x + j] = 0;
-      }
-    }
+    PixelBuffer image = model.getBufferFromMap(this.old);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    PixelBuffer maskIm = Mask.window(width, height, this.x, this.y, Math.min(width, 200),
+            Math.min(height, 200));
 
     model.addToMap(mask, maskIm);
+    model.addToMap(dest, image);
+  }
 
-    for (int i = 0; i < height + 1; i++) {
-      for (int j = 0; j < width * 3; j++) {
-        resultIm[i][j] = image[i][j];
-      }
-    }
-    model.addToMap(dest, resultIm);
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.old);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the mask name and the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Arrays.asList(this.mask, this.dest);
   }
 }
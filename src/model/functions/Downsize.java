@@ -1,21 +1,32 @@
 package model.functions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.PixelBuffer;
+import model.TileScheduler;
 
 /**
  * The downsize function.
  * It accepts {@link Integer width}, {@link Integer height},
  * {@link String old} and {@link String dest}
  * to execute a down in size on given image.
+ * By default every result pixel interpolates the four source pixels its top left corner
+ * falls between, exactly as the down scale always did; the coordinates and weights of every
+ * row and column are computed once and the rows run on the {@link model.TileScheduler}.
+ * In the box mode, the image is scaled by a {@link Resampler} that averages every source
+ * pixel a result pixel covers, which avoids aliasing on large reductions and starts from the
+ * smallest pyramid level of the image that is not smaller than the given size.
  */
-public class Downsize implements ModelFunctions {
+public class Downsize implements Memoizable {
   private final String old;
   private final String dest;
   private final int width;
   private final int height;
+  private final boolean box;
 
   /**
    * Constructor for the Downsize function, which only accept four parameters.
@@ -27,11 +38,27 @@ public class Downsize implements ModelFunctions {
    * @throws IllegalArgumentException when params length is not equal to 4
    */
   public Downsize(int width, int height, ArrayList<String> params) throws IllegalArgumentException {
+    this(width, height, false, params);
+  }
+
+  /**
+   * Constructor for the Downsize function, which can average the covered pixels instead of
+   * interpolating.
+   *
+   * @param width  represent the width of aimed size.
+   * @param height represent the height of aimed size.
+   * @param box    true to average every source pixel a result pixel covers
+   * @param params represent the params.
+   * @throws IllegalArgumentException when params length is not equal to 2
+   */
+  public Downsize(int width, int height, boolean box, ArrayList<String> params)
+          throws IllegalArgumentException {
     if (params.size() != 2) {
       throw new IllegalArgumentException("Arguments exceed demand!");
     }
     this.width = width;
     this.height = height;
+    this.box = box;
     this.old = Objects.requireNonNull(params.get(0));
     this.dest = Objects.requireNonNull(params.get(1));
   }
@@ -43,84 +70,119 @@ public class Downsize implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
-    int width = image[0][0];
-    int height = image[0][1];
+    PixelBuffer image = this.box ? model.getLevelFromMap(this.old, this.width, this.height)
+            : model.getBufferFromMap(this.old);
+    int width = image.getWidth();
+    int height = image.getHeight();
     if (this.width > width || this.height > height) {
       throw new IllegalArgumentException("Given scale is larger than original image");
     }
-    int[][] result = new int[this.height + 1][this.width * 3];
-    this.change(width, height, image, result);
-    result[0][0] = this.width;
-    result[0][1] = this.height;
+    PixelBuffer result = new PixelBuffer(this.width, this.height, 0);
+    if (this.box) {
+      new Resampler(width, height, this.width, this.height, Resampler.Mode.BOX)
+              .apply(image, result, model.getScheduler());
+    } else {
+      this.change(image, result, model.getScheduler());
+    }
     model.addToMap(dest, result);
   }
 
   /**
-   * Change values for a pixel.
+   * Interpolates every result pixel from the four source pixels around the point its top
+   * left corner maps to. The first source row is never left, so the top rows extrapolate
+   * from the first two, and every channel is truncated and clamped.
    *
-   * @param width  width of original image
-   * @param height height of original image
-   * @param image  original image
-   * @param result result image
+   * @param image     original image
+   * @param result    result image
+   * @param scheduler the scheduler the rows run on
    */
-  private void change(int width, int height, int[][] image, int[][] result) {
-    for (int i = 1; i < this.height + 1; i++) {
-      for (int j = 0; j < this.width; j++) {
-        double x = (double) (i - 1) / (double) this.height * height;
-        double y = (double) j / (double) this.width * width;
-        double xd = Math.max(1, Math.min(height, (int) x));
-        double xu = Math.max(1, Math.min(height, xd + 1));
-        double yd = Math.min(width, (int) y);
-        double yu = Math.min(width, yd + 1);
-
-        int red = 0;
-        int green = 0;
-        int blue = 0;
+  private void change(PixelBuffer image, PixelBuffer result, TileScheduler scheduler) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] rowDown = new int[this.height];
+    int[] rowUp = new int[this.height];
+    double[] rowWeightDown = new double[this.height];
+    double[] rowWeightUp = new double[this.height];
+    for (int i = 0; i < this.height; i++) {
+      // rows count from 1, as in the header-row image this was written for
+      double x = (double) i / (double) this.height * height;
+      double xd = Math.max(1, Math.min(height, (int) x));
+      double xu = Math.max(1, Math.min(height, xd + 1));
+      rowDown[i] = (int) xd - 1;
+      rowUp[i] = (int) xu - 1;
+      rowWeightDown[i] = xu - x;
+      rowWeightUp[i] = x - xd;
+    }
+    int[] columnDown = new int[this.width];
+    int[] columnUp = new int[this.width];
+    double[] columnWeightDown = new double[this.width];
+    double[] columnWeightUp = new double[this.width];
+    for (int j = 0; j < this.width; j++) {
+      double y = (double) j / (double) this.width * width;
+      double yd = Math.min(width, (int) y);
+      double yu = Math.min(width, yd + 1);
+      columnDown[j] = (int) yd;
+      // only past the last column when its weight is 0
+      columnUp[j] = Math.min(width - 1, (int) yu);
+      columnWeightDown[j] = yu - y;
+      columnWeightUp[j] = y - yd;
+    }
 
-        for (int k = 0; k < 3; k++) {
-          switch (k) {
-            case 0:
-              red = this.calculate(x, y, xd, xu, yd, yu, k, image);
-              break;
-            case 1:
-              green = this.calculate(x, y, xd, xu, yd, yu, k, image);
-              break;
-            case 2:
-              blue = this.calculate(x, y, xd, xu, yd, yu, k, image);
-              break;
-            default:
-              continue;
+    int[] from = image.getPixels();
+    int[] to = result.getWritablePixels();
+    int resultWidth = this.width;
+    scheduler.forEachTile(resultWidth, this.height, (first, end) -> {
+      for (int i = first; i < end; i++) {
+        int down = rowDown[i] * width;
+        int up = rowUp[i] * width;
+        double fx0 = rowWeightDown[i];
+        double fx1 = rowWeightUp[i];
+        for (int j = 0; j < resultWidth; j++) {
+          int a = from[down + columnDown[j]];
+          int b = from[up + columnDown[j]];
+          int c = from[down + columnUp[j]];
+          int d = from[up + columnUp[j]];
+          int pixel = 0;
+          for (int shift = 16; shift >= 0; shift -= 8) {
+            double m = (b >> shift & 0xFF) * fx1 + (a >> shift & 0xFF) * fx0;
+            double n = (d >> shift & 0xFF) * fx1 + (c >> shift & 0xFF) * fx0;
+            int value = (int) (n * columnWeightUp[j] + m * columnWeightDown[j]);
+            pixel |= Math.max(0, Math.min(255, value)) << shift;
           }
+          to[i * resultWidth + j] = pixel;
         }
-        result[i][3 * j] = Math.max(0, Math.min(255, red));
-        result[i][3 * j + 1] = Math.max(0, Math.min(255, green));
-        result[i][3 * j + 2] = Math.max(0, Math.min(255, blue));
       }
-    }
+    });
   }
 
   /**
-   * Using the assignment formula to calculate the value for one channel.
+   * Gets the names of the images the function reads.
    *
-   * @param x     x of pixel
-   * @param y     y of pixel
-   * @param xd    floor of x
-   * @param xu    roof of x
-   * @param yd    floor of y
-   * @param yu    roof of y
-   * @param k     channel number
-   * @param image image
-   * @return the result value
+   * @return the source name
    */
-  private int calculate(double x, double y, double xd, double xu, double yd, double yu,
-                        int k, int[][] image) {
-    double a = image[(int) xd][(int) yd * 3 + k];
-    double b = image[(int) xu][(int) yd * 3 + k];
-    double c = image[(int) xd][(int) yu * 3 + k];
-    double d = image[(int) xu][(int) yu * 3 + k];
-    double m = b * (x - xd) + a * (xu - x);
-    double n = d * (x - xd) + c * (xu - x);
-    return (int) (n * (y - yd) + m * (yu - y));
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.old);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is down scale to the size, and whether it
+   * averages the covered pixels.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return (this.box ? "box downsize " : "downsize ") + this.width + " " + this.height;
   }
 }
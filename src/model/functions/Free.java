@@ -0,0 +1,61 @@
+package model.functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import model.IModel;
+
+/**
+ * Free function class that removes an image from a model once nothing reads it any more.
+ * It accepts {@link String name} of the image to remove.
+ */
+public class Free implements ModelFunctions {
+  private final String name;
+
+  /**
+   * Constructor for the Free, which only accept one parameter.
+   * if not one parameter, throw exception.
+   *
+   * @param params represent the params.
+   * @throws IllegalArgumentException when params length is not equal to 1
+   */
+  public Free(ArrayList<String> params) throws IllegalArgumentException {
+    if (params.size() != 1) {
+      throw new IllegalArgumentException("Arguments exceed demand!");
+    }
+    this.name = Objects.requireNonNull(params.get(0));
+  }
+
+  /**
+   * apply method removes the image from the model.
+   *
+   * @param model is instance of {@link IModel} that the function works on.
+   */
+  @Override
+  public void apply(IModel model) {
+    model.removeFromMap(this.name);
+  }
+
+  /**
+   * Gets the names of the images the function reads, which is none.
+   *
+   * @return no names
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Gets the name of the image the function removes, which counts as a write so that it runs
+   * after every function reading the image.
+   *
+   * @return the image name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.name);
+  }
+}
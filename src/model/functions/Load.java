@@ -2,9 +2,12 @@ package model.functions;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.PixelBuffer;
 import utils.ImageUtil;
 
 /**
@@ -49,7 +52,27 @@ public class Load implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] input = ImageUtil.readImage(this.filePath);
+    PixelBuffer input = ImageUtil.readBuffer(this.filePath);
     model.addToMap(this.name, input);
   }
+
+  /**
+   * Gets the file the function reads.
+   *
+   * @return the file path
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.filePath);
+  }
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the image name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.name);
+  }
 }
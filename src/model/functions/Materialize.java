@@ -0,0 +1,62 @@
+package model.functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import model.IModel;
+
+/**
+ * Materialize function class that makes sure an image is computed and stored in the model,
+ * even if nothing else reads it.
+ * It accepts {@link String name} of the image.
+ */
+public class Materialize implements ModelFunctions {
+  private final String name;
+
+  /**
+   * Constructor for the Materialize, which only accept one parameter.
+   * if not one parameter, throw exception.
+   *
+   * @param params represent the params.
+   * @throws IllegalArgumentException when params length is not equal to 1
+   */
+  public Materialize(ArrayList<String> params) throws IllegalArgumentException {
+    if (params.size() != 1) {
+      throw new IllegalArgumentException("Arguments exceed demand!");
+    }
+    this.name = Objects.requireNonNull(params.get(0));
+  }
+
+  /**
+   * apply method reads the image from the model, so that an image held back is computed.
+   *
+   * @param model is instance of {@link IModel} that the function works on.
+   * @throws NullPointerException if there is no image with the name
+   */
+  @Override
+  public void apply(IModel model) throws NullPointerException {
+    model.getBufferFromMap(this.name);
+  }
+
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the image name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.name);
+  }
+
+  /**
+   * Gets the names of the images the function writes, which is none.
+   *
+   * @return no names
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.emptyList();
+  }
+}
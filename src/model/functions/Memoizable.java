@@ -0,0 +1,17 @@
+package model.functions;
+
+/**
+ * The interface for functions whose image only depends on the images they read and on their
+ * parameters, so the image can be kept in a {@link model.ResultCache} and read back the next
+ * time the same function runs on the same images. Such a function writes one image.
+ */
+public interface Memoizable extends ModelFunctions {
+  /**
+   * Gets the description of the operation and its parameters, without the names of the
+   * images. Two functions with the same description write the same image when they read
+   * the same images.
+   *
+   * @return the description
+   */
+  String getOperation();
+}
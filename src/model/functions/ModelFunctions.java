@@ -1,9 +1,13 @@
 package model.functions;
 
+import java.util.List;
+
 import model.IModel;
 
 /**
  * The interface that contains all function objects including brighten, greyscale, flip, etc.
+ * Every function tells the names of the images and files it reads and writes, so that
+ * functions that do not depend on each other can run at the same time.
  */
 public interface ModelFunctions {
   /**
@@ -12,4 +16,18 @@ public interface ModelFunctions {
    * @param model that the function will be applied on
    */
   public void apply(IModel model);
+
+  /**
+   * Gets the names of the images, and the paths of the files, the function reads.
+   *
+   * @return the names read
+   */
+  List<String> getReads();
+
+  /**
+   * Gets the names of the images, and the paths of the files, the function writes.
+   *
+   * @return the names written
+   */
+  List<String> getWrites();
 }
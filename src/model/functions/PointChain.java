@@ -0,0 +1,263 @@
+package model.functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import model.IModel;
+import model.PixelBuffer;
+import model.TileScheduler;
+import model.functions.colorTransformation.ColorMatrix;
+
+/**
+ * Class PointChain runs a chain of unmasked {@link PointFunction}, where every function reads
+ * the image the one before it wrote, as one pass over the image that writes only the image
+ * of the last function.
+ * Functions that map every channel on its own are chained into one lookup table, and
+ * everything after a function whose result is grey only depends on the grey value, so it is
+ * precomputed into one table of 256 pixels. Neighbouring {@link ColorMatrix} functions are
+ * multiplied into one matrix that is clamped once, unless the chain is exact, where every
+ * pixel goes through the same steps as in the separate passes and the result is exactly
+ * the same. Otherwise a chain with neighbouring matrices does not give the image of the
+ * separate passes, as described in {@link ColorMatrix}, so the same commands run one at a
+ * time, like typed commands do, can give another image; lookup tables and the other
+ * functions give exactly the image of the separate passes.
+ * The steps run one after another over blocks of {@link #BLOCK} pixels, so that every step
+ * runs its own tight loop while the block stays in the L1 cache.
+ */
+public class PointChain implements Memoizable {
+  /**
+   * The number of pixels every step runs over at a time.
+   */
+  public static final int BLOCK = 2048;
+
+  private final List<PointFunction> functions;
+  private final boolean exact;
+  private final Step[] steps;
+
+  /**
+   * Constructor for the chain of point functions.
+   *
+   * @param functions the functions in the order they run
+   * @param exact     true to give exactly the images of the separate passes
+   * @throws IllegalArgumentException if there is no function, a function is masked, or a
+   *                                  function does not read the image the one before wrote
+   */
+  public PointChain(List<PointFunction> functions, boolean exact)
+          throws IllegalArgumentException {
+    Objects.requireNonNull(functions);
+    if (functions.isEmpty()) {
+      throw new IllegalArgumentException("chain needs at least one function");
+    }
+    for (int i = 0; i < functions.size(); i++) {
+      if (functions.get(i).isMasked() || i > 0 && !functions.get(i).getSource()
+              .equals(functions.get(i - 1).getDestination())) {
+        throw new IllegalArgumentException("functions cannot be chained");
+      }
+    }
+    this.functions = new ArrayList<>(functions);
+    this.exact = exact;
+    this.steps = compile(this.functions, exact);
+  }
+
+  /**
+   * Gets the name of the image the first function reads.
+   *
+   * @return the source name
+   */
+  public String getSource() {
+    return this.functions.get(0).getSource();
+  }
+
+  /**
+   * Gets the name of the image the last function writes.
+   *
+   * @return the destination name
+   */
+  public String getDestination() {
+    return this.functions.get(this.functions.size() - 1).getDestination();
+  }
+
+  /**
+   * Gets the name of the image the first function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.getSource());
+  }
+
+  /**
+   * Gets the name of the image the last function writes, which is the only one stored.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.getDestination());
+  }
+
+  /**
+   * apply method runs the chain on the source image and stores only the last image.
+   *
+   * @param model is instance of {@link IModel} that the function will apply on
+   */
+  @Override
+  public void apply(IModel model) {
+    PixelBuffer image = model.getBufferFromMap(this.getSource());
+    model.addToMap(this.getDestination(), this.apply(image, model.getScheduler()));
+  }
+
+  /**
+   * Runs the chain on an image.
+   *
+   * @param image     the image read from
+   * @param scheduler the scheduler the rows run on
+   * @return the image the last function would write
+   */
+  public PixelBuffer apply(PixelBuffer image, TileScheduler scheduler) {
+    int width = image.getWidth();
+    int[] source = image.getPixels();
+    PixelBuffer result = new PixelBuffer(width, image.getHeight(), image.getMaxValue());
+    int[] pixels = result.getWritablePixels();
+    Step[] steps = this.steps;
+    scheduler.forEachTile(width, image.getHeight(), (from, to) -> {
+      for (int start = from * width; start < to * width; start += BLOCK) {
+        int end = Math.min(to * width, start + BLOCK);
+        steps[0].apply(source, pixels, start, end);
+        for (int k = 1; k < steps.length; k++) {
+          steps[k].apply(pixels, pixels, start, end);
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Compiles the functions into the steps every pixel goes through. Neighbouring lookup
+   * tables are chained into one, and so are neighbouring color matrices unless the chain is
+   * exact. Everything after the last grey step becomes one table indexed by the grey value.
+   */
+  private static Step[] compile(List<PointFunction> functions, boolean exact) {
+    List<Unit> units = new ArrayList<>();
+    for (PointFunction function : functions) {
+      Unit last = units.isEmpty() ? null : units.get(units.size() - 1);
+      ColorMatrix matrix = exact ? null : function.getMatrix();
+      PointTable table = function.getTable();
+      if (matrix != null) {
+        units.add(last != null && last.matrix != null
+                ? new Unit(units.remove(units.size() - 1).matrix.then(matrix))
+                : new Unit(matrix));
+      } else if (table != null) {
+        units.add(last != null && last.table != null
+                ? new Unit(units.remove(units.size() - 1).table.then(table))
+                : new Unit(table));
+      } else {
+        units.add(new Unit(function));
+      }
+    }
+
+    int grey = -1;
+    for (int i = 0; i < units.size() - 1; i++) {
+      if (units.get(i).isGrey()) {
+        grey = i;
+      }
+    }
+    List<Step> steps = new ArrayList<>();
+    for (int i = 0; i <= (grey < 0 ? units.size() - 1 : grey); i++) {
+      steps.add(units.get(i).toStep());
+    }
+    if (grey >= 0) {
+      int[] tail = new int[256];
+      for (int v = 0; v < 256; v++) {
+        int pixel = PixelBuffer.pack(v, v, v);
+        for (int i = grey + 1; i < units.size(); i++) {
+          pixel = units.get(i).map(pixel);
+        }
+        tail[v] = pixel;
+      }
+      steps.add((source, destination, from, to) -> {
+        for (int i = from; i < to; i++) {
+          destination[i] = tail[(source[i] >> 16) & 0xFF];
+        }
+      });
+    }
+    return steps.toArray(new Step[0]);
+  }
+
+  /**
+   * One step of the compiled chain, which is a lookup table, a color matrix or a function.
+   */
+  private static final class Unit {
+    private final PointTable table;
+    private final ColorMatrix matrix;
+    private final PointFunction function;
+
+    private Unit(PointTable table) {
+      this(table, null, null);
+    }
+
+    private Unit(ColorMatrix matrix) {
+      this(null, matrix, null);
+    }
+
+    private Unit(PointFunction function) {
+      this(null, null, function);
+    }
+
+    private Unit(PointTable table, ColorMatrix matrix, PointFunction function) {
+      this.table = table;
+      this.matrix = matrix;
+      this.function = function;
+    }
+
+    private boolean isGrey() {
+      return this.matrix != null ? this.matrix.isGrey()
+              : this.function != null && this.function.isGrey();
+    }
+
+    private int map(int pixel) {
+      if (this.table != null) {
+        return this.table.apply(pixel);
+      } else if (this.matrix != null) {
+        return this.matrix.apply(pixel);
+      } else {
+        return this.function.applyToPixel(pixel);
+      }
+    }
+
+    private Step toStep() {
+      if (this.table != null) {
+        return this.table::apply;
+      } else if (this.matrix != null) {
+        return this.matrix::apply;
+      } else {
+        return this.function::applyToPixels;
+      }
+    }
+  }
+
+  /**
+   * A step of the chain run over a range of packed pixels.
+   */
+  private interface Step {
+    void apply(int[] source, int[] destination, int from, int to);
+  }
+
+  /**
+   * Gets the description of the operation, which is every function of the chain in order,
+   * and whether the chain is exact.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    StringBuilder operation = new StringBuilder(this.exact ? "exact chain" : "chain");
+    for (PointFunction function : this.functions) {
+      operation.append(" | ").append(function.getOperation());
+    }
+    return operation.toString();
+  }
+}
@@ -0,0 +1,74 @@
+package model.functions;
+
+import model.functions.colorTransformation.ColorMatrix;
+
+/**
+ * The interface for function objects that change every pixel of an image on its own, from
+ * the value of that pixel only, like brighten, greyscale and color transformation.
+ * Several unmasked point functions in a row can be run as one pass by {@link PointChain}.
+ * Functions that are a {@link ColorMatrix} map pixels with the matrix unless the model is in
+ * the exact mode, where they map them the way {@link #applyToPixel(int)} does.
+ */
+public interface PointFunction extends Memoizable {
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the source name
+   */
+  String getSource();
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the destination name
+   */
+  String getDestination();
+
+  /**
+   * Checks whether the function only changes the pixels selected by a mask image.
+   *
+   * @return true if a mask is given
+   */
+  boolean isMasked();
+
+  /**
+   * Maps one packed pixel exactly the way the unmasked function maps it in the exact mode.
+   *
+   * @param pixel the packed pixel
+   * @return the mapped pixel
+   */
+  int applyToPixel(int pixel);
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  void applyToPixels(int[] source, int[] destination, int from, int to);
+
+  /**
+   * Gets the lookup table of the function if every channel is mapped on its own.
+   *
+   * @return the table, or null if the channels are mixed
+   */
+  PointTable getTable();
+
+  /**
+   * Gets the color matrix of the function if it is one, which is applied instead of
+   * {@link #applyToPixel(int)} unless the model is in the exact mode.
+   *
+   * @return the matrix, or null if the function is not a color matrix
+   */
+  ColorMatrix getMatrix();
+
+  /**
+   * Checks whether every pixel the function gives has the same three channels.
+   *
+   * @return true if the result is always grey
+   */
+  boolean isGrey();
+}
@@ -0,0 +1,125 @@
+package model.functions;
+
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+import model.PixelBuffer;
+
+/**
+ * Class PointTable represents a point operation that maps every channel of a pixel on its
+ * own, compiled into one 256 entry lookup table per channel.
+ * Applying the table only loads from the tables, and chaining several tables with
+ * {@link #then(PointTable)} gives one table that costs the same as a single operation.
+ */
+public final class PointTable {
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+
+  private PointTable(int[] red, int[] green, int[] blue) {
+    this.red = red;
+    this.green = green;
+    this.blue = blue;
+  }
+
+  /**
+   * Compiles an operation that maps every channel the same way into a table. The results
+   * are clamped to 0 - 255.
+   *
+   * @param operation the operation on a channel value
+   * @return the table
+   */
+  public static PointTable of(IntUnaryOperator operation) {
+    Objects.requireNonNull(operation);
+    int[] table = new int[256];
+    for (int v = 0; v < 256; v++) {
+      table[v] = Math.max(0, Math.min(255, operation.applyAsInt(v)));
+    }
+    return new PointTable(table, table, table);
+  }
+
+  /**
+   * Compiles an operation that maps every channel in its own way into a table. The results
+   * are clamped to 0 - 255.
+   *
+   * @param red   the operation on red channel
+   * @param green the operation on green channel
+   * @param blue  the operation on blue channel
+   * @return the table
+   */
+  public static PointTable of(IntUnaryOperator red, IntUnaryOperator green,
+                              IntUnaryOperator blue) {
+    PointTable r = of(red);
+    PointTable g = of(green);
+    PointTable b = of(blue);
+    return new PointTable(r.red, g.green, b.blue);
+  }
+
+  /**
+   * Chains this table with the next one, so that the next operation is applied on the
+   * result of this one.
+   *
+   * @param next the table applied after this one
+   * @return the chained table
+   */
+  public PointTable then(PointTable next) {
+    int[] r = new int[256];
+    int[] g = new int[256];
+    int[] b = new int[256];
+    for (int v = 0; v < 256; v++) {
+      r[v] = next.red[this.red[v]];
+      g[v] = next.green[this.green[v]];
+      b[v] = next.blue[this.blue[v]];
+    }
+    return new PointTable(r, g, b);
+  }
+
+  /**
+   * Maps one channel value.
+   *
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @param value   the channel value in 0 - 255
+   * @return the mapped value
+   */
+  public int channel(int channel, int value) {
+    switch (channel) {
+      case 0:
+        return this.red[value];
+      case 1:
+        return this.green[value];
+      default:
+        return this.blue[value];
+    }
+  }
+
+  /**
+   * Maps a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the mapped pixel
+   */
+  public int apply(int pixel) {
+    return PixelBuffer.pack(this.red[PixelBuffer.red(pixel)],
+            this.green[PixelBuffer.green(pixel)], this.blue[PixelBuffer.blue(pixel)]);
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  public void apply(int[] source, int[] destination, int from, int to) {
+    int[] r = this.red;
+    int[] g = this.green;
+    int[] b = this.blue;
+    for (int i = from; i < to; i++) {
+      int pixel = source[i];
+      destination[i] = (r[(pixel >> 16) & 0xFF] << 16) | (g[(pixel >> 8) & 0xFF] << 8)
+              | b[pixel & 0xFF];
+    }
+  }
+}
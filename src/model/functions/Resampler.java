@@ -0,0 +1,362 @@
+package model.functions;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import model.PixelBuffer;
+import model.TileScheduler;
+
+/**
+ * Class Resampler scales an image to a new size in integer arithmetic.
+ * For every column and every row of the result, the source indices it reads and their
+ * weights are computed once, as fixed point integers with {@link #BITS} fraction bits that
+ * add up to exactly one. Every source row needed is first resampled horizontally into a line
+ * of 8.8 fixed point channels, and the lines are then weighted vertically, so all three
+ * channels of a pixel are handled by each fetch.
+ * The rows of the result are split into bands by the {@link TileScheduler}. Every band only
+ * keeps a few lines, so the work needs no image sized buffer besides the result.
+ */
+public class Resampler {
+  /**
+   * The number of fraction bits of the weights.
+   */
+  public static final int BITS = 14;
+
+  private static final int LINE_SHIFT = BITS - 8;
+  private static final int PIXEL_SHIFT = BITS + 8;
+
+  private final int sourceWidth;
+  private final int sourceHeight;
+  private final Axis columns;
+  private final Axis rows;
+
+  /**
+   * The ways a result pixel is computed from the source pixels along one axis.
+   */
+  public enum Mode {
+    /**
+     * The source pixel nearest to the center of the result pixel.
+     */
+    NEAREST,
+    /**
+     * Linear interpolation between the two nearest source pixels.
+     */
+    BILINEAR,
+    /**
+     * Cubic interpolation between the four nearest source pixels.
+     */
+    BICUBIC,
+    /**
+     * The average of the source pixels the result pixel covers, weighted by the covered area.
+     */
+    BOX
+  }
+
+  /**
+   * Constructor for the resampler, which uses the same mode on both axes.
+   *
+   * @param sourceWidth  width of the source image
+   * @param sourceHeight height of the source image
+   * @param width        width of the result
+   * @param height       height of the result
+   * @param mode         the mode of both axes
+   * @throws IllegalArgumentException if a size is negative, or the source is empty
+   */
+  public Resampler(int sourceWidth, int sourceHeight, int width, int height, Mode mode)
+          throws IllegalArgumentException {
+    this(sourceWidth, sourceHeight, width, height, mode, mode);
+  }
+
+  /**
+   * Constructor for the resampler.
+   *
+   * @param sourceWidth  width of the source image
+   * @param sourceHeight height of the source image
+   * @param width        width of the result
+   * @param height       height of the result
+   * @param columnMode   the mode along a row
+   * @param rowMode      the mode along a column
+   * @throws IllegalArgumentException if a size is negative, or the source is empty
+   */
+  public Resampler(int sourceWidth, int sourceHeight, int width, int height, Mode columnMode,
+                   Mode rowMode) throws IllegalArgumentException {
+    if (sourceWidth <= 0 || sourceHeight <= 0 || width < 0 || height < 0) {
+      throw new IllegalArgumentException("sizes of resampling must be positive");
+    }
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.columns = Axis.of(Objects.requireNonNull(columnMode), sourceWidth, width);
+    this.rows = Axis.of(Objects.requireNonNull(rowMode), sourceHeight, height);
+  }
+
+  /**
+   * Gets the width of the result.
+   *
+   * @return width
+   */
+  public int getWidth() {
+    return this.columns.size;
+  }
+
+  /**
+   * Gets the height of the result.
+   *
+   * @return height
+   */
+  public int getHeight() {
+    return this.rows.size;
+  }
+
+  /**
+   * Resamples the source image into the destination image.
+   *
+   * @param source      the image read from
+   * @param destination the image written to
+   * @param scheduler   the scheduler the bands of rows run on
+   * @throws IllegalArgumentException if the images do not have the sizes of the resampler
+   */
+  public void apply(PixelBuffer source, PixelBuffer destination, TileScheduler scheduler)
+          throws IllegalArgumentException {
+    if (source.getWidth() != this.sourceWidth || source.getHeight() != this.sourceHeight
+            || destination.getWidth() != this.getWidth()
+            || destination.getHeight() != this.getHeight()) {
+      throw new IllegalArgumentException("images do not have the sizes of the resampler");
+    }
+    int[] from = source.getPixels();
+    int[] to = destination.getWritablePixels();
+    scheduler.forEachTile(this.getWidth(), this.getHeight(), (first, end) ->
+            this.band(from, to, first, end));
+  }
+
+  /**
+   * Reduces the image to half its width and height by averaging every 2x2 block, which is
+   * the same as the box mode. Images of even size are averaged on all three channels of a
+   * pixel at once, red and blue in one int and green in another.
+   *
+   * @param image     the image read from
+   * @param scheduler the scheduler the bands of rows run on
+   * @return the reduced image
+   */
+  public static PixelBuffer halve(PixelBuffer image, TileScheduler scheduler) {
+    int sourceWidth = image.getWidth();
+    int width = sourceWidth / 2;
+    int height = image.getHeight() / 2;
+    PixelBuffer result = new PixelBuffer(width, height, image.getMaxValue());
+    if (sourceWidth % 2 != 0 || image.getHeight() % 2 != 0) {
+      new Resampler(sourceWidth, image.getHeight(), width, height, Mode.BOX)
+              .apply(image, result, scheduler);
+      return result;
+    }
+    int[] from = image.getPixels();
+    int[] to = result.getWritablePixels();
+    scheduler.forEachTile(width, height, (first, end) -> {
+      for (int i = first; i < end; i++) {
+        int top = 2 * i * sourceWidth;
+        int bottom = top + sourceWidth;
+        for (int j = 0; j < width; j++) {
+          int a = from[top + 2 * j];
+          int b = from[top + 2 * j + 1];
+          int c = from[bottom + 2 * j];
+          int d = from[bottom + 2 * j + 1];
+          int redBlue = (a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF);
+          int green = (a & 0xFF00) + (b & 0xFF00) + (c & 0xFF00) + (d & 0xFF00);
+          to[i * width + j] = ((redBlue + 0x20002) >> 2 & 0xFF00FF)
+                  | ((green + 0x200) >> 2 & 0xFF00);
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Resamples the rows from {@link Integer first} up to {@link Integer end} of the result.
+   * The lines of the source rows are kept in a small ring, since the rows one result row
+   * reads are next to each other and move down with the result rows.
+   */
+  private void band(int[] from, int[] to, int first, int end) {
+    int width = this.getWidth();
+    int taps = this.rows.taps;
+    int ringSize = Math.min(taps, 4);
+    int[][] ring = new int[ringSize][3 * width];
+    int[] ringRows = new int[ringSize];
+    Arrays.fill(ringRows, -1);
+    int[] sum = new int[3 * width];
+
+    for (int i = first; i < end; i++) {
+      Arrays.fill(sum, 0);
+      for (int k = i * taps; k < (i + 1) * taps; k++) {
+        int weight = this.rows.weights[k];
+        if (weight == 0) {
+          continue;
+        }
+        int row = this.rows.index[k];
+        int slot = row % ringSize;
+        if (ringRows[slot] != row) {
+          this.horizontal(from, row * this.sourceWidth, ring[slot]);
+          ringRows[slot] = row;
+        }
+        int[] line = ring[slot];
+        for (int c = 0; c < 3 * width; c++) {
+          sum[c] += weight * line[c];
+        }
+      }
+      int offset = i * width;
+      for (int j = 0; j < width; j++) {
+        to[offset + j] = PixelBuffer.pack(clamp(sum[3 * j]), clamp(sum[3 * j + 1]),
+                clamp(sum[3 * j + 2]));
+      }
+    }
+  }
+
+  private void horizontal(int[] from, int offset, int[] line) {
+    int taps = this.columns.taps;
+    int[] index = this.columns.index;
+    int[] weights = this.columns.weights;
+    int half = 1 << (LINE_SHIFT - 1);
+    for (int j = 0, k = 0; j < this.columns.size; j++) {
+      int r = 0;
+      int g = 0;
+      int b = 0;
+      for (int end = k + taps; k < end; k++) {
+        int weight = weights[k];
+        int pixel = from[offset + index[k]];
+        r += weight * ((pixel >> 16) & 0xFF);
+        g += weight * ((pixel >> 8) & 0xFF);
+        b += weight * (pixel & 0xFF);
+      }
+      line[3 * j] = (r + half) >> LINE_SHIFT;
+      line[3 * j + 1] = (g + half) >> LINE_SHIFT;
+      line[3 * j + 2] = (b + half) >> LINE_SHIFT;
+    }
+  }
+
+  private static int clamp(int sum) {
+    int value = (sum + (1 << (PIXEL_SHIFT - 1))) >> PIXEL_SHIFT;
+    return Math.max(0, Math.min(255, value));
+  }
+
+  /**
+   * The source indices and weights of every result index along one axis. Every result index
+   * has the same number of taps; unused taps have weight 0.
+   */
+  private static final class Axis {
+    private final int size;
+    private final int taps;
+    private final int[] index;
+    private final int[] weights;
+
+    private Axis(int size, int taps) {
+      this.size = size;
+      this.taps = taps;
+      this.index = new int[size * taps];
+      this.weights = new int[size * taps];
+    }
+
+    private static Axis of(Mode mode, int from, int to) {
+      if (to == 0) {
+        return new Axis(0, 1);
+      }
+      switch (mode) {
+        case NEAREST:
+          return nearest(from, to);
+        case BICUBIC:
+          return bicubic(from, to);
+        case BOX:
+          return box(from, to);
+        case BILINEAR:
+        default:
+          return bilinear(from, to);
+      }
+    }
+
+    /**
+     * Takes the source pixel the center of the result pixel falls in.
+     */
+    private static Axis nearest(int from, int to) {
+      Axis axis = new Axis(to, 1);
+      double scale = (double) from / to;
+      for (int o = 0; o < to; o++) {
+        axis.index[o] = Math.min(from - 1, (int) ((o + 0.5) * scale));
+        axis.weights[o] = 1 << BITS;
+      }
+      return axis;
+    }
+
+    /**
+     * Interpolates between the two source pixels around the center of the result pixel,
+     * mapped onto the source.
+     */
+    private static Axis bilinear(int from, int to) {
+      Axis axis = new Axis(to, 2);
+      double scale = (double) from / to;
+      for (int o = 0; o < to; o++) {
+        double center = Math.max(0, (o + 0.5) * scale - 0.5);
+        int low = Math.min(from - 1, (int) center);
+        int weight = (int) Math.round((center - low) * (1 << BITS));
+        axis.index[2 * o] = low;
+        axis.index[2 * o + 1] = Math.min(from - 1, low + 1);
+        axis.weights[2 * o] = (1 << BITS) - weight;
+        axis.weights[2 * o + 1] = weight;
+      }
+      return axis;
+    }
+
+    /**
+     * Interpolates between the four source pixels around the center of the result pixel with
+     * the Catmull-Rom spline. The outer weights are negative, so the result may overshoot and
+     * is clamped. The weights are rounded from their running sum, so they add up to exactly
+     * one.
+     */
+    private static Axis bicubic(int from, int to) {
+      Axis axis = new Axis(to, 4);
+      double scale = (double) from / to;
+      for (int o = 0; o < to; o++) {
+        double center = (o + 0.5) * scale - 0.5;
+        int low = (int) Math.floor(center);
+        double t = center - low;
+        double[] spline = {
+            ((-0.5 * t + 1) * t - 0.5) * t,
+            (1.5 * t - 2.5) * t * t + 1,
+            ((-1.5 * t + 2) * t + 0.5) * t,
+            (0.5 * t - 0.5) * t * t};
+        double covered = 0;
+        int rounded = 0;
+        for (int k = 0; k < 4; k++) {
+          covered += spline[k];
+          int next = k == 3 ? 1 << BITS : (int) Math.round(covered * (1 << BITS));
+          axis.index[4 * o + k] = Math.max(0, Math.min(from - 1, low - 1 + k));
+          axis.weights[4 * o + k] = next - rounded;
+          rounded = next;
+        }
+      }
+      return axis;
+    }
+
+    /**
+     * Weighs every source pixel by how much of it the result pixel covers. The weights are
+     * rounded from their running sum, so they always add up to exactly one.
+     */
+    private static Axis box(int from, int to) {
+      double scale = (double) from / to;
+      Axis axis = new Axis(to, (int) Math.ceil(scale) + 1);
+      for (int o = 0; o < to; o++) {
+        double low = o * scale;
+        double high = Math.min(from, (o + 1) * scale);
+        int first = Math.min(from - 1, (int) low);
+        double covered = 0;
+        int rounded = 0;
+        for (int t = 0; t < axis.taps; t++) {
+          int source = Math.min(from - 1, first + t);
+          double overlap = Math.max(0, Math.min(high, source + 1) - Math.max(low, source));
+          covered += overlap;
+          int next = t == axis.taps - 1 ? 1 << BITS
+                  : (int) Math.round(Math.min(1, covered / (high - low)) * (1 << BITS));
+          axis.index[o * axis.taps + t] = source;
+          axis.weights[o * axis.taps + t] = next - rounded;
+          rounded = next;
+        }
+      }
+      return axis;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package model.functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import model.IModel;
+import model.PixelBuffer;
+
+/**
+ * The resize function.
+ * It accepts {@link Integer width}, {@link Integer height}, a {@link Resampler.Mode mode},
+ * {@link String old} and {@link String dest} to scale the given image up or down to the
+ * given size. The image is scaled by a {@link Resampler} with the mode on both axes, one
+ * band of rows at a time, so only the source and the result image are ever held. It starts
+ * from the smallest pyramid level of the image that is not smaller than the given size.
+ */
+public class Resize implements Memoizable {
+  private final String old;
+  private final String dest;
+  private final int width;
+  private final int height;
+  private final Resampler.Mode mode;
+
+  /**
+   * Constructor for the Resize function, which only accept two parameters.
+   * if not two parameters, throw exception.
+   *
+   * @param width  represent the width of aimed size.
+   * @param height represent the height of aimed size.
+   * @param mode   represent the way pixels are interpolated.
+   * @param params represent the params.
+   * @throws IllegalArgumentException when params length is not equal to 2, or a size is
+   *                                  negative
+   */
+  public Resize(int width, int height, Resampler.Mode mode, ArrayList<String> params)
+          throws IllegalArgumentException {
+    if (params.size() != 2) {
+      throw new IllegalArgumentException("Arguments exceed demand!");
+    }
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("Given size is negative");
+    }
+    this.width = width;
+    this.height = height;
+    this.mode = Objects.requireNonNull(mode);
+    this.old = Objects.requireNonNull(params.get(0));
+    this.dest = Objects.requireNonNull(params.get(1));
+  }
+
+  /**
+   * apply method provide functionality to do resize operation.
+   *
+   * @param model is instance of {@link IModel} that the function will apply on
+   */
+  @Override
+  public void apply(IModel model) {
+    PixelBuffer image = model.getLevelFromMap(this.old, this.width, this.height);
+    Resampler resampler = new Resampler(image.getWidth(), image.getHeight(), this.width,
+            this.height, this.mode);
+    PixelBuffer result = new PixelBuffer(this.width, this.height, image.getMaxValue());
+    resampler.apply(image, result, model.getScheduler());
+    model.addToMap(this.dest, result);
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.old);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is resize to the size in the mode.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return "resize " + this.width + " " + this.height + " " + this.mode;
+  }
+}
@@ -1,19 +1,25 @@
 package model.functions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 import model.IModel;
+import model.PixelBuffer;
 import utils.ImageUtil;
 
 /**
  * Save function class that saves a model to a specific destination.
  * It accepts {@link String filePath} and {@link String name}
- * to execute save operation with given image.
+ * to execute save operation with given image. The format follows the extension of the file,
+ * and a binary save writes a binary (P6) ppm file.
  */
 public class Save implements ModelFunctions {
   private final String filePath;
   private final String name;
+  private final boolean binary;
 
   /**
    * Constructor for the Save, which only accept two parameters.
@@ -23,11 +29,28 @@ public class Save implements ModelFunctions {
    * @throws IllegalArgumentException when params length is not equal to 2
    */
   public Save(ArrayList<String> params) throws IllegalArgumentException{
+    this(params, false);
+  }
+
+  /**
+   * Constructor for the Save, which only accept two parameters, and whether the image is
+   * saved as a binary (P6) ppm file.
+   *
+   * @param params represent the params.
+   * @param binary true to save a binary ppm file
+   * @throws IllegalArgumentException when params length is not equal to 2, or a binary save
+   *                                  is not to a .ppm file
+   */
+  public Save(ArrayList<String> params, boolean binary) throws IllegalArgumentException {
     if (params.size() != 2){
       throw new IllegalArgumentException("Arguments exceed demand!");
     }
     this.filePath = Objects.requireNonNull(params.get(0));
     this.name = Objects.requireNonNull(params.get(1));
+    if (binary && !this.filePath.toLowerCase(Locale.ROOT).endsWith(".ppm")) {
+      throw new IllegalArgumentException("binary images can only be saved as .ppm");
+    }
+    this.binary = binary;
   }
 
   /**
@@ -37,6 +60,40 @@ public class Save implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    ImageUtil.saveImage(this.filePath, model.getFromMap(this.name));
+    this.write(model.getBufferFromMap(this.name));
+  }
+
+  /**
+   * Writes the image to the file of the function.
+   *
+   * @param image the image to save
+   * @throws IllegalArgumentException if the file cannot be written
+   */
+  public void write(PixelBuffer image) throws IllegalArgumentException {
+    if (this.binary) {
+      ImageUtil.saveBinaryPPM(this.filePath, image);
+    } else {
+      ImageUtil.saveImage(this.filePath, image);
+    }
+  }
+
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the image name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.name);
+  }
+
+  /**
+   * Gets the file the function writes.
+   *
+   * @return the file path
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.filePath);
   }
 }
@@ -0,0 +1,227 @@
+package model.functions.colorTransformation;
+
+import java.util.Objects;
+
+import model.PixelBuffer;
+
+/**
+ * Class ColorMatrix represents a 3x3 matrix that maps the channels of a pixel to new
+ * channels, where every new channel is one row of the matrix times the old channels.
+ * Matrices are composed with {@link #then(ColorMatrix)} into one matrix that is applied with
+ * a single clamp, so a chain of color transformations costs the same as one. The composed
+ * matrix neither clamps nor truncates the channels in between, so its result is not the
+ * result of applying the matrices one after another: it can differ by one where nothing
+ * saturates, and by much more where the first matrix saturates a channel, as sepia does on
+ * bright pixels. Sepia and then luma gives 255 on white, but 253 one after another.
+ * The weights are rounded to multiples of 2^-16, and every pixel is mapped in integer
+ * arithmetic and truncated like the floating point sum. Matrices whose weights are too large
+ * for that are mapped in floating point instead.
+ */
+public final class ColorMatrix {
+  /**
+   * The sepia tone matrix.
+   */
+  public static final ColorMatrix SEPIA = of(new double[][]{
+      {0.393, 0.769, 0.189},
+      {0.349, 0.686, 0.168},
+      {0.272, 0.534, 0.131}});
+
+  /**
+   * The luma greyscale matrix.
+   */
+  public static final ColorMatrix LUMA = grey(0.2126, 0.7152, 0.0722);
+
+  private static final int SHIFT = 16;
+
+  private final double[] weights;
+  private final int[] fixed;
+
+  private ColorMatrix(double[] weights) {
+    this.weights = weights;
+    this.fixed = toFixed(weights);
+  }
+
+  /**
+   * Creates the matrix from its rows.
+   *
+   * @param matrix the 3x3 matrix
+   * @return the color matrix
+   * @throws IllegalArgumentException if the matrix is not 3x3
+   */
+  public static ColorMatrix of(double[][] matrix) throws IllegalArgumentException {
+    Objects.requireNonNull(matrix);
+    if (matrix.length != 3) {
+      throw new IllegalArgumentException("color matrix must be 3x3");
+    }
+    double[] weights = new double[9];
+    for (int i = 0; i < 3; i++) {
+      if (matrix[i].length != 3) {
+        throw new IllegalArgumentException("color matrix must be 3x3");
+      }
+      System.arraycopy(matrix[i], 0, weights, 3 * i, 3);
+    }
+    return new ColorMatrix(weights);
+  }
+
+  /**
+   * Creates the matrix that sets all three channels to the same weighted sum of the channels.
+   *
+   * @param red   the weight of red channel
+   * @param green the weight of green channel
+   * @param blue  the weight of blue channel
+   * @return the color matrix
+   */
+  public static ColorMatrix grey(double red, double green, double blue) {
+    return new ColorMatrix(new double[]{red, green, blue, red, green, blue, red, green, blue});
+  }
+
+  /**
+   * Composes this matrix with the next one, so that the next matrix is applied on the result
+   * of this one without clamping in between.
+   *
+   * @param next the matrix applied after this one
+   * @return the product of the next matrix and this one
+   */
+  public ColorMatrix then(ColorMatrix next) {
+    double[] product = new double[9];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        double sum = 0;
+        for (int k = 0; k < 3; k++) {
+          sum += next.weights[3 * i + k] * this.weights[3 * k + j];
+        }
+        product[3 * i + j] = sum;
+      }
+    }
+    return new ColorMatrix(product);
+  }
+
+  /**
+   * Gets the rows of the matrix.
+   *
+   * @return a copy of the 3x3 matrix
+   */
+  public double[][] toArray() {
+    double[][] matrix = new double[3][3];
+    for (int i = 0; i < 3; i++) {
+      System.arraycopy(this.weights, 3 * i, matrix[i], 0, 3);
+    }
+    return matrix;
+  }
+
+  /**
+   * Checks whether every pixel the matrix gives is grey, which is when the three rows of the
+   * matrix are the same.
+   *
+   * @return true if the rows are the same
+   */
+  public boolean isGrey() {
+    for (int j = 0; j < 3; j++) {
+      if (this.weights[j] != this.weights[3 + j] || this.weights[j] != this.weights[6 + j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Maps a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the mapped pixel
+   */
+  public int apply(int pixel) {
+    int r = PixelBuffer.red(pixel);
+    int g = PixelBuffer.green(pixel);
+    int b = PixelBuffer.blue(pixel);
+    int[] f = this.fixed;
+    if (f == null) {
+      double[] w = this.weights;
+      return PixelBuffer.pack(clamp(w[0] * r + w[1] * g + w[2] * b),
+              clamp(w[3] * r + w[4] * g + w[5] * b), clamp(w[6] * r + w[7] * g + w[8] * b));
+    }
+    return PixelBuffer.pack(clampFixed(f[0] * r + f[1] * g + f[2] * b),
+            clampFixed(f[3] * r + f[4] * g + f[5] * b),
+            clampFixed(f[6] * r + f[7] * g + f[8] * b));
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  public void apply(int[] source, int[] destination, int from, int to) {
+    int[] f = this.fixed;
+    if (f == null) {
+      for (int i = from; i < to; i++) {
+        destination[i] = this.apply(source[i]);
+      }
+      return;
+    }
+    int f0 = f[0];
+    int f1 = f[1];
+    int f2 = f[2];
+    int f3 = f[3];
+    int f4 = f[4];
+    int f5 = f[5];
+    int f6 = f[6];
+    int f7 = f[7];
+    int f8 = f[8];
+    for (int i = from; i < to; i++) {
+      int pixel = source[i];
+      int r = (pixel >> 16) & 0xFF;
+      int g = (pixel >> 8) & 0xFF;
+      int b = pixel & 0xFF;
+      destination[i] = (clampFixed(f0 * r + f1 * g + f2 * b) << 16)
+              | (clampFixed(f3 * r + f4 * g + f5 * b) << 8)
+              | clampFixed(f6 * r + f7 * g + f8 * b);
+    }
+  }
+
+  /**
+   * Rounds the weights to integers scaled by 2^16. The sum of a row times 8 bit channels
+   * fits in an int as long as the absolute weights of the row add up to less than 128.
+   *
+   * @return the scaled weights, or null if a row is too large
+   */
+  private static int[] toFixed(double[] weights) {
+    int[] result = new int[9];
+    for (int i = 0; i < 3; i++) {
+      double size = 0;
+      for (int j = 0; j < 3; j++) {
+        size += Math.abs(weights[3 * i + j]);
+      }
+      if (!(size < 128)) {
+        return null;
+      }
+      for (int j = 0; j < 3; j++) {
+        result[3 * i + j] = (int) Math.round(weights[3 * i + j] * (1 << SHIFT));
+      }
+    }
+    return result;
+  }
+
+  private static int clampFixed(int sum) {
+    if (sum >= 256 << SHIFT) {
+      return 255;
+    } else if (sum < 0) {
+      return 0;
+    } else {
+      return sum >> SHIFT;
+    }
+  }
+
+  private static int clamp(double sum) {
+    if (sum > 255) {
+      return 255;
+    } else if (sum < 0) {
+      return 0;
+    } else {
+      return (int) sum;
+    }
+  }
+}
@@ -1,24 +1,32 @@
 package model.functions.colorTransformation;
 
-import java.awt.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
 import model.functions.ModelFunctions;
+import model.functions.PointFunction;
+import model.functions.PointTable;
 import utils.Util;
 
 /**
  * Class ColorTransformation represent a Pixel processor, which
  * uses a given matrix to transform every pixel's RGB.
+ * The matrix is applied in integer arithmetic by {@link ColorMatrix}, or, in the exact mode
+ * of the model, in floating point from tables of the weighted channel values.
  * It accepts {@link String old}, {@link String dest} and matrix.
- * It implements {@link ModelFunctions}.
+ * It implements {@link ModelFunctions} as a {@link PointFunction}.
  */
-public class ColorTransformation implements ModelFunctions {
+public class ColorTransformation implements PointFunction {
   private final String old;
   private final String dest;
-  private final double[][] matrix;
+  private final double[][] weighted;
   private final String mask;
+  private final ColorMatrix matrix;
 
   /**
    * Constructor for color transformation function, which accepts
@@ -41,10 +49,30 @@ public class ColorTransformation implements ModelFunctions {
    * @param matrix represents matrix that will be applied on each pixel
    */
   public ColorTransformation(String old, String dest, String mask, double[][] matrix) {
+    this(old, dest, mask, ColorMatrix.of(matrix));
+  }
+
+  /**
+   * Constructor for color transformation function, which accepts
+   * {@link String old}, {@link String dest}, {@link String mask} and {@link ColorMatrix}.
+   *
+   * @param old    is instance of {@link String} representing old image name
+   * @param dest   is instance of {@link String} representing new image name
+   * @param mask   is instance of {@link String} representing mask image name, or "" for none
+   * @param matrix represents matrix that will be applied on each pixel
+   */
+  public ColorTransformation(String old, String dest, String mask, ColorMatrix matrix) {
     this.old = Objects.requireNonNull(old);
     this.dest = Objects.requireNonNull(dest);
     this.mask = Objects.requireNonNull(mask);
-    this.matrix = matrix;
+    this.matrix = Objects.requireNonNull(matrix);
+    double[][] rows = matrix.toArray();
+    this.weighted = new double[9][256];
+    for (int k = 0; k < 9; k++) {
+      for (int v = 0; v < 256; v++) {
+        this.weighted[k][v] = v * rows[k / 3][k % 3];
+      }
+    }
   }
 
   /**
@@ -54,54 +82,143 @@ public class ColorTransformation implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
-    int width = image[0][0];
-    int height = image[0][1];
-    int[][] result = model.getFromMap(this.old);
+    PixelBuffer image = model.getBufferFromMap(this.old);
+    int[] source = image.getPixels();
+    boolean exact = model.isExact();
 
     if (mask.equals("")) {
-      for (int i = 1; i < height + 1; i++) {
-        for (int j = 0; j < width; j++) {
-          result[i][3 * j] = this.calculateMatrix(image[i][3 * j], image[i][3 * j + 1],
-                  image[i][3 * j + 2], this.matrix, 0);
-          result[i][3 * j + 1] = this.calculateMatrix(image[i][3 * j], image[i][3 * j + 1],
-                  image[i][3 * j + 2], this.matrix, 1);
-          result[i][3 * j + 2] = this.calculateMatrix(image[i][3 * j], image[i][3 * j + 1],
-                  image[i][3 * j + 2], this.matrix, 2);
+      int width = image.getWidth();
+      PixelBuffer result = new PixelBuffer(width, image.getHeight(), image.getMaxValue());
+      int[] pixels = result.getWritablePixels();
+      model.getScheduler().forEachTile(width, image.getHeight(), (from, to) -> {
+        if (exact) {
+          this.applyToPixels(source, pixels, from * width, to * width);
+        } else {
+          this.matrix.apply(source, pixels, from * width, to * width);
         }
-      }
+      });
+      model.addToMap(dest, result);
     } else {
-      for (int i = 0; i < height + 1; i++) {
-        for (int j = 0; j < width; j++) {
-          result[i][j] = image[i][j];
-        }
-      }
-      int[][] maskIm = model.getFromMap(this.mask);
-      if (maskIm.length != image.length || maskIm[0].length != image[0].length) {
-        throw new IllegalStateException("mask size does not fit");
-      }
-      Util util = new Util();
-      List<Point> list = util.getPointsNeedToChange(maskIm);
-      for (Point point : list) {
-        int x = (int) point.getX();
-        int y = (int) point.getY();
-        if (y % 3 == 0) {
-          result[x][y] = this.calculateMatrix(image[x][y], image[x][y + 1],
-                  image[x][y + 2], this.matrix, 0);
-        } else if (y % 3 == 1) {
-          result[x][y] = this.calculateMatrix(image[x][y - 1], image[x][y],
-                  image[x][y + 1], this.matrix, 1);
-        } else {
-          result[x][y] = this.calculateMatrix(image[x][y - 2], image[x][y - 1],
-                  image[x][y], this.matrix, 2);
+      PixelBuffer result = image.share();
+      PixelBuffer maskIm = model.getBufferFromMap(this.mask);
+      Util.checkMaskSize(image, maskIm);
+      int width = image.getWidth();
+      int[] pixels = result.getWritablePixels();
+      Mask selected = Mask.of(maskIm);
+      selected.forEachSpan((row, from, to) -> {
+        int offset = row * width;
+        for (int s = from; s < to; s++) {
+          int pixel = source[offset + s / 3];
+          int value = exact ? this.calculateMatrix(PixelBuffer.red(pixel),
+                  PixelBuffer.green(pixel), PixelBuffer.blue(pixel), s % 3)
+                  : PixelBuffer.channel(this.matrix.apply(pixel), s % 3);
+          pixels[offset + s / 3] = PixelBuffer.withChannel(pixels[offset + s / 3], s % 3, value);
         }
-      }
+      });
+      model.addToMap(dest, result, this.old, selected);
+    }
+  }
+
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public String getSource() {
+    return this.old;
+  }
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public String getDestination() {
+    return this.dest;
+  }
+
+  /**
+   * Checks whether the function only changes the pixels selected by a mask image.
+   *
+   * @return true if a mask is given
+   */
+  @Override
+  public boolean isMasked() {
+    return !this.mask.equals("");
+  }
+
+  /**
+   * Multiplies the matrix with the channels of the pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the transformed pixel
+   */
+  @Override
+  public int applyToPixel(int pixel) {
+    int r = PixelBuffer.red(pixel);
+    int g = PixelBuffer.green(pixel);
+    int b = PixelBuffer.blue(pixel);
+    return PixelBuffer.pack(this.calculateMatrix(r, g, b, 0),
+            this.calculateMatrix(r, g, b, 1),
+            this.calculateMatrix(r, g, b, 2));
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  @Override
+  public void applyToPixels(int[] source, int[] destination, int from, int to) {
+    for (int i = from; i < to; i++) {
+      destination[i] = this.applyToPixel(source[i]);
     }
-    model.addToMap(dest, result);
   }
 
-  private int calculateMatrix(int r, int g, int b, double[][] matrix, int row) {
-    int result = (int) (r * matrix[row][0] + g * matrix[row][1] + b * matrix[row][2]);
+  /**
+   * The matrix mixes the channels, so there is no table of separate channels.
+   *
+   * @return null
+   */
+  @Override
+  public PointTable getTable() {
+    return null;
+  }
+
+  /**
+   * Gets the matrix of the transformation.
+   *
+   * @return the matrix
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return this.matrix;
+  }
+
+  /**
+   * Checks whether the result is always grey, which is when the three rows of the matrix
+   * are the same.
+   *
+   * @return true if the rows of the matrix are the same
+   */
+  @Override
+  public boolean isGrey() {
+    return this.matrix.isGrey();
+  }
+
+  /**
+   * Calculates one row of the matrix times the pixel from the precomputed weighted channel
+   * values, which are the same products the matrix would compute.
+   */
+  private int calculateMatrix(int r, int g, int b, int row) {
+    int result = (int) (this.weighted[3 * row][r] + this.weighted[3 * row + 1][g]
+            + this.weighted[3 * row + 2][b]);
     if (result > 255) {
       return 255;
     } else if (result < 0) {
@@ -111,4 +228,34 @@ public class ColorTransformation implements ModelFunctions {
     }
   }
 
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name, and the mask name if a mask is given
+   */
+  @Override
+  public List<String> getReads() {
+    return this.mask.equals("") ? Collections.singletonList(this.old)
+            : Arrays.asList(this.old, this.mask);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is the transformation by the matrix.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return "color " + Arrays.deepToString(this.matrix.toArray());
+  }
 }
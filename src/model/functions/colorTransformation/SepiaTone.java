@@ -1,20 +1,23 @@
 package model.functions.colorTransformation;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
-import model.functions.ModelFunctions;
+import model.functions.PointFunction;
+import model.functions.PointTable;
 
 /**
  * Sepia tone function class that uses ColorTransformation to
  * change an image to a certain style.
  * to execute a SepiaTone style on given image.
  */
-public class SepiaTone implements ModelFunctions {
+public class SepiaTone implements PointFunction {
   private final String old;
   private final String mask;
   private final String dest;
+  private final ColorTransformation transformation;
 //
 //  /**
 //   * Constructor for SepiaTone.
@@ -53,6 +56,8 @@ public class SepiaTone implements ModelFunctions {
       this.mask = Objects.requireNonNull(params.get(1));
       this.dest = Objects.requireNonNull(params.get(2));
     }
+    this.transformation = new ColorTransformation(this.old, this.dest, this.mask,
+            ColorMatrix.SEPIA);
   }
 
   /**
@@ -62,21 +67,121 @@ public class SepiaTone implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    double[][] matrix = new double[3][3];
-    matrix[0][0] = 0.393;
-    matrix[0][1] = 0.769;
-    matrix[0][2] = 0.189;
-    matrix[1][0] = 0.349;
-    matrix[1][1] = 0.686;
-    matrix[1][2] = 0.168;
-    matrix[2][0] = 0.272;
-    matrix[2][1] = 0.534;
-    matrix[2][2] = 0.131;
-    if (this.dest.equals("")) {
-      new ColorTransformation(this.old, this.dest, matrix).apply(model);
-    } else {
-      new ColorTransformation(this.old, this.dest, this.mask, matrix).apply(model);
-    }
+    this.transformation.apply(model);
+  }
+
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public String getSource() {
+    return this.old;
+  }
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public String getDestination() {
+    return this.dest;
+  }
+
+  /**
+   * Checks whether the function only changes the pixels selected by a mask image.
+   *
+   * @return true if a mask is given
+   */
+  @Override
+  public boolean isMasked() {
+    return this.transformation.isMasked();
+  }
 
+  /**
+   * Maps one pixel with the matrix.
+   *
+   * @param pixel the packed pixel
+   * @return the mapped pixel
+   */
+  @Override
+  public int applyToPixel(int pixel) {
+    return this.transformation.applyToPixel(pixel);
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  @Override
+  public void applyToPixels(int[] source, int[] destination, int from, int to) {
+    this.transformation.applyToPixels(source, destination, from, to);
+  }
+
+  /**
+   * The matrix mixes the channels, so there is no table of separate channels.
+   *
+   * @return null
+   */
+  @Override
+  public PointTable getTable() {
+    return null;
+  }
+
+  /**
+   * Gets the matrix of the transformation.
+   *
+   * @return the matrix
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return this.transformation.getMatrix();
+  }
+
+  /**
+   * Checks whether the result is always grey.
+   *
+   * @return true if the rows of the matrix are the same
+   */
+  @Override
+  public boolean isGrey() {
+    return this.transformation.isGrey();
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name, and the mask name if a mask is given
+   */
+  @Override
+  public List<String> getReads() {
+    return this.transformation.getReads();
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return this.transformation.getWrites();
+  }
+
+  /**
+   * Gets the description of the operation, which is the color transformation of the sepia tone.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return this.transformation.getOperation();
   }
-}
\ No newline at end of file
+}
@@ -1,19 +1,21 @@
 package model.functions.filter;
 
-import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
-import model.functions.ModelFunctions;
-import utils.Util;
+import model.Mask;
+import model.PixelBuffer;
+import model.functions.Memoizable;
 
 /**
- * Class Blur provide functionality of using Filter operation to blur the image.
+ * Class Blur provide functionality of using a Convolution operation to blur the image.
  * to execute a blur operation on given image.
  */
-public class Blur implements ModelFunctions {
+public class Blur implements Memoizable {
   private final String old;
 
   private final String mask;
@@ -88,34 +90,59 @@ public class Blur implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] origin = model.getFromMap(old);
+    PixelBuffer origin = model.getBufferFromMap(old);
+    Convolution convolution = new Convolution(this.kernel);
+    PixelBuffer result;
     if (mask.equals("")) {
-      int width = origin[0][0];
-      int height = origin[0][1];
-
-      for (int i = 1; i < height + 1; i++) {
-        for (int j = 0; j < width; j++) {
-          origin[i][3 * j] = new Filter(this.old, this.kernel, i, j, "red", origin).apply();
-          origin[i][3 * j + 1] = new Filter(this.old, this.kernel, i, j, "green", origin).apply();
-          origin[i][3 * j + 2] = new Filter(this.old, this.kernel, i, j, "blue", origin).apply();
-        }
-      }
+      result = new PixelBuffer(origin.getWidth(), origin.getHeight(), origin.getMaxValue());
+      convolution.apply(origin, result, model.getScheduler());
     } else {
-      int[][] maskIm = model.getFromMap(this.mask);
-      Util util = new Util();
-      List<Point> list = util.getPointsNeedToChange(maskIm);
-      for (Point point : list) {
-        int x = (int) point.getX();
-        int y = (int) point.getY();
-        if (y % 3 == 0) {
-          origin[x][y] = new Filter(this.old, this.kernel, x, y / 3, "red", origin).apply();
-        } else if (y % 3 == 1) {
-          origin[x][y] = new Filter(this.old, this.kernel, x, y / 3, "green", origin).apply();
-        } else {
-          origin[x][y] = new Filter(this.old, this.kernel, x, y / 3, "blue", origin).apply();
+      result = origin.share();
+      Mask selected = Mask.of(model.getBufferFromMap(this.mask));
+      selected.checkInside(origin);
+      int width = origin.getWidth();
+      int[] pixels = result.getWritablePixels();
+      selected.forEachSpan((row, from, to) -> {
+        for (int s = from; s < to; s++) {
+          int index = row * width + s / 3;
+          pixels[index] = PixelBuffer.withChannel(pixels[index], s % 3,
+                  convolution.applyAt(origin, row, s / 3, s % 3));
         }
-      }
+      });
+      model.addToMap(this.dest, result, this.old, selected);
+      return;
     }
-    model.addToMap(this.dest, origin);
+    model.addToMap(this.dest, result);
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name, and the mask name if a mask is given
+   */
+  @Override
+  public List<String> getReads() {
+    return this.mask.equals("") ? Collections.singletonList(this.old)
+            : Arrays.asList(this.old, this.mask);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is blur.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return this.getClass().getName();
   }
 }
@@ -0,0 +1,346 @@
+package model.functions.filter;
+
+import java.util.Objects;
+
+import model.PixelBuffer;
+import model.TileScheduler;
+
+/**
+ * Class Convolution applies a fixed kernel on all three channels of a {@link PixelBuffer}
+ * in one pass. Taps that fall outside of the image are skipped, and the sum of every
+ * channel is clamped to 0 - 255 and truncated to an integer.
+ * The interior of the image, where the whole kernel fits, is processed without any bounds
+ * check; only the border pixels check every tap.
+ * When every weight is a multiple of 2^-10, the interior is summed in exact integer
+ * arithmetic, which gives the same result as the floating point sum.
+ * The source is never written, so every pixel is convolved against the unfiltered pixels
+ * around it and the result does not depend on the order pixels are visited in.
+ * When the kernel is the product of a column and a row, and the two-pass sum is exactly the
+ * same as the direct sum, the convolution runs as a horizontal pass followed by a vertical
+ * pass over a ring of kernel height row buffers.
+ */
+public class Convolution {
+  private final double[] weights;
+  private final int[] fixedWeights;
+  private final int kernelW;
+  private final int kernelH;
+  private final int middleW;
+  private final int middleH;
+  private final double[] columnFactors;
+  private final double[] rowFactors;
+
+  /**
+   * Constructor for the convolution, which accepts the kernel. The kernel must have odd
+   * width and height so that it has a middle.
+   *
+   * @param kernel is the matrix multiplied
+   * @throws IllegalArgumentException if the kernel is empty, not rectangular or has even size
+   */
+  public Convolution(double[][] kernel) throws IllegalArgumentException {
+    Objects.requireNonNull(kernel);
+    if (kernel.length == 0 || kernel[0].length == 0
+            || kernel.length % 2 == 0 || kernel[0].length % 2 == 0) {
+      throw new IllegalArgumentException("kernel must have odd width and height");
+    }
+    this.kernelH = kernel.length;
+    this.kernelW = kernel[0].length;
+    this.middleH = this.kernelH / 2;
+    this.middleW = this.kernelW / 2;
+    this.weights = new double[this.kernelH * this.kernelW];
+    for (int i = 0; i < this.kernelH; i++) {
+      if (kernel[i].length != this.kernelW) {
+        throw new IllegalArgumentException("kernel must be rectangular");
+      }
+      System.arraycopy(kernel[i], 0, this.weights, i * this.kernelW, this.kernelW);
+    }
+
+    this.fixedWeights = this.toFixed();
+    double[][] factors = this.factorize();
+    this.columnFactors = factors == null ? null : factors[0];
+    this.rowFactors = factors == null ? null : factors[1];
+  }
+
+  /**
+   * Checks whether the convolution runs as two one dimensional passes.
+   *
+   * @return true if the kernel is separable
+   */
+  public boolean isSeparable() {
+    return this.columnFactors != null;
+  }
+
+  /**
+   * Convolves the source image into the destination image, which must have the same size
+   * and must not share pixels with the source. The rows are split into tiles by the
+   * {@link TileScheduler}; every tile reads the halo rows around it from the source, so
+   * tiles do not depend on each other.
+   *
+   * @param source      the image read from
+   * @param destination the image written to
+   * @param scheduler   the scheduler the tiles run on
+   * @throws IllegalArgumentException if the sizes are different
+   */
+  public void apply(PixelBuffer source, PixelBuffer destination, TileScheduler scheduler)
+          throws IllegalArgumentException {
+    if (!source.sameSize(destination)) {
+      throw new IllegalArgumentException("source and destination must have the same size");
+    }
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int[] from = source.getPixels();
+    int[] to = destination.getWritablePixels();
+    if (this.isSeparable()) {
+      scheduler.forEachTile(width, height, (first, end) ->
+              this.separable(from, to, width, height, first, end));
+    } else {
+      scheduler.forEachTile(width, height, (first, end) ->
+              this.direct(from, to, width, height, first, end));
+    }
+  }
+
+  /**
+   * Convolves one channel of one pixel of the image.
+   *
+   * @param image   the image read from
+   * @param row     row of the pixel from 0
+   * @param col     column of the pixel from 0
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return the filtered channel value
+   */
+  public int applyAt(PixelBuffer image, int row, int col, int channel) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = image.getPixels();
+    int shift = 16 - 8 * channel;
+    double sum = 0;
+    for (int i = 0; i < this.kernelH; i++) {
+      int y = row + i - this.middleH;
+      if (y < 0 || y >= height) {
+        continue;
+      }
+      for (int j = 0; j < this.kernelW; j++) {
+        int x = col + j - this.middleW;
+        if (x >= 0 && x < width) {
+          sum += this.weights[i * this.kernelW + j] * ((pixels[y * width + x] >> shift) & 0xFF);
+        }
+      }
+    }
+    return clamp(sum);
+  }
+
+  private void direct(int[] from, int[] to, int width, int height, int first, int end) {
+    for (int i = first; i < end; i++) {
+      boolean interiorRow = i >= this.middleH && i < height - this.middleH;
+      for (int j = 0; j < width; j++) {
+        if (interiorRow && j >= this.middleW && j < width - this.middleW) {
+          to[i * width + j] = this.interior(from, width, i, j);
+        } else {
+          to[i * width + j] = this.border(from, width, height, i, j);
+        }
+      }
+    }
+  }
+
+  private int interior(int[] pixels, int width, int row, int col) {
+    int start = (row - this.middleH) * width + col - this.middleW;
+    if (this.fixedWeights != null) {
+      return this.interiorFixed(pixels, width, start);
+    }
+    double r = 0;
+    double g = 0;
+    double b = 0;
+    int k = 0;
+    for (int i = 0; i < this.kernelH; i++) {
+      int index = start + i * width;
+      for (int j = 0; j < this.kernelW; j++) {
+        double factor = this.weights[k++];
+        int pixel = pixels[index++];
+        r += factor * ((pixel >> 16) & 0xFF);
+        g += factor * ((pixel >> 8) & 0xFF);
+        b += factor * (pixel & 0xFF);
+      }
+    }
+    return PixelBuffer.pack(clamp(r), clamp(g), clamp(b));
+  }
+
+  private int interiorFixed(int[] pixels, int width, int start) {
+    int r = 0;
+    int g = 0;
+    int b = 0;
+    int k = 0;
+    for (int i = 0; i < this.kernelH; i++) {
+      int index = start + i * width;
+      for (int j = 0; j < this.kernelW; j++) {
+        int factor = this.fixedWeights[k++];
+        int pixel = pixels[index++];
+        r += factor * ((pixel >> 16) & 0xFF);
+        g += factor * ((pixel >> 8) & 0xFF);
+        b += factor * (pixel & 0xFF);
+      }
+    }
+    return PixelBuffer.pack(clampFixed(r), clampFixed(g), clampFixed(b));
+  }
+
+  private int border(int[] pixels, int width, int height, int row, int col) {
+    double r = 0;
+    double g = 0;
+    double b = 0;
+    for (int i = 0; i < this.kernelH; i++) {
+      int y = row + i - this.middleH;
+      if (y < 0 || y >= height) {
+        continue;
+      }
+      for (int j = 0; j < this.kernelW; j++) {
+        int x = col + j - this.middleW;
+        if (x < 0 || x >= width) {
+          continue;
+        }
+        double factor = this.weights[i * this.kernelW + j];
+        int pixel = pixels[y * width + x];
+        r += factor * ((pixel >> 16) & 0xFF);
+        g += factor * ((pixel >> 8) & 0xFF);
+        b += factor * (pixel & 0xFF);
+      }
+    }
+    return PixelBuffer.pack(clamp(r), clamp(g), clamp(b));
+  }
+
+  /**
+   * Runs the horizontal pass row by row into a ring of kernel height rows, and the vertical
+   * pass over the ring as soon as every row the output row needs is ready. The ring starts
+   * with the halo rows above the first row of the tile.
+   */
+  private void separable(int[] from, int[] to, int width, int height, int first, int end) {
+    double[][] ring = new double[this.kernelH][3 * width];
+    int next = Math.max(0, first - this.middleH);
+    for (int i = first; i < end; i++) {
+      int last = Math.min(height - 1, i + this.middleH);
+      while (next <= last) {
+        this.horizontal(from, width, next, ring[next % this.kernelH]);
+        next++;
+      }
+      int top = Math.max(0, i - this.middleH);
+      int offset = i * width;
+      for (int j = 0; j < width; j++) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        for (int y = top; y <= last; y++) {
+          double factor = this.columnFactors[y - i + this.middleH];
+          double[] line = ring[y % this.kernelH];
+          r += factor * line[3 * j];
+          g += factor * line[3 * j + 1];
+          b += factor * line[3 * j + 2];
+        }
+        to[offset + j] = PixelBuffer.pack(clamp(r), clamp(g), clamp(b));
+      }
+    }
+  }
+
+  private void horizontal(int[] from, int width, int row, double[] line) {
+    int offset = row * width;
+    for (int j = 0; j < width; j++) {
+      double r = 0;
+      double g = 0;
+      double b = 0;
+      int start = Math.max(0, j - this.middleW);
+      int end = Math.min(width - 1, j + this.middleW);
+      for (int x = start; x <= end; x++) {
+        double factor = this.rowFactors[x - j + this.middleW];
+        int pixel = from[offset + x];
+        r += factor * ((pixel >> 16) & 0xFF);
+        g += factor * ((pixel >> 8) & 0xFF);
+        b += factor * (pixel & 0xFF);
+      }
+      line[3 * j] = r;
+      line[3 * j + 1] = g;
+      line[3 * j + 2] = b;
+    }
+  }
+
+  /**
+   * Splits the kernel into a column and a row whose product is the kernel. The split is
+   * only used for at most 32 taps when every factor is a multiple of 2^-10 below 16 in size,
+   * so that every partial sum of 8 bit channels is exact in both passes and the result
+   * does not depend on the order of the sum.
+   *
+   * @return the column and the row factors, or null if the kernel cannot be split exactly
+   */
+  private double[][] factorize() {
+    if (this.weights.length > 32) {
+      return null;
+    }
+    int pivot = -1;
+    for (int k = 0; k < this.weights.length; k++) {
+      if (this.weights[k] != 0) {
+        pivot = k;
+        break;
+      }
+    }
+    if (pivot < 0) {
+      return null;
+    }
+    int pivotRow = pivot / this.kernelW;
+    int pivotCol = pivot % this.kernelW;
+    double[] column = new double[this.kernelH];
+    double[] row = new double[this.kernelW];
+    for (int i = 0; i < this.kernelH; i++) {
+      column[i] = this.weights[i * this.kernelW + pivotCol] / this.weights[pivot];
+    }
+    System.arraycopy(this.weights, pivotRow * this.kernelW, row, 0, this.kernelW);
+    for (int i = 0; i < this.kernelH; i++) {
+      for (int j = 0; j < this.kernelW; j++) {
+        if (!isDyadic(column[i]) || !isDyadic(row[j])
+                || column[i] * row[j] != this.weights[i * this.kernelW + j]) {
+          return null;
+        }
+      }
+    }
+    return new double[][]{column, row};
+  }
+
+  /**
+   * Scales the weights by 2^10 to integers. The scaled sum of at most 256 taps of 8 bit
+   * channels fits in an int, and shifting it back truncates like the floating point sum.
+   *
+   * @return the scaled weights, or null if any weight is not a multiple of 2^-10 below 16
+   */
+  private int[] toFixed() {
+    if (this.weights.length > 256) {
+      return null;
+    }
+    int[] result = new int[this.weights.length];
+    for (int k = 0; k < this.weights.length; k++) {
+      if (!isDyadic(this.weights[k])) {
+        return null;
+      }
+      result[k] = (int) (this.weights[k] * (1 << 10));
+    }
+    return result;
+  }
+
+  private static boolean isDyadic(double value) {
+    double scaled = value * (1 << 10);
+    return Math.abs(value) < 16 && scaled == Math.rint(scaled);
+  }
+
+  private static int clampFixed(int sum) {
+    if (sum > 255 << 10) {
+      return 255;
+    } else if (sum < 0) {
+      return 0;
+    } else {
+      return sum >> 10;
+    }
+  }
+
+  private static int clamp(double sum) {
+    if (sum > 255) {
+      return 255;
+    } else if (sum < 0) {
+      return 0;
+    } else {
+      return (int) sum;
+    }
+  }
+}
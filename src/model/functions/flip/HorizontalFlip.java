@@ -1,17 +1,20 @@
 package model.functions.flip;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
-import model.functions.ModelFunctions;
+import model.PixelBuffer;
+import model.functions.Memoizable;
 
 /**
  * The horizontal flip function.
  * It accepts {@link String old} and {@link String dest}
  * to execute a horizontal flip on given image.
  */
-public class HorizontalFlip implements ModelFunctions {
+public class HorizontalFlip implements Memoizable {
   private final String old;
   private final String dest;
 
@@ -49,24 +52,52 @@ public class HorizontalFlip implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
-    int width = image[0][0];
-    int height = image[0][1];
+    PixelBuffer image = model.getBufferFromMap(this.old);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] source = image.getPixels();
+    PixelBuffer result = new PixelBuffer(width, height, image.getMaxValue());
+    int[] pixels = result.getWritablePixels();
 
-    for (int i = 1; i < height + 1; i++) {
-      for (int j = 0; j < width / 2; j++) {
-        int r = image[i][3 * j];
-        int g = image[i][3 * j + 1];
-        int b = image[i][3 * j + 2];
-        image[i][3 * j] = image[i][3 * (width - 1 - j)];
-        image[i][3 * j + 1] = image[i][3 * (width - 1 - j) + 1];
-        image[i][3 * j + 2] = image[i][3 * (width - 1 - j) + 2];
-        image[i][3 * (width - 1 - j)] = r;
-        image[i][3 * (width - 1 - j) + 1] = g;
-        image[i][3 * (width - 1 - j) + 2] = b;
+    model.getScheduler().forEachTile(width, height, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int offset = i * width;
+        for (int j = 0; j < width; j++) {
+          pixels[offset + j] = source[offset + width - 1 - j];
+        }
       }
-    }
+    });
+
+    model.addToMap(this.dest, result);
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.old);
+  }
 
-    model.addToMap(this.dest, image);
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is the horizontal flip.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return this.getClass().getName();
   }
 }
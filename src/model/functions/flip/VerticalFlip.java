@@ -1,9 +1,13 @@
 package model.functions.flip;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.PixelBuffer;
+import model.functions.Memoizable;
 import model.functions.ModelFunctions;
 
 /**
@@ -12,7 +16,7 @@ import model.functions.ModelFunctions;
  * It accepts {@link String old} and {@link String dest}
  * to execute a vertically flip on given image.
  */
-public class VerticalFlip implements ModelFunctions {
+public class VerticalFlip implements Memoizable {
   private final String old;
   private final String dest;
 
@@ -50,18 +54,49 @@ public class VerticalFlip implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
-    int width = image[0][0];
-    int height = image[0][1];
+    PixelBuffer image = model.getBufferFromMap(this.old);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] source = image.getPixels();
+    PixelBuffer result = new PixelBuffer(width, height, image.getMaxValue());
+    int[] pixels = result.getWritablePixels();
 
-    for (int i = 1; i < (height + 2) / 2; i++) {
-      for (int j = 0; j < width * 3; j++) {
-        int temp = image[i][j];
-        image[i][j] = image[height - (i - 1)][j];
-        image[height - (i - 1)][j] = temp;
+    model.getScheduler().forEachTile(width, height, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        System.arraycopy(source, (height - 1 - i) * width, pixels, i * width, width);
       }
-    }
+    });
+
+    model.addToMap(this.dest, result);
+  }
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public List<String> getReads() {
+    return Collections.singletonList(this.old);
+  }
 
-    model.addToMap(this.dest, image);
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is the vertical flip.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return this.getClass().getName();
   }
 }
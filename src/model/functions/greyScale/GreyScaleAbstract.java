@@ -1,19 +1,25 @@
 package model.functions.greyScale;
 
-import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import model.IModel;
+import model.Mask;
+import model.PixelBuffer;
 import model.functions.ModelFunctions;
-import utils.Util;
+import model.functions.PointFunction;
+import model.functions.PointTable;
+import model.functions.colorTransformation.ColorMatrix;
 
 /**
  * Abstract class for all grey scale functions, and implements the {@link ModelFunctions}.
  * to execute a greyScale of given type on given image.
+ * It is a {@link PointFunction} whose result is always grey.
  */
-public abstract class GreyScaleAbstract implements ModelFunctions {
+public abstract class GreyScaleAbstract implements PointFunction {
   protected final String old;
   protected final String mask;
   protected final String dest;
@@ -64,44 +70,172 @@ public abstract class GreyScaleAbstract implements ModelFunctions {
    */
   @Override
   public void apply(IModel model) {
-    int[][] image = model.getFromMap(this.old);
+    PixelBuffer image = model.getBufferFromMap(this.old);
+    ColorMatrix matrix = model.isExact() ? null : this.getMatrix();
     if (this.mask.equals("")) {
-      int width = image[0][0];
-      int height = image[0][1];
-
-      for (int i = 1; i < height + 1; i++) {
-        for (int j = 0; j < width; j++) {
-          int value = this.getValue(i, j, image);
-          image[i][3 * j] = value;
-          image[i][3 * j + 1] = value;
-          image[i][3 * j + 2] = value;
+      int[] source = image.getPixels();
+      int width = image.getWidth();
+      PixelBuffer result = new PixelBuffer(width, image.getHeight(), image.getMaxValue());
+      int[] pixels = result.getWritablePixels();
+      model.getScheduler().forEachTile(width, image.getHeight(), (from, to) -> {
+        if (matrix != null) {
+          matrix.apply(source, pixels, from * width, to * width);
+        } else {
+          this.applyToPixels(source, pixels, from * width, to * width);
         }
-      }
+      });
+      image = result;
     } else {
-      int[][] maskIm = model.getFromMap(this.mask);
-      Util util = new Util();
-      List<Point> list = util.getPointsNeedToChange(maskIm);
-      for (Point point : list) {
-        int x = (int) point.getX();
-        int y = (int) point.getY();
-        if (y % 3 == 0) {
-          int value = this.getValue(x, y / 3, image);
-          image[x][y] = value;
-          image[x][y + 1] = value;
-          image[x][y + 2] = value;
+      Mask selected = Mask.of(model.getBufferFromMap(this.mask));
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int[] pixels = image.getWritablePixels();
+      selected.forEachSpan((row, from, to) -> {
+        // only the pixels whose red sample is selected are changed
+        int first = (from + 2) / 3;
+        int last = (to + 2) / 3;
+        if (first < last && (row >= height || last > width)) {
+          throw new IndexOutOfBoundsException("Mask selects pixels outside of image");
         }
-      }
+        for (int col = first; col < last; col++) {
+          int pixel = pixels[row * width + col];
+          pixels[row * width + col] = matrix != null ? matrix.apply(pixel)
+                  : this.applyToPixel(pixel);
+        }
+      });
+      model.addToMap(this.dest, image, this.old, selected);
+      return;
     }
     model.addToMap(this.dest, image);
   }
 
+  /**
+   * Gets the name of the image the function reads.
+   *
+   * @return the source name
+   */
+  @Override
+  public String getSource() {
+    return this.old;
+  }
+
+  /**
+   * Gets the name of the image the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public String getDestination() {
+    return this.dest;
+  }
+
+  /**
+   * Checks whether the function only changes the pixels selected by a mask image.
+   *
+   * @return true if a mask is given
+   */
+  @Override
+  public boolean isMasked() {
+    return !this.mask.equals("");
+  }
+
+  /**
+   * Sets all three channels of the pixel to the grey value.
+   *
+   * @param pixel the packed pixel
+   * @return the grey pixel
+   */
+  @Override
+  public int applyToPixel(int pixel) {
+    int value = this.getValue(PixelBuffer.red(pixel), PixelBuffer.green(pixel),
+            PixelBuffer.blue(pixel));
+    return PixelBuffer.pack(value, value, value);
+  }
+
+  /**
+   * Maps the packed pixels from index {@link Integer from} up to {@link Integer to} of the
+   * source into the destination, which may be the same array.
+   *
+   * @param source      the packed pixels read from
+   * @param destination the packed pixels written to
+   * @param from        the first index
+   * @param to          the index after the last one
+   */
+  @Override
+  public void applyToPixels(int[] source, int[] destination, int from, int to) {
+    for (int i = from; i < to; i++) {
+      destination[i] = this.applyToPixel(source[i]);
+    }
+  }
+
+  /**
+   * The grey value mixes the channels, so there is no table of separate channels.
+   *
+   * @return null
+   */
+  @Override
+  public PointTable getTable() {
+    return null;
+  }
+
+  /**
+   * Gets the matrix of the grey scale if it is a weighted sum of the channels.
+   *
+   * @return the matrix, or null if the grey value is not a weighted sum
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return null;
+  }
+
+  /**
+   * The result of a grey scale function is always grey.
+   *
+   * @return true
+   */
+  @Override
+  public boolean isGrey() {
+    return true;
+  }
+
   /**
    * Gets the value needed to change to for each pixel.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer objective value}
    */
-  protected abstract int getValue(int i, int j, int[][] image);
+  protected abstract int getValue(int r, int g, int b);
+
+  /**
+   * Gets the names of the images the function reads.
+   *
+   * @return the source name, and the mask name if a mask is given
+   */
+  @Override
+  public List<String> getReads() {
+    return this.mask.equals("") ? Collections.singletonList(this.old)
+            : Arrays.asList(this.old, this.mask);
+  }
+
+  /**
+   * Gets the names of the images the function writes.
+   *
+   * @return the destination name
+   */
+  @Override
+  public List<String> getWrites() {
+    return Collections.singletonList(this.dest);
+  }
+
+  /**
+   * Gets the description of the operation, which is the kind of greyscale.
+   *
+   * @return the description
+   */
+  @Override
+  public String getOperation() {
+    return this.getClass().getName();
+  }
 }
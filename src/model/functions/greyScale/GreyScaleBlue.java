@@ -1,13 +1,15 @@
 package model.functions.greyScale;
 
 import java.util.ArrayList;
-import java.util.Objects;
+
+import model.functions.colorTransformation.ColorMatrix;
 
 /**
  * Function class for blue-component greyscale.
  * to execute a greyScale of blue component on given image.
  */
 public class GreyScaleBlue extends GreyScaleAbstract {
+  private static final ColorMatrix MATRIX = ColorMatrix.grey(0, 0, 1);
 
 //  /**
 //   * constructor for blue grey scaling function.
@@ -42,13 +44,23 @@ public class GreyScaleBlue extends GreyScaleAbstract {
   /**
    * Returns the blue component.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image is the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer blue component}
    */
   @Override
-  protected int getValue(int i, int j, int[][] image) {
-    return image[i][3 * j + 2];
+  protected int getValue(int r, int g, int b) {
+    return b;
+  }
+
+  /**
+   * Gets the matrix that sets every channel to the blue component.
+   *
+   * @return the matrix
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return MATRIX;
   }
 }
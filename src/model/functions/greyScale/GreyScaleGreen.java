@@ -2,11 +2,14 @@ package model.functions.greyScale;
 
 import java.util.ArrayList;
 
+import model.functions.colorTransformation.ColorMatrix;
+
 /**
  * Function class for green-component greyscale.
  * to execute a greyScale of green component on given image.
  */
 public class GreyScaleGreen extends GreyScaleAbstract {
+  private static final ColorMatrix MATRIX = ColorMatrix.grey(0, 1, 0);
 
 //  /**
 //   * Constructor for green grey scaling.
@@ -41,13 +44,23 @@ public class GreyScaleGreen extends GreyScaleAbstract {
   /**
    * Returns the green component.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer green component}
    */
   @Override
-  protected int getValue(int i, int j, int[][] image) {
-    return image[i][3 * j + 1];
+  protected int getValue(int r, int g, int b) {
+    return g;
+  }
+
+  /**
+   * Gets the matrix that sets every channel to the green component.
+   *
+   * @return the matrix
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return MATRIX;
   }
 }
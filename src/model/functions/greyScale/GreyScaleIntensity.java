@@ -8,6 +8,13 @@ import java.util.ArrayList;
  */
 
 public class GreyScaleIntensity extends GreyScaleAbstract {
+  private static final int[] THIRDS = new int[3 * 255 + 1];
+
+  static {
+    for (int sum = 0; sum < THIRDS.length; sum++) {
+      THIRDS[sum] = sum / 3;
+    }
+  }
 
 //  /**
 //   * Constructor for Intensity grey scaling.
@@ -42,13 +49,13 @@ public class GreyScaleIntensity extends GreyScaleAbstract {
   /**
    * Returns the Intensity component.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer intensity component}
    */
   @Override
-  protected int getValue(int i, int j, int[][] image) {
-    return (image[i][3 * j] + image[i][3 * j + 1] + image[i][3 * j + 2]) / 3;
+  protected int getValue(int r, int g, int b) {
+    return THIRDS[r + g + b];
   }
 }
@@ -2,11 +2,16 @@ package model.functions.greyScale;
 
 import java.util.ArrayList;
 
+import model.functions.colorTransformation.ColorMatrix;
+
 /**
  * Function class for luma-component greyscale.
  * to execute a greyScale of luma on given image.
  */
 public class GreyScaleLuma extends GreyScaleAbstract {
+  private static final double[] RED = weigh(0.2126);
+  private static final double[] GREEN = weigh(0.7152);
+  private static final double[] BLUE = weigh(0.0722);
 
 //  /**
 //   * Constructor for luma grey scaling.
@@ -41,15 +46,38 @@ public class GreyScaleLuma extends GreyScaleAbstract {
   /**
    * Returns the Luma component.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer luma component}
    */
   @Override
-  protected int getValue(int i, int j, int[][] image) {
-    return (int) (image[i][3 * j] * 0.2126
-            + image[i][3 * j + 1] * 0.7152
-            + image[i][3 * j + 2] * 0.0722);
+  protected int getValue(int r, int g, int b) {
+    return (int) (RED[r] + GREEN[g] + BLUE[b]);
+  }
+
+  /**
+   * Precomputes the weighted value of every channel value, which is the same product
+   * the luma sum would compute.
+   *
+   * @param weight the weight of the channel
+   * @return the weighted values indexed by channel value
+   */
+  private static double[] weigh(double weight) {
+    double[] table = new double[256];
+    for (int v = 0; v < 256; v++) {
+      table[v] = v * weight;
+    }
+    return table;
+  }
+
+  /**
+   * Gets the matrix that sets every channel to the luma component.
+   *
+   * @return the matrix
+   */
+  @Override
+  public ColorMatrix getMatrix() {
+    return ColorMatrix.LUMA;
   }
 }
@@ -41,15 +41,15 @@ public class GreyScaleValue extends GreyScaleAbstract {
   /**
    * Returns the value component.
    *
-   * @param i     is {@link Integer height of pixel}
-   * @param j     is {@link Integer width of pixel}
-   * @param image the image operated on
+   * @param r is {@link Integer red component of pixel}
+   * @param g is {@link Integer green component of pixel}
+   * @param b is {@link Integer blue component of pixel}
    * @return {@link Integer value component}
    */
   @Override
-  protected int getValue(int i, int j, int[][] image) {
-    int result = Math.max(image[i][3 * j], image[i][3 * j + 1]);
-    result = Math.max(result, image[i][3 * j + 2]);
+  protected int getValue(int r, int g, int b) {
+    int result = Math.max(r, g);
+    result = Math.max(result, b);
     return result;
   }
 }
@@ -0,0 +1,163 @@
+package model.histogram;
+
+import java.util.HashMap;
+import java.util.Objects;
+
+import model.Mask;
+import model.PixelBuffer;
+import model.TileScheduler;
+
+/**
+ * Class ChannelHistograms holds the red, green, blue and intensity histograms of an image,
+ * which are counted together in one pass over its pixels.
+ * Every tile of rows is counted into its own partial histograms, which are added up when the
+ * tile is done, so the tiles can be counted in parallel.
+ * The histograms of an image that only differs from a counted one in the pixels of a mask
+ * are updated from those pixels alone.
+ */
+public final class ChannelHistograms {
+  /**
+   * The number of values of a channel.
+   */
+  public static final int VALUES = 256;
+
+  private static final int RED = 0;
+  private static final int GREEN = VALUES;
+  private static final int BLUE = 2 * VALUES;
+  private static final int INTENSITY = 3 * VALUES;
+
+  private final int[] counts;
+
+  private ChannelHistograms(int[] counts) {
+    this.counts = counts;
+  }
+
+  /**
+   * Counts the histograms of an image.
+   *
+   * @param image     the image
+   * @param scheduler the scheduler the tiles are counted on
+   * @return the histograms
+   */
+  public static ChannelHistograms of(PixelBuffer image, TileScheduler scheduler) {
+    int width = image.getWidth();
+    int[] pixels = image.getPixels();
+    int[] counts = new int[4 * VALUES];
+    scheduler.forEachTile(width, image.getHeight(), (from, to) -> {
+      int[] partial = new int[4 * VALUES];
+      for (int i = from * width; i < to * width; i++) {
+        int pixel = pixels[i];
+        int r = (pixel >> 16) & 0xFF;
+        int g = (pixel >> 8) & 0xFF;
+        int b = pixel & 0xFF;
+        partial[RED + r]++;
+        partial[GREEN + g]++;
+        partial[BLUE + b]++;
+        partial[INTENSITY + (r + g + b) / 3]++;
+      }
+      synchronized (counts) {
+        for (int v = 0; v < counts.length; v++) {
+          counts[v] += partial[v];
+        }
+      }
+    });
+    return new ChannelHistograms(counts);
+  }
+
+  /**
+   * Gets the histograms of an image that differs from the counted image only in the pixels
+   * the mask selects, by taking out the old and adding the new values of the pixels that
+   * changed.
+   *
+   * @param before  the image these histograms were counted from
+   * @param after   the changed image
+   * @param changed the mask that selects every sample that may have changed
+   * @return the histograms of the changed image
+   * @throws IllegalArgumentException if the images do not have the same size
+   */
+  public ChannelHistograms update(PixelBuffer before, PixelBuffer after, Mask changed)
+          throws IllegalArgumentException {
+    int width = before.getWidth();
+    if (after.getWidth() != width || after.getHeight() != before.getHeight()) {
+      throw new IllegalArgumentException("images do not have the same size");
+    }
+    int[] counts = this.counts.clone();
+    int[] old = before.getPixels();
+    int[] pixels = after.getPixels();
+    // spans of one row may share a pixel, which must only be counted once
+    int[] next = {0};
+    changed.forEachSpan((row, from, to) -> {
+      int offset = row * width;
+      for (int i = Math.max(next[0], offset + from / 3); i <= offset + (to - 1) / 3; i++) {
+        if (old[i] != pixels[i]) {
+          count(counts, old[i], -1);
+          count(counts, pixels[i], 1);
+        }
+      }
+      next[0] = Math.max(next[0], offset + (to - 1) / 3 + 1);
+    });
+    return new ChannelHistograms(counts);
+  }
+
+  private static void count(int[] counts, int pixel, int delta) {
+    int r = (pixel >> 16) & 0xFF;
+    int g = (pixel >> 8) & 0xFF;
+    int b = pixel & 0xFF;
+    counts[RED + r] += delta;
+    counts[GREEN + g] += delta;
+    counts[BLUE + b] += delta;
+    counts[INTENSITY + (r + g + b) / 3] += delta;
+  }
+
+  /**
+   * Gets the counts of every value of a component.
+   *
+   * @param component the component, which is red, green, blue or intensity
+   * @return a copy of the 256 counts
+   * @throws IllegalArgumentException if the component is unknown
+   */
+  public int[] getCounts(String component) throws IllegalArgumentException {
+    int[] result = new int[VALUES];
+    System.arraycopy(this.counts, offsetOf(component), result, 0, VALUES);
+    return result;
+  }
+
+  /**
+   * Gets the histogram of a component as a hashmap that contains 0 - 255 as key and their
+   * frequency as value.
+   *
+   * @param component the component, which is red, green, blue or intensity
+   * @return the hashMap that contains the frequency of each value
+   * @throws IllegalArgumentException if the component is unknown
+   */
+  public HashMap<Integer, Integer> toMap(String component) throws IllegalArgumentException {
+    int offset = offsetOf(component);
+    HashMap<Integer, Integer> map = new HashMap<>();
+    for (int v = 0; v < VALUES; v++) {
+      map.put(v, this.counts[offset + v]);
+    }
+    return map;
+  }
+
+  /**
+   * Gets where the counts of a component start.
+   *
+   * @param component the component
+   * @return the offset of the counts
+   * @throws IllegalArgumentException if the component is unknown
+   */
+  static int offsetOf(String component) throws IllegalArgumentException {
+    switch (Objects.requireNonNull(component).toLowerCase()) {
+      case "red":
+        return RED;
+      case "green":
+        return GREEN;
+      case "blue":
+        return BLUE;
+      case "intensity":
+        return INTENSITY;
+      default:
+        throw new IllegalArgumentException("Cannot find color");
+    }
+  }
+}
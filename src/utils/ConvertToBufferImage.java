@@ -1,8 +1,12 @@
 package utils;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import model.PixelBuffer;
 
 /**
  * class ConvertToBufferImage is designed to convert an given format of Image to a bufferImage
@@ -10,6 +14,8 @@ import java.util.HashMap;
  */
 
 public class ConvertToBufferImage {
+  private static final DirectColorModel RGB_MODEL =
+          new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
 
   /**
    * Help transfer a int[][] image to a buffered image.
@@ -17,22 +23,24 @@ public class ConvertToBufferImage {
    * @param image  int[][] image
    */
   public static BufferedImage intListToBufferImage(int[][] image){
-    int width = image[0][0];
-    int height = image[0][1];
-    BufferedImage bufferedImage = new BufferedImage(width, height, 1);
-    for (int i = 1; i < height + 1; i++) {
-      for (int j = 0; j < width; j++) {
-        int r = image[i][3 * j];
-        int g = image[i][3 * j + 1];
-        int b = image[i][3 * j + 2];
-        if (r < 0 || g < 0 || b < 0 || r > 255 || g > 255 || b > 255) {
-          throw new IllegalArgumentException("Invalid RGB");
-        }
-        Color color = new Color(r, g, b);
-        int pixel = color.getRGB();
-        bufferedImage.setRGB(j, i - 1, pixel);
-      }
-    }
-    return bufferedImage;
+    return pixelBufferToBufferImage(PixelBuffer.fromLegacy(image));
+  }
+
+  /**
+   * Help transfer a {@link PixelBuffer} image to a buffered image. Nothing is copied: the
+   * packed pixels already match {@link BufferedImage#TYPE_INT_RGB}, so the buffered image is
+   * backed by the same array. The pixel buffer is marked as shared, so a later write to it
+   * makes its own copy, and the buffered image must only be read.
+   *
+   * @param image  {@link PixelBuffer} image
+   */
+  public static BufferedImage pixelBufferToBufferImage(PixelBuffer image){
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = image.share().getPixels();
+    DataBufferInt data = new DataBufferInt(pixels, pixels.length);
+    WritableRaster raster = Raster.createPackedRaster(data, width, height, width,
+            new int[]{0xFF0000, 0xFF00, 0xFF}, null);
+    return new BufferedImage(RGB_MODEL, raster, false, null);
   }
 }
@@ -1,16 +1,26 @@
 package utils;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import model.PixelBuffer;
 
 /**
  * This class contains utility methods to read a PPM image from file and simply print its contents.
@@ -23,6 +33,20 @@ public class ImageUtil {
    * @return the image in int[][]
    */
   public static int[][] readImage(String filePath) {
+    return ImageUtil.readBuffer(filePath).toLegacy();
+  }
+
+  /**
+   * Reads in an image from the specific file path.
+   *
+   * @param filePath the file path of the image
+   * @return the image as {@link PixelBuffer}
+   */
+  public static PixelBuffer readBuffer(String filePath) {
+    if (ImageUtil.isPPM(filePath)) {
+      return ImageUtil.readPPM(filePath);
+    }
+
     File input = new File(filePath);
     BufferedImage image;
     try {
@@ -34,109 +58,224 @@ public class ImageUtil {
     if (image == null) {
       return ImageUtil.readPPM(filePath);
     } else {
-      return ImageUtil.readNormal(image);
+      return ImageUtil.readBuffer(image);
     }
   }
 
   /**
-   * Read an image file in the PPM format and print the colors.
+   * Reads the number of pixels of an image file from its header, without reading its pixels.
    *
-   * @param filePath the path of the file.
-   * @throws IllegalArgumentException if file path is not found
-   * @throws IllegalArgumentException if file does not start with P3
-   * @throws IllegalArgumentException if width, height, or maxValue < 0, or MaxValue > 255
+   * @param filePath the file path of the image
+   * @return the width times the height of the image, or -1 if the file cannot be read or is
+   *         in a format whose size is not known
    */
-  private static int[][] readPPM(String filePath) {
-    Scanner sc;
-
-    try {
-      sc = new Scanner(new FileInputStream(filePath));
-    } catch (FileNotFoundException e) {
-      throw new IllegalArgumentException("File " + filePath + " not found!");
+  public static long readPixelCount(String filePath) {
+    if (ImageUtil.isPPM(filePath)) {
+      try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+              StandardOpenOption.READ)) {
+        PPMTokenizer tokenizer = new PPMTokenizer(channel);
+        tokenizer.nextWord();
+        return (long) tokenizer.nextInt() * tokenizer.nextInt();
+      } catch (IOException | IllegalArgumentException e) {
+        return -1;
+      }
     }
-
-    StringBuilder builder = new StringBuilder();
-    //read the file line by line, and populate a string. This will throw away any comment lines
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s).append(System.lineSeparator());
+    try (ImageInputStream stream = ImageIO.createImageInputStream(new File(filePath))) {
+      Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+      if (readers == null || !readers.hasNext()) {
+        return -1;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(stream, true, true);
+        return (long) reader.getWidth(0) * reader.getHeight(0);
+      } finally {
+        reader.dispose();
       }
+    } catch (IOException | RuntimeException e) {
+      return -1;
     }
+  }
 
-    // avoid resource leak
-    try {
-      sc.close();
-    } catch (Exception e) {
-      e.printStackTrace();
+  /**
+   * Checks whether the file starts with the magic number of a plain or binary PPM file,
+   * so that PPM files skip the ImageIO reader lookup.
+   *
+   * @param filePath the file path of the image
+   * @return true if the file starts with P3 or P6
+   */
+  private static boolean isPPM(String filePath) {
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(2);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        continue;
+      }
+      return magic.position() == 2 && magic.get(0) == 'P'
+              && (magic.get(1) == '3' || magic.get(1) == '6');
+    } catch (IOException | InvalidPathException e) {
+      return false;
     }
+  }
 
-    //now set up the scanner to read from the string we just built
-    sc = new Scanner(builder.toString());
-
-    String token;
+  /**
+   * Read an image file in the plain (P3) or binary (P6) PPM format.
+   *
+   * @param filePath the path of the file.
+   * @throws IllegalArgumentException if file path is not found
+   * @throws IllegalArgumentException if file does not start with P3 or P6
+   * @throws IllegalArgumentException if width, height, or maxValue < 0, or MaxValue > 255
+   * @throws IllegalArgumentException if the file ends early or has an invalid value
+   */
+  private static PixelBuffer readPPM(String filePath) {
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      PPMTokenizer tokenizer = new PPMTokenizer(channel);
 
-    token = sc.next();
-    if (!token.equals("P3")) {
-      throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with P3");
-    }
+      String token = tokenizer.nextWord();
+      if (!token.equals("P3") && !token.equals("P6")) {
+        throw new IllegalArgumentException("Invalid PPM file: file should begin with P3 or P6");
+      }
 
-    int inWidth = sc.nextInt();
-    if (inWidth <= 0) {
-      throw new IllegalArgumentException("Width cannot be smaller than 0");
-    }
+      int inWidth = tokenizer.nextInt();
+      if (inWidth <= 0) {
+        throw new IllegalArgumentException("Width cannot be smaller than 0");
+      }
 
-    int inHeight = sc.nextInt();
-    if (inHeight <= 0) {
-      throw new IllegalArgumentException("Height cannot be smaller 0 or larger than 255");
-    }
+      int inHeight = tokenizer.nextInt();
+      if (inHeight <= 0) {
+        throw new IllegalArgumentException("Height cannot be smaller 0 or larger than 255");
+      }
 
-    int inMaxValue = sc.nextInt();
-    if (inMaxValue < 0 || inMaxValue > 255) {
-      throw new IllegalArgumentException("maxValue cannot be smaller than 0 or larger than 255");
-    }
+      int inMaxValue = tokenizer.nextInt();
+      if (inMaxValue < 0 || inMaxValue > 255) {
+        throw new IllegalArgumentException("maxValue cannot be smaller than 0 or larger than 255");
+      }
 
-    int[][] result = new int[inHeight + 1][3 * inWidth];
-    result[0][0] = inWidth;
-    result[0][1] = inHeight;
-    result[0][2] = inMaxValue;
-    for (int i = 1; i < inHeight + 1; i++) {
-      for (int j = 0; j < inWidth; j++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
-        result[i][3 * j] = r;
-        result[i][3 * j + 1] = g;
-        result[i][3 * j + 2] = b;
+      PixelBuffer result = new PixelBuffer(inWidth, inHeight, inMaxValue);
+      int[] pixels = result.getWritablePixels();
+      if (token.equals("P6")) {
+        tokenizer.readRawPixels(pixels);
+      } else {
+        for (int i = 0; i < pixels.length; i++) {
+          int r = tokenizer.nextInt();
+          int g = tokenizer.nextInt();
+          int b = tokenizer.nextInt();
+          if (((r | g | b) & ~0xFF) != 0) {
+            throw new IllegalArgumentException("Invalid RGB");
+          }
+          pixels[i] = PixelBuffer.pack(r, g, b);
+        }
       }
+      return result;
+    } catch (NoSuchFileException | InvalidPathException e) {
+      throw new IllegalArgumentException("File " + filePath + " not found!");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + filePath + " cannot be read!");
     }
-    return result;
   }
 
   /**
-   * Read files in formats that ImageIO recognizes like JPG, PNG, JPEG, etc. and will
-   * convert them into int[][].
+   * Converts an image read by ImageIO from formats like JPG, PNG, JPEG, etc. into a
+   * {@link PixelBuffer}. Int packed and byte BGR rasters in sRGB are read from their arrays;
+   * any other image is read pixel by pixel.
    *
-   * @return the int[][] for the image
+   * @param image the buffered image
+   * @return the {@link PixelBuffer} for the image
    */
-  private static int[][] readNormal(BufferedImage image) {
+  public static PixelBuffer readBuffer(BufferedImage image) {
     int height = image.getHeight();
     int width = image.getWidth();
+    int[] pixels = null;
+
+    Raster raster = image.getRaster();
+    boolean sRGB = image.getColorModel().getColorSpace().isCS_sRGB();
+    if (sRGB && (image.getType() == BufferedImage.TYPE_INT_RGB
+            || image.getType() == BufferedImage.TYPE_INT_ARGB)) {
+      pixels = readPacked(raster, width, height);
+    } else if (sRGB && image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+      pixels = readBGR(raster, width, height);
+    }
+    if (pixels == null) {
+      pixels = image.getRGB(0, 0, width, height, null, 0, width);
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] &= 0xFFFFFF;
+      }
+    }
+    return new PixelBuffer(width, height, 0, pixels);
+  }
 
-    int[][] result = new int[height + 1][3 * width];
-    result[0][0] = width;
-    result[0][1] = height;
+  /**
+   * Reads the pixels of an int packed 0x(AA)RRGGBB raster. If the raster is exactly the
+   * size of the image its array is copied at once, otherwise only the needed rows are copied.
+   * The raster is left as it is, since the image belongs to the caller.
+   *
+   * @param raster the raster of the image
+   * @param width  width of the image
+   * @param height height of the image
+   * @return packed 0xRRGGBB pixels, or null if the raster is laid out differently
+   */
+  private static int[] readPacked(Raster raster, int width, int height) {
+    if (!(raster.getDataBuffer() instanceof DataBufferInt)
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || raster.getDataBuffer().getNumBanks() != 1) {
+      return null;
+    }
+    SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    int stride = model.getScanlineStride();
+    int offset = raster.getDataBuffer().getOffset() + model.getOffset(
+            -raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+    int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+
+    int[] pixels;
+    if (offset == 0 && stride == width && data.length == width * height) {
+      pixels = data.clone();
+    } else {
+      pixels = new int[width * height];
+      for (int i = 0; i < height; i++) {
+        System.arraycopy(data, offset + i * stride, pixels, i * width, width);
+      }
+    }
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] &= 0xFFFFFF;
+    }
+    return pixels;
+  }
 
-    for (int i = 1; i < height + 1; i++) {
+  /**
+   * Reads the pixels of a byte interleaved blue, green, red raster.
+   *
+   * @param raster the raster of the image
+   * @param width  width of the image
+   * @param height height of the image
+   * @return packed 0xRRGGBB pixels, or null if the raster is laid out differently
+   */
+  private static int[] readBGR(Raster raster, int width, int height) {
+    if (!(raster.getDataBuffer() instanceof DataBufferByte)
+            || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+            || raster.getDataBuffer().getNumBanks() != 1) {
+      return null;
+    }
+    PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+    int[] bandOffsets = model.getBandOffsets();
+    if (model.getPixelStride() != 3 || bandOffsets.length != 3) {
+      return null;
+    }
+    int stride = model.getScanlineStride();
+    int offset = raster.getDataBuffer().getOffset()
+            - raster.getSampleModelTranslateY() * stride
+            - raster.getSampleModelTranslateX() * 3;
+    byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < height; i++) {
+      int p = offset + i * stride;
+      int index = i * width;
       for (int j = 0; j < width; j++) {
-        int pixel = image.getRGB(j, i - 1);
-        Color color = new Color(pixel);
-        result[i][3 * j] = color.getRed();
-        result[i][3 * j + 1] = color.getGreen();
-        result[i][3 * j + 2] = color.getBlue();
+        pixels[index++] = PixelBuffer.pack(data[p + bandOffsets[0]] & 0xFF,
+                data[p + bandOffsets[1]] & 0xFF, data[p + bandOffsets[2]] & 0xFF);
+        p += 3;
       }
     }
-    return result;
+    return pixels;
   }
 
   /**
@@ -146,10 +285,20 @@ public class ImageUtil {
    * @param image    image to be saved
    */
   public static void saveImage(String filePath, int[][] image) {
-    String formatName = filePath.substring(filePath.lastIndexOf(".") + 1);
     if (image[0][0] <= 0 || image[0][1] <= 0) {
       throw new IllegalArgumentException("width or height cannot be 0");
     }
+    saveImage(filePath, PixelBuffer.fromLegacy(image));
+  }
+
+  /**
+   * Saves an image to the given file path.
+   *
+   * @param filePath file path of image
+   * @param image    image to be saved as {@link PixelBuffer}
+   */
+  public static void saveImage(String filePath, PixelBuffer image) {
+    String formatName = filePath.substring(filePath.lastIndexOf(".") + 1);
     if (formatName.equals("ppm")) {
       savePPM(filePath, image);
     } else {
@@ -163,51 +312,51 @@ public class ImageUtil {
    * @param photo    the photo parameters
    * @param filePath the saving file path
    * @throws IllegalArgumentException if fails to create a file, or fails to write in a file
-   * @throws IllegalArgumentException if width, height, or maxValue < 0, or maxValue > 255
+   * @throws IllegalArgumentException if maxValue > 255
    */
-  private static void savePPM(String filePath, int[][] photo) {
-
-    File file = new File(filePath);
-
-    try {
-      Files.deleteIfExists(file.toPath());
-      file.createNewFile();
-    } catch (IOException e) {
-      throw new IllegalArgumentException("something wrong happens during file creating!");
-    }
+  private static void savePPM(String filePath, PixelBuffer photo) {
+    writePPM(filePath, photo, false);
+  }
 
-    StringBuilder builder = new StringBuilder();
-    helper(photo, builder);
+  /**
+   * Saves the image to a binary (P6) ppm file given the file path.
+   *
+   * @param filePath the saving file path
+   * @param photo    the photo parameters
+   * @throws IllegalArgumentException if fails to create a file, or fails to write in a file
+   * @throws IllegalArgumentException if maxValue > 255
+   */
+  public static void saveBinaryPPM(String filePath, PixelBuffer photo) {
+    writePPM(filePath, photo, true);
+  }
 
-    // file writing
-    FileOutputStream fop;
-    try {
-      fop = new FileOutputStream(file);
-      byte[] contentInBytes = builder.toString().getBytes();
-      fop.write(contentInBytes);
-    } catch (IOException e) {
+  /**
+   * Streams the image to a ppm file through a {@link PPMWriter}.
+   *
+   * @param filePath the saving file path
+   * @param photo    the photo parameters
+   * @param binary   true for binary P6, false for ASCII P3
+   * @throws IllegalArgumentException if fails to create a file, or fails to write in a file
+   * @throws IllegalArgumentException if maxValue > 255
+   */
+  private static void writePPM(String filePath, PixelBuffer photo, boolean binary) {
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      new PPMWriter(channel).write(photo, binary);
+    } catch (IOException | InvalidPathException e) {
       throw new IllegalArgumentException("something wrong happens during file writing!");
     }
-
-    try {
-      fop.close();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
   }
 
   /**
-   * Saves an int[][] to a image that has extensions that bufferedImage recognizes.
+   * Saves a {@link PixelBuffer} to a image that has extensions that bufferedImage recognizes.
    *
    * @param filePath the file path to save the image
    * @param image    the image stored in the model
    */
-  private static void saveNormal(String filePath, int[][] image) {
-    int width = image[0][0];
-    int height = image[0][1];
-
+  private static void saveNormal(String filePath, PixelBuffer image) {
     File output = new File(filePath);
-    BufferedImage result = ConvertToBufferImage.intListToBufferImage(image);
+    BufferedImage result = ConvertToBufferImage.pixelBufferToBufferImage(image);
     String formatName = filePath.substring(filePath.lastIndexOf(".") + 1).toUpperCase();
 
     try {
@@ -217,37 +366,6 @@ public class ImageUtil {
     }
   }
 
-  /**
-   * Help to create the string for the final output.
-   *
-   * @param photo   the photo that will be output
-   * @param builder the output String builder
-   * @throws IllegalArgumentException if width, height, or maxValue < 0, or maxValue > 255
-   */
-  private static void helper(int[][] photo, StringBuilder builder) {
-    builder.append("P3\n");
-    builder.append(photo[0][0]).append(" ");
-    builder.append(photo[0][1]).append("\n");
-
-    for (int i = 1; i < photo[0][1] + 1; i++) {
-      for (int j = 0; j < photo[0][0] * 3; j++) {
-        photo[0][2] = Math.max(photo[0][2], photo[i][j]);
-      }
-    }
-
-    if (photo[0][2] < 0 || photo[0][2] > 255) {
-      throw new IllegalArgumentException("MaxValue cannot be over 255 or under 0");
-    } else {
-      builder.append(photo[0][2]).append("\n");
-    }
-
-    for (int i = 1; i < photo[0][1] + 1; i++) {
-      for (int j = 0; j < photo[0][0] * 3; j++) {
-        builder.append(photo[i][j]).append("\n");
-      }
-    }
-  }
-
 //  /**
 //   * Help transfer a int[][] image to a buffered image.
 //   *
@@ -0,0 +1,160 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+
+/**
+ * Class PPMTokenizer reads the tokens and raw bytes of a PPM file from a channel.
+ * It keeps one reusable byte buffer and parses integers by hand, so a whole file
+ * never has to be held in memory as text.
+ * Comments start with '#' and run to the end of the line, and they are skipped
+ * wherever whitespace is allowed.
+ */
+public class PPMTokenizer {
+  private static final int BUFFER_SIZE = 1 << 18;
+
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final byte[] bytes;
+  private int position;
+  private int limit;
+
+  /**
+   * Constructor for the tokenizer.
+   *
+   * @param channel the channel the PPM file is read from
+   */
+  public PPMTokenizer(ReadableByteChannel channel) {
+    this.channel = Objects.requireNonNull(channel);
+    this.bytes = new byte[BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(this.bytes);
+  }
+
+  /**
+   * Reads the next whitespace separated word, such as the magic number.
+   *
+   * @return the word
+   * @throws IOException              if the channel cannot be read
+   * @throws IllegalArgumentException if the file ends before a word
+   */
+  public String nextWord() throws IOException, IllegalArgumentException {
+    int c = this.skipWhitespace();
+    StringBuilder word = new StringBuilder();
+    while (c != -1 && !isWhitespace(c)) {
+      word.append((char) c);
+      c = this.read();
+    }
+    return word.toString();
+  }
+
+  /**
+   * Reads the next integer. The single whitespace that ends the integer is consumed,
+   * so for binary PPM the pixel data starts right after the max value.
+   *
+   * @return the integer
+   * @throws IOException              if the channel cannot be read
+   * @throws IllegalArgumentException if the next token is not an integer
+   */
+  public int nextInt() throws IOException, IllegalArgumentException {
+    int c = this.skipWhitespace();
+    boolean negative = c == '-';
+    if (negative) {
+      c = this.read();
+    }
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number");
+    }
+    long value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      if (value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid PPM file: number is too large");
+      }
+      c = this.read();
+    }
+    if (c != -1 && !isWhitespace(c) && c != '#') {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number");
+    }
+    if (c == '#') {
+      this.skipComment();
+    }
+    return negative ? (int) -value : (int) value;
+  }
+
+  /**
+   * Reads packed pixels stored as three raw bytes each, like binary PPM.
+   *
+   * @param pixels the array the packed 0xRRGGBB pixels are written to
+   * @throws IOException              if the channel cannot be read
+   * @throws IllegalArgumentException if the file ends before every pixel is read
+   */
+  public void readRawPixels(int[] pixels) throws IOException, IllegalArgumentException {
+    int index = 0;
+    while (index < pixels.length) {
+      if (this.limit - this.position < 3) {
+        int r = this.read();
+        int g = this.read();
+        int b = this.read();
+        if ((r | g | b) < 0) {
+          throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+        }
+        pixels[index++] = (r << 16) | (g << 8) | b;
+        continue;
+      }
+      int end = Math.min(pixels.length, index + (this.limit - this.position) / 3);
+      byte[] data = this.bytes;
+      int p = this.position;
+      while (index < end) {
+        pixels[index++] = ((data[p] & 0xFF) << 16) | ((data[p + 1] & 0xFF) << 8)
+                | (data[p + 2] & 0xFF);
+        p += 3;
+      }
+      this.position = p;
+    }
+  }
+
+  private int skipWhitespace() throws IOException, IllegalArgumentException {
+    int c = this.read();
+    while (c != -1 && (isWhitespace(c) || c == '#')) {
+      if (c == '#') {
+        this.skipComment();
+      }
+      c = this.read();
+    }
+    if (c == -1) {
+      throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+    }
+    return c;
+  }
+
+  private void skipComment() throws IOException {
+    int c = this.read();
+    while (c != -1 && c != '\n' && c != '\r') {
+      c = this.read();
+    }
+  }
+
+  private int read() throws IOException {
+    if (this.position == this.limit && !this.fill()) {
+      return -1;
+    }
+    return this.bytes[this.position++] & 0xFF;
+  }
+
+  private boolean fill() throws IOException {
+    this.buffer.clear();
+    int count = 0;
+    while (count == 0) {
+      count = this.channel.read(this.buffer);
+    }
+    this.position = 0;
+    this.limit = Math.max(count, 0);
+    return count > 0;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B;
+  }
+}
@@ -0,0 +1,131 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+
+import model.PixelBuffer;
+
+/**
+ * Class PPMWriter streams an image to a PPM file through a channel.
+ * Integers are formatted straight into one reusable byte buffer that is flushed in chunks,
+ * so saving an image only uses a constant amount of extra memory.
+ * The max value written is the larger one of the max value of the image and its largest
+ * channel, found in one pass over the packed pixels before anything is written, so the header
+ * is written once and the pixels are never rewritten.
+ */
+public class PPMWriter {
+  private static final int BUFFER_SIZE = 1 << 18;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final byte[] bytes;
+
+  /**
+   * Constructor for the writer.
+   *
+   * @param channel the channel the PPM file is written to
+   */
+  public PPMWriter(FileChannel channel) {
+    this.channel = Objects.requireNonNull(channel);
+    this.bytes = new byte[BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(this.bytes);
+  }
+
+  /**
+   * Writes the image as ASCII (P3) or binary (P6) PPM. The max value in the header is the
+   * max value of the photo raised to its largest channel, so a photo with a max value under
+   * 0 is written with the largest channel as its max value.
+   *
+   * @param photo  the photo that will be output
+   * @param binary true for binary P6, false for ASCII P3
+   * @throws IOException              if the channel cannot be written
+   * @throws IllegalArgumentException if maxValue > 255
+   */
+  public void write(PixelBuffer photo, boolean binary) throws IOException,
+          IllegalArgumentException {
+    if (photo.getMaxValue() > 255) {
+      throw new IllegalArgumentException("MaxValue cannot be over 255");
+    }
+    int maxValue = Math.max(photo.getMaxValue(), 0);
+    int[] pixels = photo.getPixels();
+    for (int i = 0; i < pixels.length && maxValue < 255; i++) {
+      maxValue = Math.max(maxValue, Math.max(PixelBuffer.red(pixels[i]),
+              Math.max(PixelBuffer.green(pixels[i]), PixelBuffer.blue(pixels[i]))));
+    }
+
+    this.putAscii(binary ? "P6\n" : "P3\n");
+    this.putInt(photo.getWidth());
+    this.put(' ');
+    this.putInt(photo.getHeight());
+    this.put('\n');
+    this.putInt(maxValue);
+    this.put('\n');
+
+    for (int pixel : pixels) {
+      int r = PixelBuffer.red(pixel);
+      int g = PixelBuffer.green(pixel);
+      int b = PixelBuffer.blue(pixel);
+      if (this.buffer.remaining() < 12) {
+        this.flush();
+      }
+      if (binary) {
+        this.put(r);
+        this.put(g);
+        this.put(b);
+      } else {
+        this.putInt(r);
+        this.put('\n');
+        this.putInt(g);
+        this.put('\n');
+        this.putInt(b);
+        this.put('\n');
+      }
+    }
+    this.flush();
+  }
+
+  private void putAscii(String text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      this.put(text.charAt(i));
+    }
+  }
+
+  private void putInt(int value) throws IOException {
+    if (this.buffer.remaining() < 11) {
+      this.flush();
+    }
+    if (value < 0) {
+      this.buffer.put((byte) '-');
+      value = -value;
+    }
+    if (value < 10) {
+      this.buffer.put((byte) ('0' + value));
+    } else if (value < 100) {
+      this.buffer.put((byte) ('0' + value / 10));
+      this.buffer.put((byte) ('0' + value % 10));
+    } else if (value < 1000) {
+      this.buffer.put((byte) ('0' + value / 100));
+      this.buffer.put((byte) ('0' + value / 10 % 10));
+      this.buffer.put((byte) ('0' + value % 10));
+    } else {
+      this.putAscii(Integer.toString(value));
+    }
+  }
+
+  private void put(int value) throws IOException {
+    if (!this.buffer.hasRemaining()) {
+      this.flush();
+    }
+    this.buffer.put((byte) value);
+  }
+
+  private void flush() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+}
@@ -4,6 +4,8 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 
+import model.PixelBuffer;
+
 public class Util {
   public List<Point> getPointsNeedToChange(int[][] mask) {
     int maskW = mask[0][0];
@@ -19,4 +21,18 @@ public class Util {
     return list;
   }
 
+  /**
+   * Checks that the mask has the same size as the image it is applied on.
+   *
+   * @param image the image
+   * @param mask  the mask image
+   * @throws IllegalStateException if the sizes are different
+   */
+  public static void checkMaskSize(PixelBuffer image, PixelBuffer mask)
+          throws IllegalStateException {
+    if (!image.sameSize(mask)) {
+      throw new IllegalStateException("mask size does not fit");
+    }
+  }
+
 }
@@ -12,11 +12,9 @@ import java.util.Stack;
 
 import controller.RunnableAction;
 import model.IModel;
+import model.PixelBuffer;
 import model.functions.CreateWindow;
-import model.histogram.BlueHistogram;
-import model.histogram.GreenHistogram;
-import model.histogram.IntensityHistogram;
-import model.histogram.RedHistogram;
+import model.histogram.ChannelHistograms;
 import utils.ConvertToBufferImage;
 
 /**
@@ -104,20 +102,20 @@ public class OwnListener implements IOwnListener {
                   && !e.getActionCommand().equals("save")){
             actionPerformed.setRunConfigure(true);
             actionPerformed.run();
-            this.view.refreshPreview(ConvertToBufferImage.intListToBufferImage(
-                    this.model.getFromMap(filePathLoad.concat("-preview"))));
+            this.view.refreshPreview(ConvertToBufferImage.pixelBufferToBufferImage(
+                    this.model.getBufferFromMap(filePathLoad.concat("-preview"))));
           } else if (!e.getActionCommand().equals("save") || !filePathSave.isEmpty()) {
             actionPerformed.setRunConfigure(false);
             actionPerformed.run();
             this.actions.add(actionPerformed);
+            ChannelHistograms histograms = this.model.getHistogramsFromMap(filePathLoad);
             Map<String, Map<Integer, Integer>> histogramMap = new HashMap<>();
-            histogramMap.put("red",this.model.apply(new RedHistogram(filePathLoad)));
-            histogramMap.put("green",this.model.apply(new GreenHistogram(filePathLoad)));
-            histogramMap.put("blue",this.model.apply(new BlueHistogram(filePathLoad)));
-            histogramMap.put("intensity",this.model.apply(new IntensityHistogram(filePathLoad)));
+            for (String component : new String[]{"red", "green", "blue", "intensity"}) {
+              histogramMap.put(component, histograms.toMap(component));
+            }
             this.view.clearPreview();
-            this.view.refresh(ConvertToBufferImage.intListToBufferImage(
-                    this.model.getFromMap(filePathLoad)), histogramMap);
+            this.view.refresh(ConvertToBufferImage.pixelBufferToBufferImage(
+                    this.model.getBufferFromMap(filePathLoad)), histogramMap);
           }
 
         } catch (IllegalArgumentException exception) {
@@ -148,9 +146,9 @@ public class OwnListener implements IOwnListener {
       int x = e.getX() ;
       int y = e.getY() ;
 
-      int [][] image = this.model.getFromMap(filePathLoad);
-      int width = image[0][0];
-      int height = image[0][1];
+      PixelBuffer image = this.model.getBufferFromMap(filePathLoad);
+      int width = image.getWidth();
+      int height = image.getHeight();
       if(x+200 > width){
         if(width <= 200){
           x = 0;
@@ -170,8 +168,8 @@ public class OwnListener implements IOwnListener {
 
       this.model.apply(new CreateWindow(this.filePathLoad, this.filePathLoad.concat("-mask"),
               this.filePathLoad.concat("-preview"), x, y ));
-      this.view.refreshPreview(ConvertToBufferImage.intListToBufferImage(
-              this.model.getFromMap(filePathLoad.concat("-preview"))));
+      this.view.refreshPreview(ConvertToBufferImage.pixelBufferToBufferImage(
+              this.model.getBufferFromMap(filePathLoad.concat("-preview"))));
     }
 }
 
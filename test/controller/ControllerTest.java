@@ -3,13 +3,35 @@ package controller;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import model.IModel;
 import model.ImageModel;
+import model.PixelBuffer;
+import model.functions.Brighten;
+import model.functions.Load;
+import model.functions.Save;
+import model.functions.colorTransformation.ColorMatrix;
+import model.functions.colorTransformation.ColorTransformation;
+import model.functions.colorTransformation.SepiaTone;
+import model.functions.filter.Blur;
+import model.functions.greyScale.GreyScale;
+import model.functions.greyScale.GreyScaleLuma;
+import model.functions.greyScale.GreyScaleRed;
 import utils.FakeAppendable;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test for Controller.
@@ -379,4 +401,479 @@ public class ControllerTest {
     IController controller6 = new ControllerSubclass(this.model, input6, this.output);
     controller6.runProgram();
   }
-}
\ No newline at end of file
+
+  /**
+   * Test that point operations run as one pass in the exact mode give the same images as
+   * one by one, including the images in between that are read later or materialized.
+   */
+  @Test
+  public void testFusedPointOperations() {
+    this.model = new ImageModel(Long.MAX_VALUE, null, 1, true);
+    Readable input = new StringReader("load res/class/class.png a\n"
+            + "brighten 30 a b\n"
+            + "sepia-tone b c\n"
+            + "luma-greyscale c c\n"
+            + "brighten -20 c d\n"
+            + "greyscale d e\n"
+            + "red-greyscale e f\n"
+            + "sepia-tone f g\n"
+            + "materialize c\n"
+            + "materialize d\n"
+            + "materialize e\n"
+            + "materialize f\n"
+            + "blur b h\n"
+            + "q");
+    IController controller = new Controller(this.model, input);
+    controller.runProgram();
+
+    IModel expected = new ImageModel(Long.MAX_VALUE, null, 1, true);
+    expected.apply(new Load(params("res/class/class.png", "a")));
+    expected.apply(new Brighten(30, params("a", "b")));
+    expected.apply(new SepiaTone(params("b", "c")));
+    expected.apply(new GreyScaleLuma(params("c", "c")));
+    expected.apply(new Brighten(-20, params("c", "d")));
+    expected.apply(new GreyScale(params("d", "e")));
+    expected.apply(new GreyScaleRed(params("e", "f")));
+    expected.apply(new SepiaTone(params("f", "g")));
+    expected.apply(new Blur(params("b", "h")));
+
+    for (String name : new String[]{"b", "c", "d", "e", "f", "g", "h"}) {
+      assertArrayEquals(name, expected.getBufferFromMap(name).getPixels(),
+              this.model.getBufferFromMap(name).getPixels());
+    }
+  }
+
+  /**
+   * Test that a chain of point operations only writes the images that are read or saved, and
+   * that the model does not keep an older image under the name of one it dropped.
+   */
+  @Test
+  public void testDroppedIntermediates() {
+    List<String> written = new ArrayList<>();
+    this.model = new ImageModel() {
+      @Override
+      public synchronized void addToMap(String name, PixelBuffer image) {
+        written.add(name);
+        super.addToMap(name, image);
+      }
+    };
+    new Controller(this.model, new StringReader("load res/class/class.png a\n"
+            + "load res/2x2color.ppm c\n"
+            + "brighten 30 a b\n"
+            + "sepia-tone b c\n"
+            + "greyscale c d\n"
+            + "red-greyscale d e\n"
+            + "blur c f")).runProgram();
+    assertEquals(Arrays.asList("a", "c", "e", "c", "f"), written);
+    assertThrows(NullPointerException.class, () -> this.model.getBufferFromMap("b"));
+    assertThrows(NullPointerException.class, () -> this.model.getBufferFromMap("d"));
+
+    IModel expected = new ImageModel();
+    new Controller(expected, new StringReader("load res/class/class.png a\n"
+            + "brighten 30 a b\n"
+            + "sepia-tone b c\n"
+            + "greyscale c d\n"
+            + "red-greyscale d e")).runProgram();
+    assertArrayEquals(expected.getBufferFromMap("e").getPixels(),
+            this.model.getBufferFromMap("e").getPixels());
+
+    written.clear();
+    new Controller(this.model, new StringReader("load res/class/class.png a\n"
+            + "brighten 10 a g\n"
+            + "sepia-tone g h\n"
+            + "greyscale h i\n"
+            + "materialize h")).runProgram();
+    assertEquals(Arrays.asList("a", "i", "h"), written);
+  }
+
+  /**
+   * Test that an image held back is computed before its source image is replaced, so it is
+   * computed from the image it was written from and no older pixels are held outside the
+   * model.
+   */
+  @Test
+  public void testDeferredSourceReplaced() {
+    List<String> written = new ArrayList<>();
+    this.model = new ImageModel() {
+      @Override
+      public synchronized void addToMap(String name, PixelBuffer image) {
+        written.add(name);
+        super.addToMap(name, image);
+      }
+    };
+    new Controller(this.model, new StringReader("load res/class/class.png a\n"
+            + "brighten 30 a b\n"
+            + "sepia-tone b c\n"
+            + "load res/2x2color.ppm a\n"
+            + "blur b d")).runProgram();
+    assertEquals(Arrays.asList("a", "c", "b", "a", "d"), written);
+
+    IModel expected = new ImageModel();
+    new Controller(expected, new StringReader("load res/class/class.png a\n"
+            + "brighten 30 a b\n"
+            + "blur b d")).runProgram();
+    assertArrayEquals(expected.getBufferFromMap("d").getPixels(),
+            this.model.getBufferFromMap("d").getPixels());
+  }
+
+  /**
+   * Test that color transformations in a row are multiplied into one matrix.
+   */
+  @Test
+  public void testComposedColorMatrices() {
+    Readable input = new StringReader("load res/class/class.png a\n"
+            + "sepia-tone a b\n"
+            + "luma-greyscale b c\n"
+            + "materialize b\n"
+            + "q");
+    IController controller = new Controller(this.model, input);
+    controller.runProgram();
+
+    IModel expected = new ImageModel();
+    expected.apply(new Load(params("res/class/class.png", "a")));
+    expected.apply(new SepiaTone(params("a", "b")));
+    expected.apply(new ColorTransformation("a", "c", "",
+            ColorMatrix.SEPIA.then(ColorMatrix.LUMA)));
+
+    for (String name : new String[]{"b", "c"}) {
+      assertArrayEquals(name, expected.getBufferFromMap(name).getPixels(),
+              this.model.getBufferFromMap(name).getPixels());
+    }
+  }
+
+  /**
+   * Test that a composed color matrix does not give the image of the matrices one after
+   * another where the first one saturates: sepia and then luma fused in a script gives 255 on
+   * white, while typed one at a time, or in the exact mode, it gives 253. Where sepia does not
+   * saturate, the two stay within one.
+   */
+  @Test
+  public void testComposedMatrixSaturation() {
+    PixelBuffer image = new PixelBuffer(256, 2, 255);
+    int[] pixels = image.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i < 256 ? PixelBuffer.pack(i, i, i) : i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    String script = "sepia-tone a b\nluma-greyscale b c\n";
+    IModel fused = new ImageModel();
+    IModel typed = new ImageModel();
+    IModel exact = new ImageModel(Long.MAX_VALUE, null, 1, true);
+    for (IModel model : new IModel[]{fused, typed, exact}) {
+      model.addToMap("a", image);
+    }
+    new Controller(fused, new StringReader(script)).runProgram();
+    new InteractiveController(typed, new StringReader(script), 0).runProgram();
+    new Controller(exact, new StringReader(script)).runProgram();
+
+    assertEquals(PixelBuffer.pack(255, 255, 255), fused.getBufferFromMap("c").getRGB(255, 0));
+    assertEquals(PixelBuffer.pack(253, 253, 253), typed.getBufferFromMap("c").getRGB(255, 0));
+    assertArrayEquals(exact.getBufferFromMap("c").getPixels(),
+            typed.getBufferFromMap("c").getPixels());
+    int[] sepia = typed.getBufferFromMap("b").getPixels();
+    int[] once = fused.getBufferFromMap("c").getPixels();
+    int[] steps = typed.getBufferFromMap("c").getPixels();
+    for (int i = 0; i < pixels.length; i++) {
+      boolean saturated = false;
+      for (int channel = 0; channel < 3; channel++) {
+        saturated |= PixelBuffer.channel(sepia[i], channel) == 255;
+      }
+      int difference = PixelBuffer.red(once[i]) - PixelBuffer.red(steps[i]);
+      assertTrue(saturated ? difference >= 0 : Math.abs(difference) <= 1);
+    }
+  }
+
+  /**
+   * Test that resize scales images up and down in every mode.
+   */
+  @Test
+  public void testResize() {
+    Readable input = new StringReader("load res/class/class.png a\n"
+            + "resize 1000 400 nearest a b\n"
+            + "resize 500 200 nearest b c\n"
+            + "resize 1234 567 bicubic a d\n"
+            + "resize 100 40 bilinear d e\n"
+            + "q");
+    IController controller = new Controller(this.model, input);
+    controller.runProgram();
+
+    assertEquals(1000, this.model.getBufferFromMap("b").getWidth());
+    assertArrayEquals(this.model.getBufferFromMap("a").getPixels(),
+            this.model.getBufferFromMap("c").getPixels());
+    assertEquals(1234, this.model.getBufferFromMap("d").getWidth());
+    assertEquals(567, this.model.getBufferFromMap("d").getHeight());
+    assertEquals(40, this.model.getBufferFromMap("e").getHeight());
+
+    IController invalid = new Controller(this.model,
+            new StringReader("resize 10 10 lanczos a f q"));
+    assertThrows(IllegalStateException.class, invalid::runProgram);
+    IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+            new Controller(this.model, new StringReader("resize 10 0 nearest a f")).runProgram());
+    assertEquals("script has 1 error(s):\n"
+            + "line 1: width or height is not positive.Not valid for resize!", e.getMessage());
+  }
+
+  /**
+   * Test that a script run as a task graph on several workers gives the images of running it
+   * in order, and that tasks wait for the writers and readers of the names they use.
+   */
+  @Test
+  public void testScheduledController() {
+    String script = "load res/class/class.png a\n"
+            + "brighten 10 a b\n"
+            + "sepia-tone b c\n"
+            + "vertical-flip a d\n"
+            + "blur d d\n"
+            + "horizontal-flip a e\n"
+            + "red-greyscale c a\n"
+            + "q";
+    IModel expected = new ImageModel();
+    new Controller(expected, new StringReader(script)).runProgram();
+    ScheduledController controller = new ScheduledController(this.model,
+            new StringReader(script), 3);
+    controller.runProgram();
+    for (String name : new String[]{"a", "c", "d", "e"}) {
+      assertArrayEquals(name, expected.getBufferFromMap(name).getPixels(),
+              this.model.getBufferFromMap(name).getPixels());
+    }
+    assertThrows(NullPointerException.class, () -> this.model.getBufferFromMap("b"));
+    assertEquals(true, controller.getReport().startsWith("6 tasks"));
+
+    TaskGraph graph = new TaskGraph(Arrays.asList(
+            new Load(params("res/class/class.png", "a")),
+            new Brighten(10, params("a", "b")),
+            new SepiaTone(params("b", "c")),
+            new Blur(params("a", "d")),
+            new GreyScaleRed(params("c", "a"))), this.model);
+    assertEquals(4, graph.size());
+    assertEquals(Arrays.asList(0), graph.getDependencies(1));
+    assertEquals(Arrays.asList(0), graph.getDependencies(2));
+    assertEquals(Arrays.asList(1, 0, 2), graph.getDependencies(3));
+    assertThrows(IllegalStateException.class, () -> new ScheduledController(this.model,
+            new StringReader("brighten x a b q"), 2).runProgram());
+  }
+
+  /**
+   * Test that a load on workers waits for the save of the same file, even when the two paths
+   * are written differently.
+   */
+  @Test
+  public void testScheduledSaveThenLoad() throws IOException {
+    Path file = Paths.get("res", "graph.ppm");
+    TaskGraph graph = new TaskGraph(Arrays.asList(
+            new Save(params("./res/graph.ppm", "a")),
+            new Load(params("res/graph.ppm", "b"))), this.model);
+    assertEquals(Arrays.asList(0), graph.getDependencies(1));
+
+    try {
+      new ScheduledController(this.model, new StringReader("load res/class/class.png a\n"
+              + "brighten 10 a a\n"
+              + "save ./res/graph.ppm a\n"
+              + "load res/graph.ppm b\n"
+              + "q"), 3).runProgram();
+      assertArrayEquals(this.model.getBufferFromMap("a").getPixels(),
+              this.model.getBufferFromMap("b").getPixels());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Test that a script is checked as a whole before any command runs, that every error is
+   * reported with its line, and that a mask name is only taken when it is not a command.
+   */
+  @Test
+  public void testScriptCompiler() {
+    Controller controller = new Controller(this.model, new StringReader(""));
+    controller.commandsInitialize();
+    ScriptCompiler compiler = new ScriptCompiler(controller.commandMap, controller.arityMap);
+
+    List<CompiledCommand> script = compiler.compile(new StringReader(
+            "load res/class/class.png a\n"
+                    + "brighten 10 a a b\n"
+                    + "blur a b sepia-tone b c\n"
+                    + "down-scale 5 5 c d q blur"));
+    assertEquals(5, script.size());
+    assertEquals(Arrays.asList("a", "a", "b"), script.get(1).getParams());
+    assertEquals(Arrays.asList("a", "b"), script.get(2).getParams());
+    assertEquals(3, script.get(3).getLine());
+    assertEquals("down-scale", script.get(4).getName());
+
+    IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+            new Controller(this.model, new StringReader("load res/class/class.png a\n"
+                    + "brighten 10 a b\n"
+                    + "apple a b\n"
+                    + "blur b mask c\n"
+                    + "resize 10 x nearest c d")).runProgram());
+    assertEquals("script has 3 error(s):\n"
+            + "line 3: no such command 'apple'\n"
+            + "line 4: image 'mask' is not loaded\n"
+            + "line 5: width or height is not number.Not valid for resize!", e.getMessage());
+    assertThrows(NullPointerException.class, () -> this.model.getBufferFromMap("a"));
+
+    new Controller(this.model, new StringReader("load res/class/class.png a")).runProgram();
+    new Controller(this.model, new StringReader("brighten 10 a b")).runProgram();
+    new ScheduledController(this.model, new StringReader("blur b c"), 2).runProgram();
+    assertTrue(this.model.isInMap("c"));
+    assertFalse(this.model.isInMap("d"));
+  }
+
+  /**
+   * Test that typed commands run a line at a time, before the next line is read, and that a
+   * line can read the images of the lines before it.
+   */
+  @Test
+  public void testInteractiveController() {
+    StringReader typed = new StringReader("load res/class/class.png a\n"
+            + "brighten 10 a b\n"
+            + "\n"
+            + "blur b c q\n"
+            + "sepia-tone c d");
+    List<String> before = new ArrayList<>();
+    Readable input = buffer -> {
+      int next = typed.read();
+      if (next == 'b' && before.isEmpty()) {
+        before.add(String.valueOf(this.model.isInMap("a")));
+      }
+      if (next < 0) {
+        return -1;
+      }
+      buffer.put((char) next);
+      return 1;
+    };
+    new InteractiveController(this.model, input, 0).runProgram();
+    assertEquals(Arrays.asList("true"), before);
+    assertTrue(this.model.isInMap("c"));
+    assertFalse(this.model.isInMap("d"));
+    assertThrows(IllegalStateException.class, () -> new InteractiveController(this.model,
+            new StringReader("blur c e\nblur x f"), 0).runProgram());
+    assertTrue(this.model.isInMap("e"));
+  }
+
+  /**
+   * Test that a lazy script only computes what is materialized, and frees every other image
+   * after its last use.
+   */
+  @Test
+  public void testLazyPlan() {
+    String script = "load res/class/class.png a\n"
+            + "brighten 10 a b\n"
+            + "sepia-tone a c\n"
+            + "luma-greyscale c d\n"
+            + "blur d e\n"
+            + "materialize d\n"
+            + "q";
+    IModel expected = new ImageModel();
+    new Controller(expected, new StringReader(script)).runProgram();
+    Controller controller = new Controller(this.model, new StringReader(script), true);
+    controller.runProgram();
+
+    assertArrayEquals(expected.getBufferFromMap("d").getPixels(),
+            this.model.getBufferFromMap("d").getPixels());
+    for (String name : new String[]{"a", "b", "c", "e"}) {
+      assertThrows(NullPointerException.class, () -> this.model.getBufferFromMap(name));
+    }
+    assertEquals("skipped 2 of 6 commands whose results are never used (b, e),"
+            + " freed 2 images after their last use (a, c)", controller.getSummary());
+  }
+
+  /**
+   * Test that a batch runs the script on every image of a directory, each on its own model,
+   * and reports every image, also when the jobs read and write their files asynchronously.
+   */
+  @Test
+  public void testBatch() throws IOException {
+    Path input = Files.createTempDirectory("batch-in");
+    Path output = input.resolve("out");
+    for (String name : new String[]{"a.png", "b.png", "c.png"}) {
+      Files.copy(Paths.get("res/class/class.png"), input.resolve(name));
+    }
+    Files.write(input.resolve("notes.txt"), Arrays.asList("not an image"));
+    String template = "load $input image\nsepia-tone image image\nsave $output/$name.ppm image";
+    new Controller(this.model, new StringReader("load res/class/class.png image\n"
+            + "sepia-tone image image")).runProgram();
+    for (long ioBudget : new long[]{0, 1 << 20}) {
+      StringBuilder log = new StringBuilder();
+      BatchController batch = new BatchController(ImageModel::new, template, input.toString(),
+              output.toString(), 2, false, ioBudget, log);
+      batch.runProgram();
+
+      for (String name : new String[]{"a", "b", "c"}) {
+        IModel saved = new ImageModel();
+        new Controller(saved, new StringReader("load " + output.resolve(name + ".ppm")
+                + " image")).runProgram();
+        assertArrayEquals(this.model.getBufferFromMap("image").getPixels(),
+                saved.getBufferFromMap("image").getPixels());
+        assertTrue(log.toString().contains(name + ".png done in "));
+        Files.delete(output.resolve(name + ".ppm"));
+      }
+      assertTrue(batch.getReport().startsWith("3 images (0 failed) in "));
+    }
+
+    Files.copy(Paths.get("res/class/class.png"), input.resolve("a.jpg"));
+    IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+            new BatchController(ImageModel::new, template, input.toString(), output.toString(),
+                    2, false, new StringBuilder()).runProgram());
+    assertEquals("images have the same $name: a.jpg and a.png", e.getMessage());
+    assertFalse(Files.exists(output.resolve("b.ppm")));
+  }
+
+  /**
+   * Test that reading files ahead and writing them behind gives the same images, also when
+   * the script loads a file it saved, under another path of the same file too, and that a
+   * save that fails is reported with its own message.
+   */
+  @Test
+  public void testAsyncIO() throws IOException {
+    Path file = Files.createTempDirectory("async").resolve("step.ppm");
+    String script = "load res/class/class.png a\n"
+            + "sepia-tone a a\n"
+            + "save " + file + " a\n"
+            + "load " + file + " b\n"
+            + "blur b b\n"
+            + "save " + file + " b\n"
+            + "load res/2x2color.ppm c\n"
+            + "load " + file + " d\n"
+            + "sepia-tone d d\n"
+            + "save " + file.resolveSibling(".").resolve("other.ppm") + " d\n"
+            + "load " + file.resolveSibling("other.ppm") + " e";
+    IModel expected = new ImageModel();
+    new Controller(expected, new StringReader(script)).runProgram();
+    Files.delete(file.resolveSibling("other.ppm"));
+    new Controller(this.model, new StringReader(script), false, 1).runProgram();
+    for (String name : new String[]{"a", "b", "c", "d", "e"}) {
+      assertArrayEquals(expected.getBufferFromMap(name).getPixels(),
+              this.model.getBufferFromMap(name).getPixels());
+    }
+
+    Path missing = file.resolveSibling("missing").resolve("step.ppm");
+    IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+            new Controller(this.model, new StringReader("save " + missing + " a\n"
+                    + "load " + missing + " f"), false, 1).runProgram());
+    assertEquals("something wrong happens during file writing!", e.getMessage());
+    assertTrue(e.getCause() != null);
+  }
+
+  /**
+   * Test that an image saved as a binary ppm loads back with the same pixels, and that the
+   * file is a binary ppm.
+   */
+  @Test
+  public void testSaveBinary() throws IOException {
+    Path file = Files.createTempDirectory("binary").resolve("binary.ppm");
+    new Controller(this.model, new StringReader("load res/class/class.png a\n"
+            + "save-binary " + file + " a\n"
+            + "load " + file + " b")).runProgram();
+    assertArrayEquals(this.model.getBufferFromMap("a").getPixels(),
+            this.model.getBufferFromMap("b").getPixels());
+    byte[] bytes = Files.readAllBytes(file);
+    assertEquals('P', bytes[0]);
+    assertEquals('6', bytes[1]);
+    assertThrows(IllegalStateException.class, () -> new Controller(this.model,
+            new StringReader("save-binary " + file.resolveSibling("binary.png") + " a"))
+            .runProgram());
+  }
+
+  private static ArrayList<String> params(String... params) {
+    return new ArrayList<>(Arrays.asList(params));
+  }
+}
@@ -2,6 +2,8 @@ package controller;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import model.IModel;
 
@@ -158,4 +160,14 @@ public class NamedForwardingCommand extends AbstractCommand {
     }
   }
 
+  /**
+   * Gets the names of the images the command reads, which is nothing, since it only logs.
+   *
+   * @param params represent params needed for running command
+   * @return no names
+   */
+  @Override
+  public List<String> getReads(List<String> params) {
+    return Collections.emptyList();
+  }
 }
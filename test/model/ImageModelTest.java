@@ -3,7 +3,11 @@ package model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
@@ -11,7 +15,9 @@ import java.util.Scanner;
 import model.functions.Brighten;
 import model.functions.Downsize;
 import model.functions.Load;
+import model.functions.Resampler;
 import model.functions.Save;
+import model.functions.colorTransformation.ColorMatrix;
 import model.functions.colorTransformation.SepiaTone;
 import model.functions.filter.Blur;
 import model.functions.filter.Sharpening;
@@ -25,11 +31,14 @@ import model.functions.greyScale.GreyScaleLuma;
 import model.functions.greyScale.GreyScaleRed;
 import model.functions.greyScale.GreyScaleValue;
 import model.histogram.BlueHistogram;
+import model.histogram.ChannelHistograms;
 import model.histogram.GreenHistogram;
 import model.histogram.IntensityHistogram;
 import model.histogram.RedHistogram;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
 
 /**
@@ -956,15 +965,15 @@ public class ImageModelTest {
     expectedAfter[1][0] = 64;
     expectedAfter[1][1] = 76;
     expectedAfter[1][2] = 81;
-    expectedAfter[1][3] = 112;
-    expectedAfter[1][4] = 50;
-    expectedAfter[1][5] = 81;
-    expectedAfter[2][0] = 81;
-    expectedAfter[2][1] = 91;
-    expectedAfter[2][2] = 39;
-    expectedAfter[2][3] = 91;
-    expectedAfter[2][4] = 79;
-    expectedAfter[2][5] = 25;
+    expectedAfter[1][3] = 104;
+    expectedAfter[1][4] = 60;
+    expectedAfter[1][5] = 90;
+    expectedAfter[2][0] = 82;
+    expectedAfter[2][1] = 97;
+    expectedAfter[2][2] = 58;
+    expectedAfter[2][3] = 112;
+    expectedAfter[2][4] = 91;
+    expectedAfter[2][5] = 57;
     int[][] resultAfter = model2.getFromMap("sampleBlur");
     for (int i = 0; i < 3; i++) {
       for (int j = 0; j < 6; j++) {
@@ -1014,14 +1023,14 @@ public class ImageModelTest {
     expectedAfter[1][1] = 255;
     expectedAfter[1][2] = 240;
     expectedAfter[1][3] = 255;
-    expectedAfter[1][4] = 171;
+    expectedAfter[1][4] = 145;
     expectedAfter[1][5] = 255;
     expectedAfter[2][0] = 255;
     expectedAfter[2][1] = 255;
-    expectedAfter[2][2] = 214;
+    expectedAfter[2][2] = 192;
     expectedAfter[2][3] = 255;
     expectedAfter[2][4] = 255;
-    expectedAfter[2][5] = 197;
+    expectedAfter[2][5] = 142;
     int[][] resultAfter = model2.getFromMap("sampleSharpen");
     for (int i = 0; i < 3; i++) {
       for (int j = 0; j < 6; j++) {
@@ -1411,9 +1420,9 @@ public class ImageModelTest {
     expectedAfter2[1][0] = 64;
     expectedAfter2[1][1] = 76;
     expectedAfter2[1][2] = 81;
-    expectedAfter2[1][3] = 112;
-    expectedAfter2[1][4] = 50;
-    expectedAfter2[1][5] = 81;
+    expectedAfter2[1][3] = 104;
+    expectedAfter2[1][4] = 60;
+    expectedAfter2[1][5] = 90;
     expectedAfter2[2][0] = 137;
     expectedAfter2[2][1] = 200;
     expectedAfter2[2][2] = 86;
@@ -1441,7 +1450,7 @@ public class ImageModelTest {
     expectedAfter3[1][1] = 255;
     expectedAfter3[1][2] = 240;
     expectedAfter3[1][3] = 255;
-    expectedAfter3[1][4] = 171;
+    expectedAfter3[1][4] = 145;
     expectedAfter3[1][5] = 255;
     expectedAfter3[2][0] = 137;
     expectedAfter3[2][1] = 200;
@@ -1543,4 +1552,419 @@ public class ImageModelTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Tests that images over the byte budget are spilled to disk and loaded back.
+   */
+  @Test
+  public void spillToDisk() {
+    // each 2x2 image takes 16 bytes, so only two of them fit in memory
+    ImageModel model = new ImageModel(32);
+    ArrayList<String> params = new ArrayList<>();
+    params.add("res/2x2color.ppm");
+    params.add("sample");
+    model.apply(new Load(params));
+
+    ArrayList<String> params2 = new ArrayList<>();
+    params2.add("sample");
+    params2.add("vertical");
+    model.apply(new VerticalFlip(params2));
+
+    ArrayList<String> params3 = new ArrayList<>();
+    params3.add("sample");
+    params3.add("horizontal");
+    model.apply(new HorizontalFlip(params3));
+
+    assertEquals(32, model.getResidentBytes());
+    assertEquals(1, model.getSpillCount());
+    assertEquals(0, model.getMissCount());
+
+    int[][] result = model.getFromMap("vertical");
+    assertEquals(1, model.getMissCount());
+    assertEquals(2, model.getSpillCount());
+    assertEquals(2, result[0][0]);
+    assertEquals(2, result[0][1]);
+    assertEquals(255, result[0][2]);
+    assertEquals(137, result[1][0]);
+    assertEquals(200, result[1][1]);
+    assertEquals(86, result[1][2]);
+    assertEquals(0, result[2][0]);
+    assertEquals(150, result[2][1]);
+    assertEquals(150, result[2][2]);
+
+    model.getFromMap("vertical");
+    assertEquals(1, model.getMissCount());
+  }
+
+  /**
+   * Test that functions run on several threads give the same image as on one thread.
+   */
+  @Test
+  public void parallelTiles() {
+    int width = 64;
+    int height = 4 * TileScheduler.TILE_BYTES / (4 * width) + 3;
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (int) (i * 2654435761L % 0x1000000);
+    }
+    IModel sequential = new ImageModel();
+    IModel parallel = new ImageModel(Long.MAX_VALUE, null, 4);
+    sequential.addToMap("big", new PixelBuffer(width, height, 255, pixels.clone()));
+    parallel.addToMap("big", new PixelBuffer(width, height, 255, pixels.clone()));
+
+    ArrayList<String> params = new ArrayList<>();
+    params.add("big");
+    params.add("result");
+    for (IModel model : new IModel[]{sequential, parallel}) {
+      model.apply(new Blur(params));
+      params.set(0, "result");
+      model.apply(new Sharpening(params));
+      model.apply(new SepiaTone(params));
+      model.apply(new Brighten(10, params));
+      model.apply(new GreyScaleLuma(params));
+      model.apply(new HorizontalFlip(params));
+      model.apply(new VerticalFlip(params));
+      params.set(0, "big");
+    }
+    assertEquals(4, parallel.getScheduler().getParallelism());
+
+    // rows around the first tile border are blurred with the rows of the next tile
+    params.set(1, "blurred");
+    parallel.apply(new Blur(params));
+    PixelBuffer blurred = parallel.getBufferFromMap("blurred");
+    PixelBuffer big = parallel.getBufferFromMap("big");
+    int border = TileScheduler.TILE_BYTES / (4 * width);
+    double[] factors = {0.25, 0.5, 0.25};
+    for (int i = border - 1; i <= border; i++) {
+      for (int j = 1; j < width - 1; j++) {
+        for (int c = 0; c < 3; c++) {
+          double sum = 0;
+          for (int y = -1; y <= 1; y++) {
+            for (int x = -1; x <= 1; x++) {
+              sum += factors[y + 1] * factors[x + 1] * big.getChannel(j + x, i + y, c);
+            }
+          }
+          assertEquals((int) sum, blurred.getChannel(j, i, c));
+        }
+      }
+    }
+    int[] expected = sequential.getBufferFromMap("result").getPixels();
+    int[] result = parallel.getBufferFromMap("result").getPixels();
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], result[i]);
+    }
+  }
+
+  /**
+   * Test that a mask selects the black channel samples as runs in row order.
+   */
+  @Test
+  public void maskSpans() {
+    int[] pixels = {0x000000, 0xFFFFFF, 0x00FF00, 0xFF00FF};
+    Mask mask = Mask.of(new PixelBuffer(2, 2, 255, pixels));
+    assertEquals(6, mask.count());
+    StringBuilder spans = new StringBuilder();
+    mask.forEachSpan((row, from, to) ->
+            spans.append(row).append(":").append(from).append("-").append(to).append(" "));
+    assertEquals("0:0-3 1:0-1 1:2-3 1:4-5 ", spans.toString());
+    assertEquals(true, mask.isSelected(1, 1, 1));
+    assertEquals(false, mask.isSelected(1, 1, 0));
+    assertThrows(IndexOutOfBoundsException.class, () ->
+            mask.checkInside(new PixelBuffer(1, 2, 255)));
+
+    PixelBuffer window = Mask.window(300, 300, 10, 20, 2, 3);
+    Mask windowMask = Mask.of(window);
+    assertEquals(18, windowMask.count());
+    assertEquals(true, windowMask.isSelected(22, 11, 2));
+    assertEquals(false, windowMask.isSelected(23, 11, 2));
+    assertEquals(0, window.getRGB(11, 22));
+    assertEquals(0xFFFFFF, window.getRGB(12, 22));
+  }
+
+  /**
+   * Test that color matrices in integer arithmetic stay within one of the exact mode, and
+   * that composed matrices are the product of the matrices.
+   */
+  @Test
+  public void colorMatrix() {
+    PixelBuffer image = new PixelBuffer(64, 64, 255);
+    int[] pixels = image.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    IModel fast = new ImageModel();
+    IModel exact = new ImageModel(Long.MAX_VALUE, null, 1, true);
+    ArrayList<String> params = new ArrayList<>();
+    params.add("image");
+    params.add("sepia");
+    for (IModel model : new IModel[]{fast, exact}) {
+      model.addToMap("image", image);
+      model.apply(new SepiaTone(params));
+    }
+    int[] result = fast.getBufferFromMap("sepia").getPixels();
+    int[] expected = exact.getBufferFromMap("sepia").getPixels();
+    for (int i = 0; i < pixels.length; i++) {
+      for (int channel = 0; channel < 3; channel++) {
+        int difference = PixelBuffer.channel(result[i], channel)
+                - PixelBuffer.channel(expected[i], channel);
+        assertEquals(true, Math.abs(difference) <= 1);
+      }
+    }
+
+    assertEquals(PixelBuffer.pack(10, 10, 10), ColorMatrix.grey(1, 0, 0)
+            .apply(PixelBuffer.pack(10, 20, 30)));
+    double[][] product = ColorMatrix.SEPIA.then(ColorMatrix.LUMA).toArray();
+    assertEquals(0.2126 * 0.393 + 0.7152 * 0.349 + 0.0722 * 0.272, product[0][0], 1e-12);
+    assertEquals(true, ColorMatrix.SEPIA.then(ColorMatrix.LUMA).isGrey());
+    assertEquals(false, ColorMatrix.LUMA.then(ColorMatrix.SEPIA).isGrey());
+  }
+
+  /**
+   * Test that resampling keeps a constant image constant in both modes, averages covered
+   * pixels in the box mode, and gives the same image with more threads.
+   */
+  @Test
+  public void resampler() {
+    PixelBuffer constant = new PixelBuffer(37, 23, 255);
+    Arrays.fill(constant.getWritablePixels(), PixelBuffer.pack(10, 128, 255));
+    for (Resampler.Mode mode : Resampler.Mode.values()) {
+      PixelBuffer result = new PixelBuffer(5, 17, 255);
+      new Resampler(37, 23, 5, 17, mode).apply(constant, result, new TileScheduler(1));
+      for (int pixel : result.getPixels()) {
+        assertEquals(PixelBuffer.pack(10, 128, 255), pixel);
+      }
+    }
+
+    PixelBuffer stripes = new PixelBuffer(4, 1, 255);
+    stripes.getWritablePixels()[1] = PixelBuffer.pack(100, 200, 50);
+    PixelBuffer halved = new PixelBuffer(2, 1, 255);
+    new Resampler(4, 1, 2, 1, Resampler.Mode.BOX).apply(stripes, halved, new TileScheduler(1));
+    assertEquals(PixelBuffer.pack(50, 100, 25), halved.getRGB(0, 0));
+    assertEquals(0, halved.getRGB(1, 0));
+
+    PixelBuffer image = new PixelBuffer(300, 200, 255);
+    int[] pixels = image.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    Resampler resampler = new Resampler(300, 200, 70, 130, Resampler.Mode.BOX,
+            Resampler.Mode.BILINEAR);
+    PixelBuffer single = new PixelBuffer(70, 130, 255);
+    PixelBuffer parallel = new PixelBuffer(70, 130, 255);
+    resampler.apply(image, single, new TileScheduler(1));
+    resampler.apply(image, parallel, new TileScheduler(4));
+    assertArrayEquals(single.getPixels(), parallel.getPixels());
+    assertThrows(IllegalArgumentException.class, () ->
+            resampler.apply(image, new PixelBuffer(70, 129, 255), new TileScheduler(1)));
+  }
+
+  /**
+   * Test that the box down scale averages the covered pixels, while the default one keeps
+   * interpolating, and that the two are told apart by their operation.
+   */
+  @Test
+  public void boxDownsize() {
+    IModel model = new ImageModel();
+    PixelBuffer stripes = new PixelBuffer(4, 2, 255);
+    stripes.getWritablePixels()[1] = PixelBuffer.pack(100, 200, 50);
+    stripes.getWritablePixels()[5] = PixelBuffer.pack(100, 200, 50);
+    model.addToMap("stripes", stripes);
+
+    Downsize box = new Downsize(2, 1, true, new ArrayList<>(Arrays.asList("stripes", "box")));
+    model.apply(box);
+    PixelBuffer boxed = model.getBufferFromMap("box");
+    assertEquals(PixelBuffer.pack(50, 100, 25), boxed.getRGB(0, 0));
+    assertEquals(0, boxed.getRGB(1, 0));
+
+    Downsize sampled = new Downsize(2, 1, new ArrayList<>(Arrays.asList("stripes", "sampled")));
+    model.apply(sampled);
+    assertEquals(0, model.getBufferFromMap("sampled").getRGB(0, 0));
+    assertNotEquals(box.getOperation(), sampled.getOperation());
+  }
+
+  /**
+   * Test that pyramid levels halve the image, are cached, and are rebuilt when the image is
+   * replaced.
+   */
+  @Test
+  public void pyramidLevels() {
+    IModel model = new ImageModel();
+    PixelBuffer image = new PixelBuffer(9, 8, 255);
+    image.getWritablePixels()[0] = PixelBuffer.pack(200, 100, 40);
+    model.addToMap("image", image);
+
+    assertEquals(9, model.getLevelFromMap("image", 5, 1).getWidth());
+    PixelBuffer half = model.getLevelFromMap("image", 4, 4);
+    assertEquals(4, half.getWidth());
+    assertEquals(4, half.getHeight());
+    assertEquals(PixelBuffer.pack(44, 22, 9), half.getRGB(0, 0));
+    PixelBuffer smallest = model.getLevelFromMap("image", 0, 0);
+    assertEquals(1, smallest.getWidth());
+    assertEquals(1, smallest.getHeight());
+
+    model.addToMap("image", new PixelBuffer(9, 8, 255));
+    assertEquals(0, model.getLevelFromMap("image", 4, 4).getRGB(0, 0));
+
+    PixelBuffer even = new PixelBuffer(64, 32, 255);
+    int[] pixels = even.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    PixelBuffer box = new PixelBuffer(32, 16, 255);
+    new Resampler(64, 32, 32, 16, Resampler.Mode.BOX).apply(even, box, new TileScheduler(1));
+    assertArrayEquals(box.getPixels(), Resampler.halve(even, new TileScheduler(2)).getPixels());
+    assertThrows(NullPointerException.class, () -> model.getLevelFromMap("none", 1, 1));
+  }
+
+  /**
+   * Test that pyramid levels count against the byte budget, and are dropped with their image
+   * when it is spilled or replaced.
+   */
+  @Test
+  public void pyramidBudget() {
+    // a 16x16 image takes 1024 bytes and its levels 256 + 64 + 16 + 4 bytes
+    ImageModel model = new ImageModel(2048);
+    model.addToMap("first", new PixelBuffer(16, 16, 255));
+    assertEquals(1, model.getLevelFromMap("first", 0, 0).getWidth());
+    assertEquals(1024 + 340, model.getResidentBytes());
+    model.getLevelFromMap("first", 0, 0);
+    assertEquals(1024 + 340, model.getResidentBytes());
+
+    model.addToMap("second", new PixelBuffer(16, 16, 255));
+    assertEquals(1, model.getSpillCount());
+    assertEquals(1024, model.getResidentBytes());
+    model.getLevelFromMap("second", 4, 4);
+    assertEquals(1024 + 256 + 64, model.getResidentBytes());
+    model.addToMap("second", new PixelBuffer(2, 2, 255));
+    assertEquals(16, model.getResidentBytes());
+  }
+
+  /**
+   * Test that the histograms counted in one pass match counting every channel on its own,
+   * with any number of threads.
+   */
+  @Test
+  public void channelHistograms() {
+    PixelBuffer image = new PixelBuffer(300, 700, 255);
+    int[] pixels = image.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    int[][] expected = new int[4][256];
+    for (int pixel : pixels) {
+      int r = PixelBuffer.red(pixel);
+      int g = PixelBuffer.green(pixel);
+      int b = PixelBuffer.blue(pixel);
+      expected[0][r]++;
+      expected[1][g]++;
+      expected[2][b]++;
+      expected[3][(r + g + b) / 3]++;
+    }
+    String[] components = {"red", "green", "blue", "intensity"};
+    for (int threads : new int[]{1, 3}) {
+      ChannelHistograms histograms = ChannelHistograms.of(image, new TileScheduler(threads));
+      for (int c = 0; c < 4; c++) {
+        assertArrayEquals(components[c], expected[c], histograms.getCounts(components[c]));
+        assertEquals(Integer.valueOf(expected[c][17]),
+                histograms.toMap(components[c]).get(17));
+      }
+      assertThrows(IllegalArgumentException.class, () -> histograms.getCounts("alpha"));
+    }
+  }
+
+  /**
+   * Test that the histograms of an image changed under a mask are updated from the histograms
+   * of its source to the counts of the changed image.
+   */
+  @Test
+  public void incrementalHistograms() {
+    IModel model = new ImageModel();
+    PixelBuffer image = new PixelBuffer(300, 200, 255);
+    int[] pixels = image.getWritablePixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i * 0x9E3779B1 & 0xFFFFFF;
+    }
+    model.addToMap("image", image);
+    PixelBuffer mask = new PixelBuffer(300, 200, 255);
+    int[] maskPixels = mask.getWritablePixels();
+    Arrays.fill(maskPixels, 0xFFFFFF);
+    for (int i = 20; i < 60; i++) {
+      Arrays.fill(maskPixels, i * 300 + 10, i * 300 + 60, 0);
+    }
+    // a pixel that selects red and blue only gives two spans sharing the pixel
+    maskPixels[30 * 300 + 60] = 0x00FF00;
+    model.addToMap("mask", mask);
+    model.getHistogramsFromMap("image");
+
+    model.apply(new Brighten(30, new ArrayList<>(Arrays.asList("image", "mask", "bright"))));
+    model.apply(new Blur(new ArrayList<>(Arrays.asList("image", "mask", "image"))));
+    for (String name : new String[]{"bright", "image"}) {
+      ChannelHistograms expected = ChannelHistograms.of(model.getBufferFromMap(name),
+              new TileScheduler(1));
+      for (String component : new String[]{"red", "green", "blue", "intensity"}) {
+        assertArrayEquals(name, expected.getCounts(component),
+                model.getHistogramsFromMap(name).getCounts(component));
+      }
+    }
+  }
+
+  /**
+   * Test that closing a model deletes the images it spilled and removes its images.
+   */
+  @Test
+  public void closeDeletesSpills() throws IOException {
+    File directory = Files.createTempDirectory("spills").toFile();
+    IModel model = new ImageModel(4 * 100 * 100, directory.toString());
+    for (String name : new String[]{"a", "b", "c"}) {
+      model.addToMap(name, new PixelBuffer(100, 100, 255));
+    }
+    assertEquals(2, directory.list().length);
+    model.close();
+    assertEquals(0, directory.list().length);
+    assertThrows(NullPointerException.class, () -> model.getBufferFromMap("a"));
+  }
+
+  /**
+   * Test that a closed tile scheduler still runs every tile, on the calling thread.
+   */
+  @Test
+  public void closedTileScheduler() {
+    TileScheduler scheduler = new TileScheduler(4);
+    for (int run = 0; run < 2; run++) {
+      int[] rows = new int[4000];
+      scheduler.forEachTile(100, rows.length, (from, to) -> {
+        for (int i = from; i < to; i++) {
+          rows[i]++;
+        }
+      });
+      for (int count : rows) {
+        assertEquals(1, count);
+      }
+      scheduler.close();
+    }
+  }
+
+  /**
+   * Test that a function run again on an image with the same content reads its result back
+   * from the result cache, also from a new model and cache on the same directory.
+   */
+  @Test
+  public void resultCache() throws IOException {
+    String directory = Files.createTempDirectory("results").toString();
+    int[] expected = null;
+    for (int run = 0; run < 2; run++) {
+      ResultCache cache = new ResultCache(directory, 1 << 20);
+      IModel model = new ImageModel(Long.MAX_VALUE, null, 1, false, cache);
+      model.apply(new Load(new ArrayList<>(Arrays.asList("res/2x2color.ppm", "sample"))));
+      model.apply(new Blur(new ArrayList<>(Arrays.asList("sample", "blurred"))));
+      model.apply(new Brighten(10, new ArrayList<>(Arrays.asList("blurred", "bright"))));
+      model.apply(new Brighten(20, new ArrayList<>(Arrays.asList("blurred", "bright"))));
+      assertEquals(run == 0 ? 0 : 3, cache.getHitCount());
+      assertEquals(run == 0 ? 3 : 0, cache.getMissCount());
+      if (expected == null) {
+        expected = model.getBufferFromMap("bright").getPixels();
+      }
+      assertArrayEquals(expected, model.getBufferFromMap("bright").getPixels());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package model;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import utils.ConvertToBufferImage;
+import utils.ImageUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PixelBuffer, its copy-on-write sharing and its conversions from and to
+ * BufferedImage.
+ */
+public class PixelBufferTest {
+
+  /**
+   * Test that packed pixels hold the channels of every pixel, and that the legacy header-row
+   * format converts to and from the packed buffer without losing anything.
+   */
+  @Test
+  public void packedPixels() {
+    int pixel = PixelBuffer.pack(18, 52, 86);
+    assertEquals(0x123456, pixel);
+    assertEquals(18, PixelBuffer.red(pixel));
+    assertEquals(52, PixelBuffer.green(pixel));
+    assertEquals(86, PixelBuffer.blue(pixel));
+    assertEquals(0x12FF56, PixelBuffer.withChannel(pixel, 1, 255));
+
+    int[][] legacy = {{3, 2, 255}, {0, 1, 2, 3, 4, 5, 6, 7, 8},
+        {9, 10, 11, 12, 13, 14, 15, 16, 17}};
+    PixelBuffer buffer = PixelBuffer.fromLegacy(legacy);
+    assertEquals(3, buffer.getWidth());
+    assertEquals(2, buffer.getHeight());
+    assertEquals(PixelBuffer.pack(12, 13, 14), buffer.getRGB(1, 1));
+    assertEquals(5, buffer.getChannel(1, 0, 2));
+    int[][] back = buffer.toLegacy();
+    for (int j = 0; j < 3; j++) {
+      assertEquals(legacy[0][j], back[0][j]);
+    }
+    for (int i = 1; i < legacy.length; i++) {
+      assertArrayEquals(legacy[i], back[i]);
+    }
+  }
+
+  /**
+   * Test that writing a buffer after it was shared leaves the other buffer unchanged, both
+   * ways, and that the content digest is kept only by the buffer that was not written.
+   */
+  @Test
+  public void copyOnWrite() {
+    PixelBuffer original = random(5, 4, 1);
+    int[] before = Arrays.copyOf(original.getPixels(), original.getPixels().length);
+    byte[] digest = ResultCache.digestOf(original);
+
+    PixelBuffer copy = original.share();
+    assertTrue(original.getPixels() == copy.getPixels());
+    copy.setRGB(2, 3, 0x123456);
+    assertArrayEquals(before, original.getPixels());
+    assertEquals(0x123456, copy.getRGB(2, 3));
+    assertArrayEquals(digest, ResultCache.digestOf(original));
+    assertFalse(Arrays.equals(digest, ResultCache.digestOf(copy)));
+
+    PixelBuffer other = original.share();
+    original.getWritablePixels()[0] = 0xABCDEF;
+    assertEquals(before[0], other.getRGB(0, 0));
+    assertArrayEquals(before, other.getPixels());
+    assertArrayEquals(digest, ResultCache.digestOf(other));
+  }
+
+  /**
+   * Test that an image handed out by the model is a copy-on-write copy, so writing it does not
+   * change the stored image.
+   */
+  @Test
+  public void modelHandsOutCopies() {
+    IModel model = new ImageModel();
+    model.addToMap("image", random(6, 6, 2));
+    int[] stored = Arrays.copyOf(model.getBufferFromMap("image").getPixels(), 36);
+    PixelBuffer handed = model.getBufferFromMap("image");
+    Arrays.fill(handed.getWritablePixels(), 0);
+    assertArrayEquals(stored, model.getBufferFromMap("image").getPixels());
+  }
+
+  /**
+   * Test that the raster fast paths read the same pixels as reading the image pixel by pixel,
+   * for whole rasters, for sub-images whose rasters are offset into a larger array, and for a
+   * type that falls back to reading pixel by pixel.
+   */
+  @Test
+  public void readRasters() {
+    int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR};
+    for (int type : types) {
+      BufferedImage image = new BufferedImage(9, 7, type);
+      Random random = new Random(type);
+      for (int y = 0; y < 7; y++) {
+        for (int x = 0; x < 9; x++) {
+          image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+        }
+      }
+      assertArrayEquals(pixelsOf(image), ImageUtil.readBuffer(image).getPixels());
+      BufferedImage part = image.getSubimage(2, 1, 5, 4);
+      assertArrayEquals(pixelsOf(part), ImageUtil.readBuffer(part).getPixels());
+    }
+  }
+
+  /**
+   * Test that the buffered image made from a buffer shows its pixels, and keeps them when the
+   * buffer is written afterwards.
+   */
+  @Test
+  public void toBufferedImage() {
+    PixelBuffer buffer = random(8, 3, 3);
+    int[] before = Arrays.copyOf(buffer.getPixels(), buffer.getPixels().length);
+    BufferedImage image = ConvertToBufferImage.pixelBufferToBufferImage(buffer);
+    assertArrayEquals(before, pixelsOf(image));
+    Arrays.fill(buffer.getWritablePixels(), 0xFFFFFF);
+    assertArrayEquals(before, pixelsOf(image));
+  }
+
+  private static PixelBuffer random(int width, int height, long seed) {
+    PixelBuffer buffer = new PixelBuffer(width, height, 255);
+    int[] pixels = buffer.getWritablePixels();
+    Random random = new Random(seed);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(0x1000000);
+    }
+    return buffer;
+  }
+
+  private static int[] pixelsOf(BufferedImage image) {
+    int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+            image.getWidth());
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] &= 0xFFFFFF;
+    }
+    return pixels;
+  }
+}
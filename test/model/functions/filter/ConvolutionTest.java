@@ -0,0 +1,90 @@
+package model.functions.filter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.PixelBuffer;
+import model.TileScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for Convolution against its floating point reference {@link Convolution#applyAt}.
+ */
+public class ConvolutionTest {
+
+  /**
+   * Test the separable fixed point path with the blur kernel.
+   */
+  @Test
+  public void separableFixedPoint() {
+    Convolution blur = new Convolution(new double[][]{
+        {0.0625, 0.125, 0.0625}, {0.125, 0.25, 0.125}, {0.0625, 0.125, 0.0625}});
+    assertTrue(blur.isSeparable());
+    checkAgainstReference(blur);
+  }
+
+  /**
+   * Test the direct fixed point path with the sharpening kernel, whose sums go below 0 and
+   * above 255.
+   */
+  @Test
+  public void directFixedPoint() {
+    double[][] kernel = new double[5][5];
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < 5; j++) {
+        kernel[i][j] = -0.125;
+      }
+    }
+    for (int i = 1; i < 4; i++) {
+      for (int j = 1; j < 4; j++) {
+        kernel[i][j] = 0.25;
+      }
+    }
+    kernel[2][2] = 1;
+    Convolution sharpen = new Convolution(kernel);
+    assertFalse(sharpen.isSeparable());
+    checkAgainstReference(sharpen);
+  }
+
+  /**
+   * Test the floating point path with weights that are not multiples of 2^-10.
+   */
+  @Test
+  public void floatingPoint() {
+    checkAgainstReference(new Convolution(new double[][]{
+        {0.1, 0.2, 0.1}, {0.05, 0.3, 0.05}, {0.1, 0.05, 0.05}}));
+  }
+
+  /**
+   * Convolves random images, including ones smaller than the kernel, on one and on several
+   * threads, and compares every channel with the reference.
+   */
+  private static void checkAgainstReference(Convolution convolution) {
+    Random random = new Random(7);
+    int[][] sizes = {{1, 1}, {2, 3}, {4, 4}, {37, 23}, {64, 130}};
+    for (int threads : new int[]{1, 4}) {
+      TileScheduler scheduler = new TileScheduler(threads);
+      for (int[] size : sizes) {
+        PixelBuffer source = new PixelBuffer(size[0], size[1], 255);
+        int[] pixels = source.getWritablePixels();
+        for (int i = 0; i < pixels.length; i++) {
+          pixels[i] = random.nextInt(0x1000000);
+        }
+        PixelBuffer destination = new PixelBuffer(size[0], size[1], 255);
+        convolution.apply(source, destination, scheduler);
+        for (int y = 0; y < size[1]; y++) {
+          for (int x = 0; x < size[0]; x++) {
+            for (int channel = 0; channel < 3; channel++) {
+              assertEquals(convolution.applyAt(source, y, x, channel),
+                      destination.getChannel(x, y, channel));
+            }
+          }
+        }
+      }
+    }
+  }
+}
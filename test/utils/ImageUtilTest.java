@@ -2,6 +2,15 @@ package utils;
 
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import model.PixelBuffer;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 
@@ -17,9 +26,6 @@ public class ImageUtilTest {
   public void readPPMTest() {
     // File not found
     assertThrows(IllegalArgumentException.class, () -> ImageUtil.readImage("abcd"));
-    // File does not start with P3
-    assertThrows(IllegalArgumentException.class, () ->
-            ImageUtil.readImage("res/util/P62x2color.ppm"));
     // File has width < 0;
     assertThrows(IllegalArgumentException.class, () ->
             ImageUtil.readImage("res/util/WidthSmallerThan0.ppm"));
@@ -55,6 +61,68 @@ public class ImageUtilTest {
         assertEquals(expected[i][j], result[i][j]);
       }
     }
+    // Binary P6 file is correctly loaded
+    int[][] binary = ImageUtil.readImage("res/util/P62x2color.ppm");
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 6; j++) {
+        assertEquals(expected[i][j], binary[i][j]);
+      }
+    }
+  }
+
+  /**
+   * Tests saving a binary P6 ppm and reading it back.
+   */
+  @Test
+  public void saveBinaryPPMTest() {
+    PixelBuffer image = ImageUtil.readBuffer("res/2x2color.ppm");
+    ImageUtil.saveBinaryPPM("res/util/binary.ppm", image);
+    PixelBuffer result = ImageUtil.readBuffer("res/util/binary.ppm");
+    assertEquals(image.getWidth(), result.getWidth());
+    assertEquals(image.getHeight(), result.getHeight());
+    assertEquals(255, result.getMaxValue());
+    for (int i = 0; i < image.getPixels().length; i++) {
+      assertEquals(image.getPixels()[i], result.getPixels()[i]);
+    }
+    new File("res/util/binary.ppm").delete();
+  }
+
+  /**
+   * Tests that reading a buffered image leaves its alpha, and that the pixels read are not
+   * shared with it.
+   */
+  @Test
+  public void readBufferedImageLeavesImage() {
+    BufferedImage argb = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+    argb.setRGB(0, 0, 0x80112233);
+    PixelBuffer image = ImageUtil.readBuffer(argb);
+    assertEquals(0x112233, image.getRGB(0, 0));
+    assertEquals(0x80112233, argb.getRGB(0, 0));
+    image.setRGB(1, 0, 0x445566);
+    assertEquals(0, argb.getRGB(1, 0));
+  }
+
+  /**
+   * Tests that an image without a max value, like one read from a png, or with a negative
+   * one is saved with its largest channel as the max value in the header.
+   */
+  @Test
+  public void saveLargestChannelAsMaxValue() throws IOException {
+    PixelBuffer image = new PixelBuffer(2, 1, 0);
+    image.setRGB(0, 0, PixelBuffer.pack(7, 200, 3));
+    image.setRGB(1, 0, PixelBuffer.pack(232, 0, 9));
+    ImageUtil.saveImage("res/util/maxvalue.ppm", image);
+    String text = new String(Files.readAllBytes(Paths.get("res/util/maxvalue.ppm")),
+            StandardCharsets.US_ASCII);
+    assertEquals("P3\n2 1\n232\n7\n200\n3\n232\n0\n9\n", text);
+
+    PixelBuffer negative = new PixelBuffer(1, 1, -5);
+    negative.setRGB(0, 0, PixelBuffer.pack(1, 2, 3));
+    ImageUtil.saveImage("res/util/maxvalue.ppm", negative);
+    text = new String(Files.readAllBytes(Paths.get("res/util/maxvalue.ppm")),
+            StandardCharsets.US_ASCII);
+    assertEquals("P3\n1 1\n3\n1\n2\n3\n", text);
+    new File("res/util/maxvalue.ppm").delete();
   }
 
   /**
@@ -449,4 +517,15 @@ public class ImageUtilTest {
     }
 
   }
-}
\ No newline at end of file
+
+  /**
+   * Test that the number of pixels is read from the header of ppm and png files, and that a
+   * file that cannot be read gives -1.
+   */
+  @Test
+  public void readPixelCount() {
+    assertEquals(4, ImageUtil.readPixelCount("res/2x2color.ppm"));
+    assertEquals(4, ImageUtil.readPixelCount("res/util/2x2colorPPMtoPNG.png"));
+    assertEquals(-1, ImageUtil.readPixelCount("res/none.png"));
+  }
+}
@@ -50,6 +50,7 @@ public class ViewTest {
             "luma-greyscale with 0 parameters\n" +
             "load with 0 parameters\n" +
             "vertical-flip with 0 parameters\n" +
+            "resize with 3 parameters\n" +
             "blue-greyscale with 0 parameters\n" +
             "down-scale with 2 parameters\n" +
             "view has been initialized successfully\n" +
@@ -75,6 +76,7 @@ public class ViewTest {
             "luma-greyscale with 0 parameters\n" +
             "load with 0 parameters\n" +
             "vertical-flip with 0 parameters\n" +
+            "resize with 3 parameters\n" +
             "blue-greyscale with 0 parameters\n" +
             "down-scale with 2 parameters\n" +
             "view has been initialized successfully\n"+
@@ -138,6 +140,7 @@ public class ViewTest {
             "luma-greyscale with 0 parameters\n" +
             "load with 0 parameters\n" +
             "vertical-flip with 0 parameters\n" +
+            "resize with 3 parameters\n" +
             "blue-greyscale with 0 parameters\n" +
             "a new listener was added\n";
   }